@@ -0,0 +1,169 @@
+package com.example.demo.bloom;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Bloom 重建的数据加载: 按主键范围切成若干段并行读取, 每段内按 keyset 分块 (id > 上一块最后一个 id)
+// 每块读入复用的原始类型数组, 用一次 Redisson 批量 add 写入; 内存只和块大小 x 并行度有关, 和总行数无关
+@Slf4j
+@Component
+public class BloomFilterLoader {
+
+    // 过滤器的数据来源: 表名和写入过滤器的列 (主键列本身或另一列)
+    public record Table(String name, String valueColumn) {
+
+        boolean valueIsId() {
+            return "id".equals(valueColumn);
+        }
+    }
+
+    // 每个并行线程多分几段, 主键分布不均时各线程的工作量更平均
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+    private final int parallelism;
+    private final ExecutorService pool;
+
+    // 每个过滤器本次重建已写入的数量和总行数, 供进度指标读取
+    private final Map<String, AtomicLong> loaded = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> total = new ConcurrentHashMap<>();
+
+    public BloomFilterLoader(JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.bloom.rebuild.chunk-size:5000}") int chunkSize,
+                             @Value("${app.bloom.rebuild.parallelism:4}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelism = Math.max(1, parallelism);
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "bloom-rebuild-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 把 table 的全部值按块交给 target 写入过滤器, 返回写入数量; 任何一段失败整个加载失败
+    public long load(String filterName, Table table, Consumer<List<String>> target, long expectedRows) {
+        AtomicLong filterLoaded = progress(filterName);
+        filterLoaded.set(0);
+        total.get(filterName).set(expectedRows);
+        Counter values = meterRegistry.counter("bloom.rebuild.values", "filter", filterName);
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM " + table.name());
+        if (bounds.get("min_id") == null) {
+            return 0;
+        }
+        long min = ((Number) bounds.get("min_id")).longValue();
+        long max = ((Number) bounds.get("max_id")).longValue();
+
+        // (from, to] 区间, 第一段从 min - 1 开始
+        int segments = parallelism * SEGMENTS_PER_THREAD;
+        long span = Math.max(1, (max - min) / segments + 1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (long from = min - 1; from < max; from += span) {
+            long lower = from;
+            long upper = Math.min(max, from + span);
+            futures.add(pool.submit(() -> loadRange(table, lower, upper, target, filterLoaded, values)));
+        }
+
+        long count = 0;
+        try {
+            for (Future<Long> future : futures) {
+                count += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Bloom 数据加载被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Bloom 数据加载失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            sample.stop(meterRegistry.timer("bloom.rebuild.duration", "filter", filterName));
+        }
+        log.info("Bloom 过滤器 {} 数据加载完成: {} 条, {} 段", filterName, count, futures.size());
+        return count;
+    }
+
+    private long loadRange(Table table, long fromExclusive, long toInclusive,
+                           Consumer<List<String>> target, AtomicLong filterLoaded, Counter values) {
+        String sql = "SELECT id" + (table.valueIsId() ? "" : ", " + table.valueColumn()) + " FROM " + table.name() +
+                " WHERE id > ? AND id <= ? ORDER BY id LIMIT ?";
+        long[] ids = new long[chunkSize];
+        String[] keys = table.valueIsId() ? null : new String[chunkSize];
+        int[] rows = new int[1];
+        long after = fromExclusive;
+        long count = 0;
+
+        while (true) {
+            rows[0] = 0;
+            jdbcTemplate.query(sql, rs -> {
+                int row = rows[0]++;
+                ids[row] = rs.getLong(1);
+                if (keys != null) {
+                    keys[row] = rs.getString(2);
+                }
+            }, after, toInclusive, chunkSize);
+            int n = rows[0];
+            if (n == 0) {
+                return count;
+            }
+
+            // 一块一次批量写入
+            target.accept(keys != null ? Arrays.asList(keys).subList(0, n) : idStrings(ids, n));
+            count += n;
+            filterLoaded.addAndGet(n);
+            values.increment(n);
+
+            if (n < chunkSize) {
+                return count;
+            }
+            after = ids[n - 1];
+        }
+    }
+
+    private AtomicLong progress(String filterName) {
+        return loaded.computeIfAbsent(filterName, name -> {
+            AtomicLong value = new AtomicLong();
+            AtomicLong rows = total.computeIfAbsent(name, ignored -> new AtomicLong());
+            Gauge.builder("bloom.rebuild.loaded", value, AtomicLong::get).tag("filter", name).register(meterRegistry);
+            Gauge.builder("bloom.rebuild.progress", value, v -> rows.get() > 0 ? Math.min(1.0, (double) v.get() / rows.get()) : 0)
+                    .tag("filter", name).register(meterRegistry);
+            return value;
+        });
+    }
+
+    private static List<String> idStrings(long[] ids, int n) {
+        List<String> values = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            values.add(Long.toString(ids[i]));
+        }
+        return values;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,519 @@
+package com.example.demo.bloom;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.Kryo5Codec;
+import org.redisson.misc.Hash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Redis Bloom 过滤器的本地副本: mightContain 只读内存位图, 不访问网络
+// 1. 新增: 写 Redis 的节点本地立即生效, 再通过 Pub/Sub 广播给其他节点
+// 2. 序号: 每条广播带一个按过滤器递增的序号 ("{name}:seq"), 副本记录已经连续收到的序号
+//    同步过且序号没有缺口时副本和 Redis 一致, "不存在" 也直接使用; 否则只使用 "可能存在", "不存在" 由调用方查 Redis
+//    监听容器并发分发消息, 后面的序号可能先到; 定期核对 Redis 里的序号, 一个周期内还没补上的缺口 (Pub/Sub 不保证送达) 触发全量同步
+// 3. 全量同步: 从 Redis 读取整个位图和当时的序号, 序号不大于它的修改都已包含在位图里; 另外定期同步, 补上其他方式的修改
+// 4. 快照: 同步后写入本地文件, 重启时先加载快照, 不用等第一次同步 (同步之前序号未知, 只使用 "可能存在")
+// 过滤器在 Redis 里被整体替换 (重建) 后, 通过同一个频道通知所有节点立即重新同步
+// 计数过滤器 (CountingBloomFilter) 的副本同样支持删除, 删除也通过同一个频道广播; 它的序号由添加 / 删除脚本分配
+// 消息格式: 节点|操作|过滤器|序号|值1\n值2..., 操作为 add / remove / resync
+@Slf4j
+@Component
+public class BloomFilterReplica implements MessageListener {
+
+    // 分配序号和发布在同一个脚本里: 发出的消息一定有序号, 有序号的修改一定已经写入 Redis
+    private static final RedisScript<Long> PUBLISH_SCRIPT = RedisScript.of(
+            "local sequence = redis.call('incr', KEYS[1]) " +
+                    "redis.call('publish', ARGV[1], ARGV[2] .. sequence .. ARGV[3]) " +
+                    "return sequence", Long.class);
+
+    private final RedissonClient redissonClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final List<String> filterNames;
+    private final Set<String> countingFilterNames;
+    private final long removalMarkerTtlSeconds;
+    private final String channel;
+    private final Path snapshotDir;
+    private final Codec codec;
+
+    private final Map<String, LocalFilter> filters = new ConcurrentHashMap<>();
+    private final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+    // 全量同步期间收到的新增和删除, 同步完成后把序号大于同步时序号的补到新副本上
+    private final Map<String, Queue<Change>> pendingDuringResync = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ExecutorService resyncExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bloom-replica-resync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 本节点的普通过滤器新增在分配序号之前已经生效, 序号记为 0, 同步后总是重放 (置位是幂等的)
+    private record Change(long sequence, boolean removed, String value) {
+    }
+
+    // applied 及之前的序号都已收到; ahead 是越过缺口先收到的序号
+    // required 是上次核对时 Redis 里的序号, 收到它之前同样不算同步; replaced 表示过滤器已被替换, 等待重新同步
+    private static final class Sequence {
+        private long applied = -1;
+        private long required;
+        private boolean replaced;
+        private final TreeSet<Long> ahead = new TreeSet<>();
+
+        private boolean inSync() {
+            return applied >= 0 && ahead.isEmpty() && applied >= required && !replaced;
+        }
+
+        // 重复的序号 (已收到过) 返回 false
+        private boolean receive(long sequence) {
+            if (sequence <= applied || !ahead.add(sequence)) {
+                return false;
+            }
+            advance();
+            return true;
+        }
+
+        private void advance() {
+            while (!ahead.isEmpty() && ahead.first() <= applied + 1) {
+                applied = Math.max(applied, ahead.pollFirst());
+            }
+        }
+    }
+
+    public BloomFilterReplica(RedissonClient redissonClient,
+                              StringRedisTemplate stringRedisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.bloom.replica.enabled:true}") boolean enabled,
+                              @Value("${app.bloom.replica.filters:bloom:product:,bloom:shortUrl:}") String filterNames,
+                              @Value("${app.bloom.counting-filters:bloom:product:}") String countingFilterNames,
+                              @Value("${app.bloom.counting.removal-marker-ttl-seconds:86400}") long removalMarkerTtlSeconds,
+                              @Value("${app.bloom.replica.channel:bloom:added}") String channel,
+                              @Value("${app.bloom.replica.snapshot-dir:bloom-snapshot}") String snapshotDir) {
+        this.redissonClient = redissonClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.filterNames = names(filterNames);
+        this.countingFilterNames = Set.copyOf(names(countingFilterNames));
+        this.removalMarkerTtlSeconds = removalMarkerTtlSeconds;
+        this.channel = channel;
+        this.snapshotDir = Paths.get(snapshotDir);
+        // 和 RBloomFilter 使用同一个编解码器, 编码结果相同, 哈希位置才相同 (没有配置时 Redisson 默认 Kryo5Codec)
+        Codec configured = redissonClient.getConfig().getCodec();
+        this.codec = configured != null ? configured : new Kryo5Codec();
+        this.filterNames.forEach(name -> sequences.put(name, new Sequence()));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        for (String name : filterNames) {
+            loadSnapshot(name);
+            Gauge.builder("bloom.replica.fill.ratio", this, replica -> replica.fillRatio(name))
+                    .tag("filter", name).register(meterRegistry);
+            Gauge.builder("bloom.replica.fpp.estimated", this, replica -> replica.estimatedFpp(name))
+                    .tag("filter", name).register(meterRegistry);
+            Gauge.builder("bloom.replica.in.sync", this, replica -> replica.isInSync(name) ? 1 : 0)
+                    .tag("filter", name).register(meterRegistry);
+        }
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        // 第一次全量同步放到后台, 不阻塞启动
+        resyncExecutor.execute(this::resyncAll);
+        log.info("Bloom 本地副本已启用 filters={}, 快照已加载 {} 个", filterNames, filters.size());
+    }
+
+    // 本地位图判为存在时返回 true; 判为不存在时只有副本和 Redis 同步才返回 false
+    // 没有副本, 还没同步或序号有缺口时返回 null, 由调用方查询 Redis
+    public Boolean mightContain(String filterName, String value) {
+        LocalFilter filter = filters.get(filterName);
+        if (filter == null) {
+            return null;
+        }
+        long[] hash = hash(filterName, value);
+        if (filter.contains(hash[0], hash[1])) {
+            return true;
+        }
+        return isInSync(filterName) ? false : null;
+    }
+
+    public boolean isInSync(String filterName) {
+        Sequence sequence = sequences.get(filterName);
+        if (!enabled || sequence == null) {
+            return false;
+        }
+        synchronized (sequence) {
+            return sequence.inSync();
+        }
+    }
+
+    // 值已写入 Redis 的普通过滤器之后调用: 本地副本立即生效, 再分配序号广播给其他节点
+    // 广播失败时抛出异常, 由调用方重试添加 (添加是幂等的); 不广播的话其他节点不会发现缺口
+    public void added(String filterName, Collection<String> values) {
+        if (!enabled || !filterNames.contains(filterName) || countingFilterNames.contains(filterName) || values.isEmpty()) {
+            return;
+        }
+        Sequence sequence = sequences.get(filterName);
+        synchronized (sequence) {
+            apply(filterName, 0, values, false);
+        }
+        long assigned = publishSequenced("add", filterName, values);
+        synchronized (sequence) {
+            sequence.receive(assigned);
+        }
+    }
+
+    // 值已写入 Redis 的计数过滤器之后调用, sequence 是添加脚本分配的序号, values 只包含真正被添加的值
+    public void added(String filterName, long sequence, Collection<String> values) {
+        changed(filterName, sequence, values, false);
+    }
+
+    // 值已从 Redis 的计数过滤器中删除之后调用, sequence 是删除脚本分配的序号, values 只包含真正被删除的值
+    public void removed(String filterName, long sequence, Collection<String> values) {
+        changed(filterName, sequence, values, true);
+    }
+
+    // Redis 里的过滤器被替换后调用: 本节点立即同步, 其他节点收到空消息后同步
+    public void resyncEverywhere(String filterName) {
+        if (!enabled || !filterNames.contains(filterName)) {
+            return;
+        }
+        resync(filterName);
+        try {
+            long assigned = publishSequenced("resync", filterName, List.of());
+            Sequence sequence = sequences.get(filterName);
+            synchronized (sequence) {
+                sequence.receive(assigned);
+            }
+        } catch (Exception e) {
+            // 其他节点等下一次全量同步
+            log.error("Bloom 副本广播失败 operation=resync filter={}: {}", filterName, e.getMessage());
+        }
+    }
+
+    // 已置位比例, 没有副本时为 NaN
+    public double fillRatio(String filterName) {
+        LocalFilter filter = filters.get(filterName);
+        return filter != null ? filter.fillRatio() : Double.NaN;
+    }
+
+    // 按当前填充率估算的误判率: 一个不存在的值 k 个位置都恰好已置位的概率 = 填充率^k
+    public double estimatedFpp(String filterName) {
+        LocalFilter filter = filters.get(filterName);
+        return filter != null ? Math.pow(filter.fillRatio(), filter.hashIterations()) : Double.NaN;
+    }
+
+    // 定期全量同步, 和启动时的同步在同一个线程里排队
+    @Scheduled(fixedDelayString = "${app.bloom.replica.resync-ms:300000}",
+            initialDelayString = "${app.bloom.replica.resync-ms:300000}")
+    public void scheduledResync() {
+        resyncExecutor.execute(this::resyncAll);
+    }
+
+    // 定期核对 Redis 里的序号: 上次核对时已经分配的序号到现在还没收到, 说明广播丢了, 重新同步
+    // 最后几条广播丢失时没有后续消息暴露缺口, 也由这里发现
+    @Scheduled(fixedDelayString = "${app.bloom.replica.sequence-check-ms:5000}",
+            initialDelayString = "${app.bloom.replica.sequence-check-ms:5000}")
+    public void checkSequences() {
+        if (!enabled) {
+            return;
+        }
+        for (String name : filterNames) {
+            try {
+                long current = readSequence(name);
+                Sequence sequence = sequences.get(name);
+                boolean lost;
+                synchronized (sequence) {
+                    lost = sequence.applied >= 0 && sequence.applied < sequence.required;
+                    sequence.required = Math.max(sequence.required, current);
+                }
+                if (lost) {
+                    log.warn("Bloom 副本缺少广播 filter={}, 重新同步", name);
+                    resyncExecutor.execute(() -> resyncQuietly(name));
+                }
+            } catch (Exception e) {
+                log.warn("Bloom 副本序号核对失败 filter={}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    public void resyncAll() {
+        if (!enabled) {
+            return;
+        }
+        filterNames.forEach(this::resyncQuietly);
+    }
+
+    private void resyncQuietly(String filterName) {
+        try {
+            resync(filterName);
+        } catch (Exception e) {
+            log.error("Bloom 副本同步失败 filter={}: {}", filterName, e.getMessage());
+        }
+    }
+
+    // 从 Redis 读取配置和位图 (计数器), 替换本地副本; 同步期间收到的新增和删除在替换后补上
+    public synchronized void resync(String filterName) {
+        Sequence sequence = sequences.get(filterName);
+        Queue<Change> pending = new ConcurrentLinkedQueue<>();
+        synchronized (sequence) {
+            pendingDuringResync.put(filterName, pending);
+        }
+        try {
+            // 还没有初始化的过滤器读取配置会抛异常, 保留现有副本 (如果有)
+            // 位图 key 在第一次添加之前不存在, 此时是空副本
+            long size;
+            int hashIterations;
+            long synced;
+            LocalFilter replica;
+            if (countingFilterNames.contains(filterName)) {
+                // 计数器和序号一起读取: 计数器的修改和序号在同一个脚本里
+                CountingBloomFilter countingFilter = new CountingBloomFilter(stringRedisTemplate, filterName, removalMarkerTtlSeconds);
+                size = countingFilter.getSize();
+                hashIterations = countingFilter.getHashIterations();
+                CountingBloomFilter.Snapshot snapshot = countingFilter.readSnapshot();
+                synced = snapshot.sequence();
+                replica = LocalCountingBloomFilter.fromRedisCounters(size, hashIterations, snapshot.counters());
+            } else {
+                // 普通过滤器先写位图再分配序号, 先读序号再读位图
+                RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(filterName);
+                size = bloomFilter.getSize();
+                hashIterations = bloomFilter.getHashIterations();
+                synced = readSequence(filterName);
+                byte[] bits = redissonClient.<byte[]>getBucket(filterName, ByteArrayCodec.INSTANCE).get();
+                replica = LocalBloomFilter.fromRedisBitmap(size, hashIterations, bits);
+            }
+
+            // 和 onMessage 互斥: 替换之后收到的修改只应用到新副本一次
+            synchronized (sequence) {
+                filters.put(filterName, replica);
+                for (Change change : pending) {
+                    if (change.sequence() == 0 || change.sequence() > synced) {
+                        apply(replica, filterName, change);
+                    }
+                }
+                sequence.applied = Math.max(sequence.applied, synced);
+                sequence.advance();
+                sequence.replaced = false;
+            }
+            writeSnapshot(filterName, replica);
+            log.info("Bloom 副本已同步 filter={} size={} hashIterations={} 序号={} 填充率={}",
+                    filterName, size, hashIterations, synced, String.format("%.4f", replica.fillRatio()));
+        } finally {
+            synchronized (sequence) {
+                pendingDuringResync.remove(filterName, pending);
+            }
+        }
+    }
+
+    // 本节点发出的消息只用来推进序号, 内容在发出之前已经生效
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|", 5);
+        if (parts.length < 5 || !filterNames.contains(parts[2])) {
+            return;
+        }
+        String filterName = parts[2];
+        long sequence;
+        try {
+            sequence = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            log.warn("Bloom 副本消息序号无效: {}", parts[3]);
+            return;
+        }
+        boolean own = nodeId.equals(parts[0]);
+        List<String> values = own || parts[4].isEmpty() ? List.of() : Arrays.asList(parts[4].split("\n"));
+        switch (parts[1]) {
+            case "add" -> received(filterName, sequence, values, false);
+            case "remove" -> received(filterName, sequence, values, true);
+            case "resync" -> {
+                received(filterName, sequence, List.of(), false);
+                if (!own) {
+                    Sequence state = sequences.get(filterName);
+                    synchronized (state) {
+                        state.replaced = true;
+                    }
+                    resyncExecutor.execute(() -> resyncQuietly(filterName));
+                }
+            }
+            default -> log.warn("未知的 Bloom 副本消息: {}", parts[1]);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 等正在进行的同步结束, 避免和下面的快照同时写文件
+        resyncExecutor.shutdownNow();
+        try {
+            resyncExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        filters.forEach(this::writeSnapshot);
+    }
+
+    // 计数过滤器: 序号已由脚本分配, 本节点直接记为已收到
+    private void changed(String filterName, long sequence, Collection<String> values, boolean removed) {
+        if (!enabled || !countingFilterNames.contains(filterName) || !filterNames.contains(filterName) || values.isEmpty()) {
+            return;
+        }
+        received(filterName, sequence, values, removed);
+        String operation = removed ? "remove" : "add";
+        try {
+            stringRedisTemplate.convertAndSend(channel,
+                    nodeId + "|" + operation + "|" + filterName + "|" + sequence + "|" + String.join("\n", values));
+        } catch (Exception e) {
+            // 序号已经分配, 其他节点核对序号时发现缺口后重新同步
+            log.error("Bloom 副本广播失败 operation={} filter={} count={}: {}", operation, filterName, values.size(), e.getMessage());
+        }
+    }
+
+    // 分配序号并广播, 返回序号
+    private long publishSequenced(String operation, String filterName, Collection<String> values) {
+        Long sequence = stringRedisTemplate.execute(PUBLISH_SCRIPT, List.of(sequenceKey(filterName)),
+                channel, nodeId + "|" + operation + "|" + filterName + "|", "|" + String.join("\n", values));
+        if (sequence == null) {
+            throw new IllegalStateException("Bloom 副本广播没有返回序号 filter=" + filterName);
+        }
+        return sequence;
+    }
+
+    // 同一个序号只应用一次; 乱序到达的修改直接应用 (计数加减和置位与顺序无关), 缺口由序号记录
+    private void received(String filterName, long sequence, Collection<String> values, boolean removed) {
+        Sequence state = sequences.get(filterName);
+        synchronized (state) {
+            if (state.receive(sequence)) {
+                apply(filterName, sequence, values, removed);
+            }
+        }
+    }
+
+    private long readSequence(String filterName) {
+        String value = stringRedisTemplate.opsForValue().get(sequenceKey(filterName));
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    // 和 CountingBloomFilter.sequenceKey 相同
+    private static String sequenceKey(String filterName) {
+        return "{" + filterName + "}:seq";
+    }
+
+    // 调用方持有该过滤器的 Sequence 锁
+    private void apply(String filterName, long sequence, Collection<String> values, boolean removed) {
+        LocalFilter filter = filters.get(filterName);
+        Queue<Change> pending = pendingDuringResync.get(filterName);
+        for (String value : values) {
+            Change change = new Change(sequence, removed, value);
+            if (filter != null) {
+                apply(filter, filterName, change);
+            }
+            if (pending != null) {
+                pending.add(change);
+            }
+        }
+    }
+
+    private void apply(LocalFilter filter, String filterName, Change change) {
+        long[] hash = hash(filterName, change.value());
+        if (!change.removed()) {
+            filter.add(hash[0], hash[1]);
+        } else if (filter instanceof LocalCountingBloomFilter counting) {
+            counting.remove(hash[0], hash[1]);
+        }
+    }
+
+    // 计数过滤器的哈希由 LocalCountingBloomFilter 计算, 普通过滤器与 RedissonBloomFilter.hash(Object) 相同
+    public long[] hash(String filterName, String value) {
+        if (countingFilterNames.contains(filterName)) {
+            return LocalCountingBloomFilter.hash(value);
+        }
+        ByteBuf state;
+        try {
+            state = codec.getValueEncoder().encode(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            return Hash.hash128(state);
+        } finally {
+            state.release();
+        }
+    }
+
+    private static List<String> names(String names) {
+        return Arrays.stream(names.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .toList();
+    }
+
+    private Path snapshotPath(String filterName) {
+        String suffix = countingFilterNames.contains(filterName) ? ".cbloom" : ".bloom";
+        return snapshotDir.resolve(filterName.replaceAll("[^A-Za-z0-9_-]", "_") + suffix);
+    }
+
+    private void loadSnapshot(String filterName) {
+        Path file = snapshotPath(filterName);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            filters.put(filterName, countingFilterNames.contains(filterName)
+                    ? LocalCountingBloomFilter.readFrom(in)
+                    : LocalBloomFilter.readFrom(in));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Bloom 副本快照加载失败 {}: {}", file, e.getMessage());
+        }
+    }
+
+    // 先写临时文件再改名, 进程中途退出不会留下半个快照
+    private void writeSnapshot(String filterName, LocalFilter filter) {
+        Path file = snapshotPath(filterName);
+        try {
+            Files.createDirectories(snapshotDir);
+            Path temp = Files.createTempFile(snapshotDir, "bloom-", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                filter.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Bloom 副本快照写入失败 {}: {}", file, e.getMessage());
+        }
+    }
+}
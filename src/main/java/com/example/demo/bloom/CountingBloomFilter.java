@@ -0,0 +1,300 @@
+package com.example.demo.bloom;
+
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Redis 里的计数 Bloom 过滤器, 用法和 RBloomFilter 相同, 另外支持删除
+// 1. 计数器: "{name}:counters", 每个位置一个 BITFIELD u4 计数器, 添加加 1, 删除减 1, 到 15 后饱和不再变化
+// 2. 配置: "{name}:counters:config", 字段和 Redisson 的过滤器配置相同 (size, hashIterations, ...)
+// 3. 已添加集合: "{name}:added", 同一个值只加一次计数; 只有确实添加过的值才会被删除 (减计数)
+//    事件重放 (Outbox 重试), 重建时的追加都不会把计数加大, 没有添加过但碰巧判为存在的值删除时也不会减掉其他值的计数
+// 4. 删除标记: "{name}:removed:<值>", 删除后在标记有效期内不再添加, 删除之后才重放的新增事件不会把值加回来
+// 5. 序号: "{name}:seq", 有改动的添加 / 删除在同一个脚本里加 1, 本地副本 (BloomFilterReplica) 按序号发现丢失的广播
+// 位置在 Java 里计算 (LocalCountingBloomFilter), 脚本先核对配置, 过滤器被重建替换后旧配置的写入会被拒绝
+// 所有 key 带同一个 hash tag, 集群模式下脚本可以一起操作
+public class CountingBloomFilter {
+
+    // 每次脚本调用最多处理的值数量
+    private static final int BATCH_SIZE = 5_000;
+
+    // 配置里的标志字段: 有已添加集合的过滤器才有, 之前的格式需要重建
+    private static final String MARKERS_FIELD = "addedMarkers";
+
+    private static final String CHECK_CONFIG =
+            "if redis.call('hget', KEYS[2], 'size') ~= ARGV[1] or redis.call('hget', KEYS[2], 'hashIterations') ~= ARGV[2] then " +
+                    "   return redis.error_reply('Counting Bloom filter config has been changed') " +
+                    "end ";
+
+    private static final RedisScript<Long> INIT_SCRIPT = RedisScript.of(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "redis.call('hset', KEYS[1], 'size', ARGV[1], 'hashIterations', ARGV[2], " +
+                    "   'expectedInsertions', ARGV[3], 'falseProbability', ARGV[4], '" + MARKERS_FIELD + "', 1) " +
+                    "return 1", Long.class);
+
+    // KEYS[4]: 序号, KEYS[5..]: 每个值的删除标记; ARGV: size, hashIterations, 每个值: 值 + hashIterations 个位置
+    // 没有删除标记且第一次加入已添加集合的值才加 1; 返回 {分配的序号, 被添加的值的位置 (从 1 开始)...}, 没有改动时序号为 0
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ADD_SCRIPT = RedisScript.of(CHECK_CONFIG +
+            "local k = tonumber(ARGV[2]) " +
+            "local added = {} " +
+            "local ops = {} " +
+            "local v = 0 " +
+            "for first = 3, #ARGV, k + 1 do " +
+            "   v = v + 1 " +
+            "   if redis.call('exists', KEYS[4 + v]) == 0 and redis.call('sadd', KEYS[3], ARGV[first]) == 1 then " +
+            "       for i = first + 1, first + k do " +
+            "           table.insert(ops, 'INCRBY') table.insert(ops, 'u4') table.insert(ops, '#' .. ARGV[i]) table.insert(ops, 1) " +
+            "       end " +
+            "       if #ops >= 4000 then redis.call('bitfield', KEYS[1], 'OVERFLOW', 'SAT', unpack(ops)) ops = {} end " +
+            "       table.insert(added, v) " +
+            "   end " +
+            "end " +
+            "if #ops > 0 then redis.call('bitfield', KEYS[1], 'OVERFLOW', 'SAT', unpack(ops)) end " +
+            assignSequence("added"), List.class);
+
+    // 返回每个值是否可能存在 (1 / 0); ARGV: size, hashIterations, 每个值的 hashIterations 个位置
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CONTAINS_SCRIPT = RedisScript.of(CHECK_CONFIG +
+            "local k = tonumber(ARGV[2]) " +
+            "local result = {} " +
+            "for first = 3, #ARGV, k do " +
+            "   local ops = {} " +
+            "   for i = first, first + k - 1 do table.insert(ops, 'GET') table.insert(ops, 'u4') table.insert(ops, '#' .. ARGV[i]) end " +
+            "   local present = 1 " +
+            "   for _, count in ipairs(redis.call('bitfield', KEYS[1], unpack(ops))) do " +
+            "       if count == 0 then present = 0 break end " +
+            "   end " +
+            "   table.insert(result, present) " +
+            "end " +
+            "return result", List.class);
+
+    // KEYS[4]: 序号, KEYS[5..]: 每个值的删除标记; ARGV: size, hashIterations, 标记过期秒数, 每个值: 值 + hashIterations 个位置
+    // 每个值都写删除标记; 只有从已添加集合里移除成功 (确实添加过, 且是第一次删除) 才减 1, 饱和的计数器不减
+    // 返回 {分配的序号, 被删除的值的位置 (从 1 开始)...}, 没有改动时序号为 0
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REMOVE_SCRIPT = RedisScript.of(CHECK_CONFIG +
+            "local k = tonumber(ARGV[2]) " +
+            "local removed = {} " +
+            "local v = 0 " +
+            "for first = 4, #ARGV, k + 1 do " +
+            "   v = v + 1 " +
+            "   redis.call('set', KEYS[4 + v], 1, 'EX', ARGV[3]) " +
+            "   if redis.call('srem', KEYS[3], ARGV[first]) == 1 then " +
+            "       local ops = {} " +
+            "       for i = first + 1, first + k do table.insert(ops, 'GET') table.insert(ops, 'u4') table.insert(ops, '#' .. ARGV[i]) end " +
+            "       local decrements = {} " +
+            "       for j, count in ipairs(redis.call('bitfield', KEYS[1], unpack(ops))) do " +
+            "           if count > 0 and count < 15 then " +
+            "               table.insert(decrements, 'INCRBY') table.insert(decrements, 'u4') " +
+            "               table.insert(decrements, '#' .. ARGV[first + j]) table.insert(decrements, -1) " +
+            "           end " +
+            "       end " +
+            "       if #decrements > 0 then redis.call('bitfield', KEYS[1], 'OVERFLOW', 'SAT', unpack(decrements)) end " +
+            "       table.insert(removed, v) " +
+            "   end " +
+            "end " +
+            assignSequence("removed"), List.class);
+
+    // 序号和计数器在同一个脚本里读取: 序号不大于读到的序号的修改都已包含在计数器里
+    private static final byte[] SNAPSHOT_SCRIPT =
+            "return {redis.call('get', KEYS[1]), redis.call('get', KEYS[2])}".getBytes(StandardCharsets.UTF_8);
+
+    // 一次脚本调用真正改动的值和为它们分配的序号
+    public record Update(long sequence, List<String> values) {
+    }
+
+    // 计数器的原始字节 (还没有写入过时为 null) 和读取时的序号
+    public record Snapshot(long sequence, byte[] counters) {
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String name;
+    private final long removalMarkerTtlSeconds;
+
+    // 缓存的 size / hashIterations; 脚本报告配置已变化时清空重新读取
+    private volatile long[] config;
+
+    public CountingBloomFilter(StringRedisTemplate stringRedisTemplate, String name, long removalMarkerTtlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.name = name;
+        this.removalMarkerTtlSeconds = removalMarkerTtlSeconds;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String countersKey() {
+        return "{" + name + "}:counters";
+    }
+
+    public String configKey() {
+        return "{" + name + "}:counters:config";
+    }
+
+    public String addedKey() {
+        return "{" + name + "}:added";
+    }
+
+    public String sequenceKey() {
+        return "{" + name + "}:seq";
+    }
+
+    // 和 RBloomFilter.tryInit 相同: 已经初始化过时不修改, 返回 false
+    public boolean tryInit(long expectedInsertions, double falseProbability) {
+        if (expectedInsertions <= 0 || falseProbability <= 0 || falseProbability >= 1) {
+            throw new IllegalArgumentException("expectedInsertions 必须大于 0, falseProbability 必须在 (0, 1) 之间");
+        }
+        long size = (long) (-expectedInsertions * Math.log(falseProbability) / (Math.log(2) * Math.log(2)));
+        int hashIterations = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+        Long created = stringRedisTemplate.execute(INIT_SCRIPT, List.of(configKey()), String.valueOf(size),
+                String.valueOf(hashIterations), String.valueOf(expectedInsertions), String.valueOf(falseProbability));
+        config = null;
+        return created != null && created == 1;
+    }
+
+    // 之前的格式 (没有已添加集合) 也算未初始化, 由调用方重建
+    public boolean isInitialized() {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForHash().hasKey(configKey(), MARKERS_FIELD));
+    }
+
+    // 以下三个读取 Redis 里的最新配置, 未初始化时抛出 IllegalStateException (和 RBloomFilter 一样)
+    public long getSize() {
+        return readConfig()[0];
+    }
+
+    public int getHashIterations() {
+        return (int) readConfig()[1];
+    }
+
+    public long getExpectedInsertions() {
+        Object value = stringRedisTemplate.opsForHash().get(configKey(), "expectedInsertions");
+        if (value == null) {
+            throw new IllegalStateException("计数 Bloom 过滤器 " + name + " 未初始化");
+        }
+        return Long.parseLong(value.toString());
+    }
+
+    // 添加值, 返回真正被添加的值 (之前已经添加过或已经删除的不算), 每批一个序号
+    public List<Update> add(Collection<String> values) {
+        return update(ADD_SCRIPT, values, List.of());
+    }
+
+    public boolean contains(String value) {
+        return containsAll(List.of(value))[0];
+    }
+
+    public boolean[] containsAll(List<String> values) {
+        boolean[] results = new boolean[values.size()];
+        for (int from = 0; from < values.size(); from += BATCH_SIZE) {
+            List<String> batch = values.subList(from, Math.min(values.size(), from + BATCH_SIZE));
+            List<?> present = execute(CONTAINS_SCRIPT, List.of(countersKey(), configKey()), List.of(), batch, false);
+            for (int i = 0; i < batch.size(); i++) {
+                results[from + i] = ((Number) present.get(i)).longValue() == 1;
+            }
+        }
+        return results;
+    }
+
+    // 删除值, 返回真正被删除的值 (没有添加过或之前已经删除过的不算), 每批一个序号
+    public List<Update> remove(Collection<String> values) {
+        return update(REMOVE_SCRIPT, values, List.of(String.valueOf(removalMarkerTtlSeconds)));
+    }
+
+    // 用于初始化本地副本; 计数器是二进制, 不经过 StringRedisTemplate 的序列化
+    public Snapshot readSnapshot() {
+        byte[] sequenceKey = sequenceKey().getBytes(StandardCharsets.UTF_8);
+        byte[] countersKey = countersKey().getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<Snapshot>) connection -> {
+            List<Object> values = connection.scriptingCommands().eval(SNAPSHOT_SCRIPT, ReturnType.MULTI, 2, sequenceKey, countersKey);
+            byte[] sequence = values != null ? (byte[]) values.get(0) : null;
+            byte[] counters = values != null ? (byte[]) values.get(1) : null;
+            return new Snapshot(sequence != null ? Long.parseLong(new String(sequence, StandardCharsets.UTF_8)) : 0, counters);
+        });
+    }
+
+    public void delete() {
+        stringRedisTemplate.delete(List.of(countersKey(), configKey(), addedKey()));
+        config = null;
+    }
+
+    // 添加 / 删除: 分批执行脚本, 返回脚本报告的真正改动的值, 没有改动的批次不返回
+    @SuppressWarnings("rawtypes")
+    private List<Update> update(RedisScript<List> script, Collection<String> values, List<String> extraArgs) {
+        List<String> list = new ArrayList<>(values);
+        List<Update> updates = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += BATCH_SIZE) {
+            List<String> batch = list.subList(from, Math.min(list.size(), from + BATCH_SIZE));
+            List<String> keys = new ArrayList<>(batch.size() + 4);
+            keys.add(countersKey());
+            keys.add(configKey());
+            keys.add(addedKey());
+            keys.add(sequenceKey());
+            batch.forEach(value -> keys.add("{" + name + "}:removed:" + value));
+            List<?> result = execute(script, keys, extraArgs, batch, true);
+            if (result.size() > 1) {
+                List<String> changed = new ArrayList<>(result.size() - 1);
+                for (Object position : result.subList(1, result.size())) {
+                    changed.add(batch.get(((Number) position).intValue() - 1));
+                }
+                updates.add(new Update(((Number) result.get(0)).longValue(), changed));
+            }
+        }
+        return updates;
+    }
+
+    // 参数: size, hashIterations, 额外参数, 每个值的 (值,) 位置
+    private <T> T execute(RedisScript<T> script, List<String> keys, List<String> extraArgs, List<String> values,
+                          boolean withValues) {
+        long[] current = config;
+        if (current == null) {
+            current = readConfig();
+            config = current;
+        }
+        long size = current[0];
+        int hashIterations = (int) current[1];
+        String[] args = new String[2 + extraArgs.size() + values.size() * (hashIterations + (withValues ? 1 : 0))];
+        int arg = 0;
+        args[arg++] = String.valueOf(size);
+        args[arg++] = String.valueOf(hashIterations);
+        for (String extra : extraArgs) {
+            args[arg++] = extra;
+        }
+        for (String value : values) {
+            if (withValues) {
+                args[arg++] = value;
+            }
+            long[] hash = LocalCountingBloomFilter.hash(value);
+            for (long index : LocalCountingBloomFilter.indexes(hash[0], hash[1], hashIterations, size)) {
+                args[arg++] = Long.toString(index);
+            }
+        }
+        try {
+            return stringRedisTemplate.execute(script, keys, (Object[]) args);
+        } catch (RuntimeException e) {
+            // 可能是重建替换了配置, 下次重新读取
+            config = null;
+            throw e;
+        }
+    }
+
+    // 添加 / 删除脚本的结尾: 有改动时分配序号, 放在返回列表的第一个
+    private static String assignSequence(String changed) {
+        return "if #" + changed + " == 0 then return {0} end " +
+                "table.insert(" + changed + ", 1, redis.call('incr', KEYS[4])) " +
+                "return " + changed;
+    }
+
+    private long[] readConfig() {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(configKey(), List.of("size", "hashIterations"));
+        if (values == null || values.get(0) == null || values.get(1) == null) {
+            throw new IllegalStateException("计数 Bloom 过滤器 " + name + " 未初始化");
+        }
+        return new long[]{Long.parseLong(values.get(0).toString()), Long.parseLong(values.get(1).toString())};
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.demo.bloom;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Redisson RBloomFilter 位图的进程内副本, 位置计算和 Redisson 完全一致:
+// h1, h2 = HighwayHash128(编码后的值); 第 i 个位置 = (h & Long.MAX_VALUE) % size, h 交替累加 h2 / h1
+// 位序和 Redis SETBIT 相同 (字节内高位在前), 可以直接用 GET 取回的字节初始化
+public final class LocalBloomFilter implements LocalFilter {
+
+    private static final int SNAPSHOT_MAGIC = 0x424C4D31; // "BLM1"
+
+    private final long size;
+    private final int hashIterations;
+    private final AtomicLongArray words;
+
+    public LocalBloomFilter(long size, int hashIterations) {
+        if (size <= 0 || hashIterations <= 0) {
+            throw new IllegalArgumentException("size 和 hashIterations 必须大于 0");
+        }
+        this.size = size;
+        this.hashIterations = hashIterations;
+        this.words = new AtomicLongArray(Math.toIntExact((size + 63) >>> 6));
+    }
+
+    // bits 为 Redis 里的位图字符串, 可能比 size / 8 短 (末尾没有置位的部分不占空间)
+    public static LocalBloomFilter fromRedisBitmap(long size, int hashIterations, byte[] bits) {
+        LocalBloomFilter filter = new LocalBloomFilter(size, hashIterations);
+        if (bits != null) {
+            filter.load(bits, Math.min(bits.length, (int) ((size + 7) >>> 3)));
+        }
+        return filter;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int hashIterations() {
+        return hashIterations;
+    }
+
+    @Override
+    public boolean contains(long hash1, long hash2) {
+        long hash = hash1;
+        for (int i = 0; i < hashIterations; i++) {
+            long index = (hash & Long.MAX_VALUE) % size;
+            if ((words.get((int) (index >>> 6)) & mask(index)) == 0) {
+                return false;
+            }
+            hash += (i % 2 == 0) ? hash2 : hash1;
+        }
+        return true;
+    }
+
+    @Override
+    public void add(long hash1, long hash2) {
+        long hash = hash1;
+        for (int i = 0; i < hashIterations; i++) {
+            long index = (hash & Long.MAX_VALUE) % size;
+            int word = (int) (index >>> 6);
+            long mask = mask(index);
+            long current;
+            while (((current = words.get(word)) & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                // 并发写同一个字, 重试
+            }
+            hash += (i % 2 == 0) ? hash2 : hash1;
+        }
+    }
+
+    // 已置位的比例
+    @Override
+    public double fillRatio() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return (double) set / size;
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(size);
+        out.writeInt(hashIterations);
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    public static LocalBloomFilter readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("不是 Bloom 副本快照文件");
+        }
+        LocalBloomFilter filter = new LocalBloomFilter(in.readLong(), in.readInt());
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.words.set(i, in.readLong());
+        }
+        return filter;
+    }
+
+    // 第 index 位在字里的掩码: 字按大端由 8 个字节组成, 和 Redis 位图的字节 / 位顺序对应
+    private static long mask(long index) {
+        return 1L << (63 - (index & 63));
+    }
+
+    private void load(byte[] bits, int length) {
+        for (int word = 0; word << 3 < length; word++) {
+            long value = 0;
+            for (int b = 0; b < 8; b++) {
+                int offset = (word << 3) + b;
+                value = (value << 8) | (offset < length ? bits[offset] & 0xFF : 0);
+            }
+            words.set(word, value);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.demo.bloom;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.redisson.misc.Hash;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 计数 Bloom 过滤器 (CountingBloomFilter) 的进程内副本: 每个位置是 4 位计数器, 支持删除
+// 计数器布局和 Redis BITFIELD u4 #i 相同 (第 i 个计数器在第 4i 位, 字节内高位在前), 可以直接用 GET 取回的字节初始化
+// 计数器加到 15 后不再变化 (饱和), 也不再减少, 否则会把其他值误删成不存在
+public final class LocalCountingBloomFilter implements LocalFilter {
+
+    private static final int SNAPSHOT_MAGIC = 0x43424631; // "CBF1"
+    private static final long MAX_COUNT = 15;
+
+    private final long size;
+    private final int hashIterations;
+    // 每个 long 存 16 个计数器
+    private final AtomicLongArray words;
+
+    public LocalCountingBloomFilter(long size, int hashIterations) {
+        if (size <= 0 || hashIterations <= 0) {
+            throw new IllegalArgumentException("size 和 hashIterations 必须大于 0");
+        }
+        this.size = size;
+        this.hashIterations = hashIterations;
+        this.words = new AtomicLongArray(Math.toIntExact((size + 15) >>> 4));
+    }
+
+    // bytes 为 Redis 里的计数器字符串, 可能比 size / 2 短 (末尾全为 0 的部分不占空间)
+    public static LocalCountingBloomFilter fromRedisCounters(long size, int hashIterations, byte[] bytes) {
+        LocalCountingBloomFilter filter = new LocalCountingBloomFilter(size, hashIterations);
+        if (bytes != null) {
+            filter.load(bytes, Math.min(bytes.length, (int) ((size + 1) >>> 1)));
+        }
+        return filter;
+    }
+
+    // 值的两个哈希: 直接对 UTF-8 字节做 HighwayHash128, 不依赖 Redisson 编解码器
+    public static long[] hash(String value) {
+        ByteBuf state = Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.UTF_8));
+        try {
+            return Hash.hash128(state);
+        } finally {
+            state.release();
+        }
+    }
+
+    // 计数器位置, 和 Redisson RBloomFilter 的位置计算方式相同
+    public static long[] indexes(long hash1, long hash2, int hashIterations, long size) {
+        long[] indexes = new long[hashIterations];
+        long hash = hash1;
+        for (int i = 0; i < hashIterations; i++) {
+            indexes[i] = (hash & Long.MAX_VALUE) % size;
+            hash += (i % 2 == 0) ? hash2 : hash1;
+        }
+        return indexes;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int hashIterations() {
+        return hashIterations;
+    }
+
+    @Override
+    public boolean contains(long hash1, long hash2) {
+        for (long index : indexes(hash1, hash2, hashIterations, size)) {
+            if (count(index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void add(long hash1, long hash2) {
+        for (long index : indexes(hash1, hash2, hashIterations, size)) {
+            update(index, 1);
+        }
+    }
+
+    // 值不存在时不做任何修改, 返回 false
+    public boolean remove(long hash1, long hash2) {
+        long[] indexes = indexes(hash1, hash2, hashIterations, size);
+        for (long index : indexes) {
+            if (count(index) == 0) {
+                return false;
+            }
+        }
+        for (long index : indexes) {
+            update(index, -1);
+        }
+        return true;
+    }
+
+    public long count(long index) {
+        return (words.get((int) (index >>> 4)) >>> shift(index)) & MAX_COUNT;
+    }
+
+    // 非零计数器的比例
+    @Override
+    public double fillRatio() {
+        long nonZero = 0;
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            word |= word >>> 1;
+            word |= word >>> 2;
+            nonZero += Long.bitCount(word & 0x1111111111111111L);
+        }
+        return (double) nonZero / size;
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(size);
+        out.writeInt(hashIterations);
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    public static LocalCountingBloomFilter readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("不是计数 Bloom 副本快照文件");
+        }
+        LocalCountingBloomFilter filter = new LocalCountingBloomFilter(in.readLong(), in.readInt());
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.words.set(i, in.readLong());
+        }
+        return filter;
+    }
+
+    // 计数器加减 1: 为 0 时不减, 已饱和时不加也不减
+    private void update(long index, int delta) {
+        int word = (int) (index >>> 4);
+        int shift = shift(index);
+        long current;
+        long count;
+        do {
+            current = words.get(word);
+            count = (current >>> shift) & MAX_COUNT;
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return;
+            }
+        } while (!words.compareAndSet(word, current, current + ((long) delta << shift)));
+    }
+
+    // 第 index 个计数器在字里的位移: 字按大端由 8 个字节组成, 每个字节高 4 位是偶数号计数器
+    private static int shift(long index) {
+        return 60 - (int) ((index & 15) << 2);
+    }
+
+    private void load(byte[] bytes, int length) {
+        for (int word = 0; word << 3 < length; word++) {
+            long value = 0;
+            for (int b = 0; b < 8; b++) {
+                int offset = (word << 3) + b;
+                value = (value << 8) | (offset < length ? bytes[offset] & 0xFF : 0);
+            }
+            words.set(word, value);
+        }
+    }
+}
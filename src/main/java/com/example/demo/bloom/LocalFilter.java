@@ -0,0 +1,19 @@
+package com.example.demo.bloom;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// 进程内的过滤器副本, 按两个 64 位哈希值定位; 本地副本 (BloomFilterReplica) 对普通和计数过滤器一视同仁
+public interface LocalFilter {
+
+    boolean contains(long hash1, long hash2);
+
+    void add(long hash1, long hash2);
+
+    int hashIterations();
+
+    // 已占用 (非零) 位置的比例
+    double fillRatio();
+
+    void writeTo(DataOutputStream out) throws IOException;
+}
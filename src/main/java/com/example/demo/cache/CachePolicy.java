@@ -0,0 +1,45 @@
+package com.example.demo.cache;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// 缓存过期策略: 软 TTL 之后仍可返回旧值 (stale window), 同时后台刷新
+@Getter
+public class CachePolicy {
+
+    private static final double DEFAULT_JITTER = 0.1;
+    private static final double DEFAULT_BETA = 1.0;
+
+    private final String region;          // 统计用的区域名, 如 product
+    private final long softTtlMillis;     // 软过期: 过了之后返回旧值并后台刷新
+    private final long staleTtlMillis;    // 软过期后旧值还能用多久, 之后 Redis 真正删除
+    private final long nullTtlMillis;     // 数据不存在时墓碑 (或空的查询结果) 保留多久, 防穿透
+    private final double jitter;          // TTL 随机抖动比例, 避免同一批 key 同时过期
+    private final double beta;            // XFetch 提前过期系数, 越大越早刷新
+
+    public CachePolicy(String region, long softTtlMillis, long staleTtlMillis, long nullTtlMillis,
+                       double jitter, double beta) {
+        this.region = region;
+        this.softTtlMillis = softTtlMillis;
+        this.staleTtlMillis = staleTtlMillis;
+        this.nullTtlMillis = nullTtlMillis;
+        this.jitter = jitter;
+        this.beta = beta;
+    }
+
+    public static CachePolicy of(String region, Duration softTtl, Duration staleTtl, Duration nullTtl) {
+        return new CachePolicy(region, softTtl.toMillis(), staleTtl.toMillis(), nullTtl.toMillis(),
+                DEFAULT_JITTER, DEFAULT_BETA);
+    }
+
+    // 带抖动的软 TTL
+    public long jitteredSoftTtlMillis() {
+        if (jitter <= 0) {
+            return softTtlMillis;
+        }
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return Math.max(1, (long) (softTtlMillis * factor));
+    }
+}
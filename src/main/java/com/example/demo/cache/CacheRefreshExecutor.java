@@ -0,0 +1,69 @@
+package com.example.demo.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 后台刷新线程池: 有界队列, 同一个 key 同时只刷新一次, 队列满直接丢弃 (旧值还能继续用)
+@Slf4j
+@Component
+public class CacheRefreshExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final MeterRegistry meterRegistry;
+
+    public CacheRefreshExecutor(MeterRegistry meterRegistry,
+                                @Value("${app.cache.refresh.core-threads:2}") int coreThreads,
+                                @Value("${app.cache.refresh.max-threads:4}") int maxThreads,
+                                @Value("${app.cache.refresh.queue-capacity:256}") int queueCapacity) {
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(coreThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        meterRegistry.gauge("cache.refresh.queue", executor, e -> e.getQueue().size());
+    }
+
+    public void submit(String key, String region, Runnable task) {
+        if (!refreshing.add(key)) {
+            return; // 已经在刷新
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                    count(region, "success");
+                } catch (Exception e) {
+                    log.error("缓存后台刷新失败 key={}: {}", key, e.getMessage());
+                    count(region, "failure");
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            count(region, "rejected");
+        }
+    }
+
+    private void count(String region, String outcome) {
+        meterRegistry.counter("cache.refresh", "region", region, "outcome", outcome).increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
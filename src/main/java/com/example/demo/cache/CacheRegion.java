@@ -0,0 +1,134 @@
+package com.example.demo.cache;
+
+import com.example.demo.cache.codec.CacheSerde;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 类型化的缓存区域: key 编码 (前缀 + id), 预编译的序列化器, 过期策略, 空值策略和独立的指标
+// 由 ReadThroughCache.region(...) 创建, 业务代码不再拼 key, 也不再每次创建 TypeReference
+public class CacheRegion<K, V> {
+
+    // 数据不存在时怎么缓存
+    public enum NullCaching {
+        TOMBSTONE,  // 记入本地墓碑集合 (NegativeCache), 不写 Redis
+        VALUE       // 以空值写入 Redis; 查询结果受 tag 版本校验, 只能用这种
+    }
+
+    private final ReadThroughCache cache;
+    private final String keyPrefix;
+    private final CachePolicy policy;
+    private final NullCaching nullCaching;
+    private final CacheSerde serde;
+
+    // 指标在创建时注册, 读取路径上不再查找
+    final Counter hits;
+    final Counter staleHits;
+    final Counter misses;
+    final Counter negativeHits;
+    private final Timer latency;
+
+    CacheRegion(ReadThroughCache cache, String keyPrefix, CachePolicy policy, NullCaching nullCaching,
+                CacheSerde serde, MeterRegistry meterRegistry) {
+        this.cache = cache;
+        this.keyPrefix = keyPrefix;
+        this.policy = policy;
+        this.nullCaching = nullCaching;
+        this.serde = serde;
+        this.hits = requests(meterRegistry, "hit");
+        this.staleHits = requests(meterRegistry, "stale");
+        this.misses = requests(meterRegistry, "miss");
+        this.negativeHits = requests(meterRegistry, "negative");
+        this.latency = meterRegistry.timer("cache.latency", "region", policy.getRegion());
+    }
+
+    public String key(K id) {
+        return keyPrefix + id;
+    }
+
+    public V get(K id, Function<K, V> loader) {
+        long start = System.nanoTime();
+        try {
+            return cache.get(this, key(id), null, () -> loader.apply(id));
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // 查询结果: 记录 tags 的版本, 读取时一次 MGET 校验 (见 TagVersions)
+    public V get(K id, Collection<String> tags, Function<K, V> loader) {
+        long start = System.nanoTime();
+        try {
+            return cache.get(this, key(id), tags, () -> loader.apply(id));
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // 一次 MGET, 未命中的交给 bulkLoader 一次回源; 不存在的 id 值为 null
+    public Map<K, V> getAll(List<K> ids, Function<List<K>, Map<K, V>> bulkLoader) {
+        long start = System.nanoTime();
+        try {
+            return cache.getAll(this, ids, bulkLoader);
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // 只读缓存, 不回源
+    public V peek(K id) {
+        return cache.peek(this, key(id));
+    }
+
+    public void put(K id, V value) {
+        cache.put(this, key(id), value);
+    }
+
+    // 批量写入 (Pipeline), 值为 null 表示数据不存在
+    public void putAll(Map<K, V> values) {
+        Map<String, V> keyed = new LinkedHashMap<>();
+        values.forEach((id, value) -> keyed.put(key(id), value));
+        cache.putAll(this, keyed);
+    }
+
+    // 删除缓存值 (Pipeline), 下次读取时回源
+    public void evictAll(Collection<K> ids) {
+        cache.evictAll(ids.stream().map(this::key).toList());
+    }
+
+    public void putMissing(K id) {
+        cache.putMissing(this, key(id));
+    }
+
+    // 只查本地墓碑, 没有网络 I/O
+    public boolean isKnownMissing(K id) {
+        return nullCaching == NullCaching.TOMBSTONE && cache.isKnownMissing(key(id));
+    }
+
+    public void invalidateTags(Collection<String> tags) {
+        cache.invalidateTags(tags);
+    }
+
+    public CachePolicy policy() {
+        return policy;
+    }
+
+    NullCaching nullCaching() {
+        return nullCaching;
+    }
+
+    CacheSerde serde() {
+        return serde;
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String result) {
+        return meterRegistry.counter("cache.requests", "region", policy.getRegion(), "result", result);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Redis 中保存的缓存包装: 值 + 软过期时间 + 回源耗时 (XFetch 用) + 可选的 tag 版本
+@Data
+@AllArgsConstructor @NoArgsConstructor
+public class CachedValue<T> {
+
+    @JsonProperty("v")
+    private T value;
+
+    @JsonProperty("e")
+    private long softExpireAt;
+
+    @JsonProperty("d")
+    private long computeMillis;
+
+    // 依赖的 tag 及写入时的版本, 只有查询结果缓存才有
+    @JsonProperty("t")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Long> tagVersions;
+
+    public CachedValue(T value, long softExpireAt, long computeMillis) {
+        this(value, softExpireAt, computeMillis, null);
+    }
+
+    // XFetch: 回源越慢, 越早以一定概率提前刷新
+    public boolean isFresh(long now, double beta) {
+        double random = ThreadLocalRandom.current().nextDouble();
+        double earlyMillis = computeMillis * beta * -Math.log(random == 0 ? Double.MIN_VALUE : random);
+        return now + earlyMillis < softExpireAt;
+    }
+
+    @JsonIgnore
+    public boolean isMissing() {
+        return value == null;
+    }
+}
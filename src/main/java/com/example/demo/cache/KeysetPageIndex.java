@@ -0,0 +1,99 @@
+package com.example.demo.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+// Keyset 分页缓存索引: ZSET 记录每个缓存页, score = 页内最大 ID (未满的最后一页为 +inf)
+// 页 key 格式为 "<prefix><after>:<limit>"; ID 为 X 的写操作只影响 after < X <= score 的页
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KeysetPageIndex {
+
+    private static final RedisScript<Long> INVALIDATE_SCRIPT = RedisScript.of(
+            "local removed = 0 " +
+                    "for _, id in ipairs(ARGV) do " +
+                    "   local x = tonumber(id) " +
+                    "   local pages = redis.call('zrangebyscore', KEYS[1], x, '+inf') " +
+                    "   for _, page in ipairs(pages) do " +
+                    "       local after = tonumber(string.match(page, '(%-?%d+):%d+$')) " +
+                    "       if after ~= nil and after < x then " +
+                    "           redis.call('del', page) " +
+                    "           redis.call('zrem', KEYS[1], page) " +
+                    "           removed = removed + 1 " +
+                    "       end " +
+                    "   end " +
+                    "end " +
+                    "return removed", Long.class);
+
+    // 页还在索引里才更新上界; 不在说明写入缓存前已被写操作失效, 删除刚写入的页
+    private static final RedisScript<Long> COMMIT_SCRIPT = RedisScript.of(
+            "if redis.call('zscore', KEYS[1], ARGV[1]) then " +
+                    "   redis.call('zadd', KEYS[1], 'XX', ARGV[2], ARGV[1]) " +
+                    "   return 1 " +
+                    "end " +
+                    "redis.call('del', ARGV[1]) " +
+                    "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 回源前先登记一个缓存页, 上界还不知道, 按最后一页登记 (任何 ID > after 的写操作都会删除它)
+    public void reserve(String indexKey, String pageKey) {
+        stringRedisTemplate.opsForZSet().add(indexKey, pageKey, Double.POSITIVE_INFINITY);
+    }
+
+    // 页写入缓存后确认上界; upperBound 为 null 表示最后一页 (后续新增 ID 都会落在这一页)
+    // 返回 false 表示回源期间页已被写操作失效, 刚写入的页已删除
+    public boolean commit(String indexKey, String pageKey, Long upperBound) {
+        String score = upperBound != null ? String.valueOf(upperBound) : "+inf";
+        Long committed = stringRedisTemplate.execute(COMMIT_SCRIPT, Collections.singletonList(indexKey), pageKey, score);
+        return committed != null && committed == 1;
+    }
+
+    // 删除包含这些 ID 的缓存页, 返回删除的页数
+    public long invalidate(String indexKey, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Object[] args = ids.stream().map(String::valueOf).toArray();
+        Long removed = stringRedisTemplate.execute(INVALIDATE_SCRIPT, Collections.singletonList(indexKey), args);
+        log.debug("Keyset 分页缓存失效 index={} ids={} removed={}", indexKey, ids, removed);
+        return removed != null ? removed : 0;
+    }
+
+    // 清理已经自然过期的页, 防止索引无限增长
+    public void cleanup(String indexKey) {
+        Set<String> pages = stringRedisTemplate.opsForZSet().range(indexKey, 0, -1);
+        if (pages == null || pages.isEmpty()) {
+            return;
+        }
+        List<String> pageList = new ArrayList<>(pages);
+        List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String page : pageList) {
+                connection.keyCommands().exists(page.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+
+        List<String> expired = new ArrayList<>();
+        for (int i = 0; i < pageList.size(); i++) {
+            if (!Boolean.TRUE.equals(exists.get(i))) {
+                expired.add(pageList.get(i));
+            }
+        }
+        if (!expired.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(indexKey, expired.toArray());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.demo.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// L1 进程内缓存, 挡在 Redis (L2) 前面; 写操作通过 Redis Pub/Sub 通知其他节点失效
+@Slf4j
+@Component
+public class NearCache implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final List<String> prefixes;
+    private final String channel;
+    private final Cache<String, Object> cache;
+
+    // 每个节点唯一标识, 忽略自己发出的失效消息
+    private final String nodeId = UUID.randomUUID().toString();
+    // 失效次数, 用于防止 "读 Redis 期间被失效" 的旧值写回 L1
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public NearCache(StringRedisTemplate stringRedisTemplate,
+                     RedisMessageListenerContainer listenerContainer,
+                     MeterRegistry meterRegistry,
+                     @Value("${app.cache.near.enabled:true}") boolean enabled,
+                     @Value("${app.cache.near.prefixes:product:}") String prefixes,
+                     @Value("${app.cache.near.maximum-size:10000}") long maximumSize,
+                     @Value("${app.cache.near.ttl-seconds:30}") long ttlSeconds,
+                     @Value("${app.cache.near.channel:cache:invalidate}") String channel) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.prefixes = Arrays.stream(prefixes.split(","))
+                .map(String::trim)
+                .filter(p -> !p.isEmpty())
+                .toList();
+        this.channel = channel;
+        // Caffeine 默认使用 W-TinyLFU 准入策略, 按容量 + 写入后 TTL 淘汰
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "nearCache");
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        log.info("Near cache 已启用={}, prefixes={}, channel={}", enabled, prefixes, channel);
+    }
+
+    // 该 key 是否走 L1
+    public boolean supports(String key) {
+        if (!enabled) {
+            return false;
+        }
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        Object local = cache.getIfPresent(key);
+        if (local != null) {
+            return (T) local;
+        }
+
+        long version = version();
+        T value = loader.get();
+        putIfUnchanged(key, value, version);
+        return value;
+    }
+
+    public Object getIfPresent(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    // 当前失效版本号, 回源前记录, 回填时比较
+    public long version() {
+        return invalidations.get();
+    }
+
+    // 加载期间没有发生失效才写回 L1
+    public void putIfUnchanged(String key, Object value, long version) {
+        if (value != null && version == invalidations.get()) {
+            cache.put(key, value);
+        }
+    }
+
+    // 本地失效 + 广播给其他节点
+    public void invalidate(String key) {
+        invalidateAll(List.of(key));
+    }
+
+    // 多个 key 合并成一条广播消息
+    public void invalidateAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(this::invalidateLocal);
+        try {
+            stringRedisTemplate.convertAndSend(channel, nodeId + "|" + String.join("\n", keys));
+        } catch (Exception e) {
+            log.error("Near cache 失效广播失败 keys={}: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    public void invalidateLocal(String key) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.indexOf('|');
+        if (split < 0 || nodeId.equals(body.substring(0, split))) {
+            return;
+        }
+        for (String key : body.substring(split + 1).split("\n")) {
+            invalidateLocal(key);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.demo.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// 不存在的 key (墓碑) 集合: 进程内带过期时间的集合, 命中时直接 404, 不访问 Redis 也不解析 JSON
+// Redis ZSET (score = 过期时间) 作为共享副本, 新节点启动时加载; 增删通过 Pub/Sub 同步给其他节点
+@Slf4j
+@Component
+public class NegativeCache implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final String redisKey;
+    private final String channel;
+    // key -> 过期时间戳 (毫秒)
+    private final Cache<String, Long> tombstones;
+
+    // 每个节点唯一标识, 忽略自己发出的消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public NegativeCache(StringRedisTemplate stringRedisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.cache.negative.enabled:true}") boolean enabled,
+                         @Value("${app.cache.negative.maximum-size:100000}") long maximumSize,
+                         @Value("${app.cache.negative.redis-key:cache:missing}") String redisKey,
+                         @Value("${app.cache.negative.channel:cache:missing}") String channel) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.redisKey = redisKey;
+        this.channel = channel;
+        // 每个墓碑按自己的过期时间淘汰
+        this.tombstones = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String key, Long expireAt, long currentTime) {
+                        return remainingNanos(expireAt);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Long expireAt, long currentTime, long currentDuration) {
+                        return remainingNanos(expireAt);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Long expireAt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        CaffeineCacheMetrics.monitor(meterRegistry, tombstones, "negativeCache");
+        if (!enabled) {
+            return;
+        }
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        // 加载其他节点已经记录的墓碑
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(redisKey, Double.NEGATIVE_INFINITY, now);
+            Set<ZSetOperations.TypedTuple<String>> existing =
+                    stringRedisTemplate.opsForZSet().rangeByScoreWithScores(redisKey, now, Double.POSITIVE_INFINITY);
+            if (existing != null) {
+                existing.forEach(tuple -> addLocal(tuple.getValue(), tuple.getScore().longValue()));
+            }
+            log.info("Negative cache 已加载 {} 个墓碑", tombstones.estimatedSize());
+        } catch (Exception e) {
+            log.error("Negative cache 加载墓碑失败: {}", e.getMessage());
+        }
+    }
+
+    // 只查本地, 没有网络 I/O
+    public boolean contains(String key) {
+        return enabled && tombstones.getIfPresent(key) != null;
+    }
+
+    public void add(String key, long ttlMillis) {
+        addAll(List.of(key), ttlMillis);
+    }
+
+    // 记录一批不存在的 key, 合并成一次 ZADD 和一条广播
+    public void addAll(Collection<String> keys, long ttlMillis) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        keys.forEach(key -> addLocal(key, expireAt));
+        try {
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+            keys.forEach(key -> tuples.add(ZSetOperations.TypedTuple.of(key, (double) expireAt)));
+            stringRedisTemplate.opsForZSet().add(redisKey, tuples);
+            stringRedisTemplate.convertAndSend(channel, nodeId + "|+" + expireAt + "|" + String.join("\n", keys));
+        } catch (Exception e) {
+            log.error("Negative cache 同步失败 keys={}: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    // key 重新存在了 (新增/更新), 所有节点都要删除墓碑
+    public void remove(String key) {
+        removeAll(List.of(key));
+    }
+
+    // 本地没有墓碑也要广播: 其他节点可能比本节点先记录了墓碑 (或本节点的墓碑已被淘汰), 合并成一次 ZREM 和一条广播
+    public void removeAll(Collection<String> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        tombstones.invalidateAll(keys);
+        try {
+            stringRedisTemplate.opsForZSet().remove(redisKey, keys.toArray());
+            stringRedisTemplate.convertAndSend(channel, nodeId + "|-|" + String.join("\n", keys));
+        } catch (Exception e) {
+            log.error("Negative cache 删除同步失败 keys={}: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    // 定期清理 Redis 中已过期的墓碑
+    @Scheduled(fixedRate = 5 * 60 * 1000)
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(redisKey, Double.NEGATIVE_INFINITY, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("Negative cache 清理失败: {}", e.getMessage());
+        }
+    }
+
+    // 消息格式: "nodeId|+<expireAt>|key1\nkey2" 或 "nodeId|-|key1\nkey2"
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        if (parts[1].startsWith("+")) {
+            long expireAt = Long.parseLong(parts[1].substring(1));
+            for (String key : parts[2].split("\n")) {
+                addLocal(key, expireAt);
+            }
+        } else {
+            tombstones.invalidateAll(Arrays.asList(parts[2].split("\n")));
+        }
+    }
+
+    private void addLocal(String key, long expireAt) {
+        if (expireAt > System.currentTimeMillis()) {
+            tombstones.put(key, expireAt);
+        }
+    }
+
+    private static long remainingNanos(long expireAt) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expireAt - System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.demo.cache;
+
+import com.example.demo.cache.codec.CacheCodecs;
+import com.example.demo.service.RedisService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// 读穿透缓存: 软 TTL 内直接返回; 软过期后返回旧值并后台刷新 (stale-while-revalidate);
+// 彻底过期时通过 SingleFlight 回源, 数据不存在时按区域的空值策略处理
+// 业务代码通过 region(...) 创建的 CacheRegion 使用
+@Slf4j
+@Component
+public class ReadThroughCache {
+
+    private final RedisService redisService;
+    private final SingleFlight singleFlight;
+    private final CacheRefreshExecutor refreshExecutor;
+    private final TagVersions tagVersions;
+    private final NegativeCache negativeCache;
+    private final CacheCodecs cacheCodecs;
+    private final MeterRegistry meterRegistry;
+    private final TypeFactory typeFactory;
+
+    public ReadThroughCache(RedisService redisService, SingleFlight singleFlight,
+                            CacheRefreshExecutor refreshExecutor, TagVersions tagVersions,
+                            NegativeCache negativeCache, CacheCodecs cacheCodecs,
+                            MeterRegistry meterRegistry, ObjectMapper objectMapper) {
+        this.redisService = redisService;
+        this.singleFlight = singleFlight;
+        this.refreshExecutor = refreshExecutor;
+        this.tagVersions = tagVersions;
+        this.negativeCache = negativeCache;
+        this.cacheCodecs = cacheCodecs;
+        this.meterRegistry = meterRegistry;
+        this.typeFactory = objectMapper.getTypeFactory();
+    }
+
+    // 创建缓存区域: 类型只解析一次, 序列化器和指标都预先创建
+    public <K, V> CacheRegion<K, V> region(String keyPrefix, TypeReference<V> valueType, CachePolicy policy,
+                                           CacheRegion.NullCaching nullCaching) {
+        JavaType envelopeType = typeFactory.constructParametricType(CachedValue.class, typeFactory.constructType(valueType));
+        return new CacheRegion<>(this, keyPrefix, policy, nullCaching,
+                cacheCodecs.bind(keyPrefix, envelopeType), meterRegistry);
+    }
+
+    <V> V get(CacheRegion<?, V> region, String key, Collection<String> tags, Supplier<V> loader) {
+        if (region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE && negativeCache.contains(key)) {
+            region.negativeHits.increment();
+            return null;
+        }
+
+        CachePolicy policy = region.policy();
+        CachedValue<V> cached = lookup(region, key, tags);
+        if (cached != null) {
+            if (cached.isFresh(System.currentTimeMillis(), policy.getBeta())) {
+                region.hits.increment();
+                return cached.getValue();
+            }
+            // 软过期 (或 XFetch 提前刷新): 先返回旧值, 后台刷新
+            region.staleHits.increment();
+            refreshExecutor.submit(key, policy.getRegion(), () -> loadAndPut(region, key, tags, loader));
+            return cached.getValue();
+        }
+
+        region.misses.increment();
+        CachedValue<V> loaded = singleFlight.load(key,
+                () -> lookup(region, key, tags),
+                () -> {
+                    // 可能刚被上一轮回源写入
+                    CachedValue<V> latest = lookup(region, key, tags);
+                    return latest != null ? latest : loadAndPut(region, key, tags, loader);
+                });
+        return loaded.getValue();
+    }
+
+    // 批量读取: 一次 MGET, 未命中的 key 交给 bulkLoader 一次性回源, 再用 Pipeline 回填
+    // 返回 id -> 值, 不存在的 id 值为 null
+    <K, V> Map<K, V> getAll(CacheRegion<K, V> region, List<K> ids, Function<List<K>, Map<K, V>> bulkLoader) {
+        Map<K, V> results = new HashMap<>();
+        if (ids.isEmpty()) {
+            return results;
+        }
+        boolean tombstones = region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE;
+
+        // 已知不存在的 id 直接返回 null, 不进 MGET
+        List<K> lookupIds = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (K id : ids) {
+            String key = region.key(id);
+            if (tombstones && negativeCache.contains(key)) {
+                region.negativeHits.increment();
+                results.put(id, null);
+            } else {
+                lookupIds.add(id);
+                keys.add(key);
+            }
+        }
+        if (lookupIds.isEmpty()) {
+            return results;
+        }
+
+        CachePolicy policy = region.policy();
+        List<CachedValue<V>> cached = redisService.multiGetFromCache(keys, region.serde());
+
+        long now = System.currentTimeMillis();
+        List<K> missingIds = new ArrayList<>();
+        for (int i = 0; i < lookupIds.size(); i++) {
+            K id = lookupIds.get(i);
+            CachedValue<V> cachedValue = cached.get(i);
+            if (cachedValue == null) {
+                region.misses.increment();
+                missingIds.add(id);
+                continue;
+            }
+            if (cachedValue.isFresh(now, policy.getBeta())) {
+                region.hits.increment();
+            } else {
+                region.staleHits.increment();
+                String key = keys.get(i);
+                refreshExecutor.submit(key, policy.getRegion(),
+                        () -> loadAndPut(region, key, null, () -> bulkLoader.apply(List.of(id)).get(id)));
+            }
+            results.put(id, cachedValue.getValue());
+        }
+
+        if (missingIds.isEmpty()) {
+            return results;
+        }
+
+        Map<K, V> loaded = bulkLoader.apply(missingIds);
+        Map<String, Object> envelopes = new LinkedHashMap<>();
+        Map<String, Long> ttlMillis = new HashMap<>();
+        List<String> absentKeys = new ArrayList<>();
+        for (K id : missingIds) {
+            V value = loaded.get(id);
+            results.put(id, value);
+            String key = region.key(id);
+            if (value == null && tombstones) {
+                absentKeys.add(key);
+                continue;
+            }
+            long softTtl = softTtl(value, policy);
+            envelopes.put(key, new CachedValue<>(value, now + softTtl, 0));
+            ttlMillis.put(key, hardTtl(value, softTtl, policy));
+        }
+        redisService.multiSetToCache(envelopes, ttlMillis, region.serde());
+        negativeCache.addAll(absentKeys, policy.getNullTtlMillis());
+        return results;
+    }
+
+    <V> V peek(CacheRegion<?, V> region, String key) {
+        if (region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE && negativeCache.contains(key)) {
+            return null;
+        }
+        CachedValue<V> cached = redisService.getFromCache(key, region.serde());
+        return cached != null ? cached.getValue() : null;
+    }
+
+    // 写操作直接更新缓存, 同时清除墓碑
+    <V> void put(CacheRegion<?, V> region, String key, V value) {
+        if (value == null) {
+            putMissing(region, key);
+            return;
+        }
+        // 本地没有墓碑时其他节点也可能有, 删除总是广播
+        negativeCache.remove(key);
+        store(region, key, value, 0, null);
+    }
+
+    <V> void putAll(CacheRegion<?, V> region, Map<String, V> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        CachePolicy policy = region.policy();
+        boolean tombstones = region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE;
+        long now = System.currentTimeMillis();
+        Map<String, Object> envelopes = new LinkedHashMap<>();
+        Map<String, Long> ttlMillis = new HashMap<>();
+        List<String> absentKeys = new ArrayList<>();
+        values.forEach((key, value) -> {
+            if (value == null && tombstones) {
+                absentKeys.add(key);
+                return;
+            }
+            long softTtl = softTtl(value, policy);
+            envelopes.put(key, new CachedValue<>(value, now + softTtl, 0));
+            ttlMillis.put(key, hardTtl(value, softTtl, policy));
+        });
+        negativeCache.removeAll(envelopes.keySet());
+        redisService.multiSetToCache(envelopes, ttlMillis, region.serde());
+        if (!absentKeys.isEmpty()) {
+            redisService.multiDeleteFromCache(absentKeys);
+            negativeCache.addAll(absentKeys, policy.getNullTtlMillis());
+        }
+    }
+
+    // 删除缓存值, 下次读取从数据库回源; 同时清除墓碑
+    // 写操作的副作用可能乱序执行 (多个节点同时处理, 失败的批次重试), 删除比写入快照更安全: 旧快照不会盖住新值
+    void evictAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        redisService.multiDeleteFromCache(keys);
+        negativeCache.removeAll(keys);
+    }
+
+    // 标记数据不存在 (如删除后)
+    void putMissing(CacheRegion<?, ?> region, String key) {
+        if (region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE) {
+            redisService.deleteFromCache(key);
+            negativeCache.add(key, region.policy().getNullTtlMillis());
+        } else {
+            store(region, key, null, 0, null);
+        }
+    }
+
+    boolean isKnownMissing(String key) {
+        return negativeCache.contains(key);
+    }
+
+    // 写操作后递增相关 tag, 依赖它们的查询结果缓存随之失效
+    void invalidateTags(Collection<String> tags) {
+        tagVersions.bump(tags);
+    }
+
+    // tag 版本不一致的缓存值当作不存在; 其他节点刚记下的墓碑也算命中 (集群回源等待时用)
+    private <V> CachedValue<V> lookup(CacheRegion<?, V> region, String key, Collection<String> tags) {
+        if (region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE && negativeCache.contains(key)) {
+            return new CachedValue<>(null, Long.MAX_VALUE, 0);
+        }
+        CachedValue<V> cached = redisService.getFromCache(key, region.serde());
+        if (cached == null || tags == null
+                || TagVersions.anyUnchanged(cached.getTagVersions(), tagVersions.current(tags))) {
+            return cached;
+        }
+        return null;
+    }
+
+    private <V> CachedValue<V> loadAndPut(CacheRegion<?, V> region, String key, Collection<String> tags,
+                                          Supplier<V> loader) {
+        // 回源前读取版本: 回源期间发生的写操作会让这次结果立即失效, 而不是被漏掉
+        Map<String, Long> versions = tags == null ? null : tagVersions.current(tags);
+        long start = System.currentTimeMillis();
+        V value = loader.get();
+        long computeMillis = System.currentTimeMillis() - start;
+        if (value == null && region.nullCaching() == CacheRegion.NullCaching.TOMBSTONE) {
+            negativeCache.add(key, region.policy().getNullTtlMillis());
+            return new CachedValue<>(null, Long.MAX_VALUE, computeMillis);
+        }
+        return store(region, key, value, computeMillis, versions);
+    }
+
+    private <V> CachedValue<V> store(CacheRegion<?, ?> region, String key, V value, long computeMillis,
+                                     Map<String, Long> versions) {
+        CachePolicy policy = region.policy();
+        long softTtl = softTtl(value, policy);
+        CachedValue<V> cachedValue = new CachedValue<>(value, System.currentTimeMillis() + softTtl, computeMillis, versions);
+        redisService.setToCache(key, cachedValue, hardTtl(value, softTtl, policy), region.serde());
+        return cachedValue;
+    }
+
+    // 空值 (NullCaching.VALUE 区域) 使用 nullTtl, 正常值使用带抖动的软 TTL
+    private static long softTtl(Object value, CachePolicy policy) {
+        return value == null ? policy.getNullTtlMillis() : policy.jitteredSoftTtlMillis();
+    }
+
+    // Redis 真正过期时间 = 软 TTL + 旧值可用窗口 (空值没有窗口)
+    private static long hardTtl(Object value, long softTtl, CachePolicy policy) {
+        return value == null ? softTtl : softTtl + policy.getStaleTtlMillis();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.demo.cache;
+
+import com.example.demo.dto.HotKeyStatDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 短链接跳转的进程内热点缓存 shortKey -> longUrl, 命中时不经过 Bloom 和 Redis
+// 访问量高度倾斜: Caffeine 的 W-TinyLFU 按访问频率决定是否准入, 只访问一两次的链接挤不掉热门链接
+// 短链接创建后不会修改, 失效只用于纠正 (如数据被手工删除), 通过 Redis Pub/Sub 广播到所有节点
+@Slf4j
+@Component
+public class ShortUrlHotCache implements MessageListener {
+
+    // 值里带本节点的命中计数, 随条目一起淘汰, 不会无限增长
+    private record Entry(String longUrl, LongAdder hits) {
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final String channel;
+    private final Cache<String, Entry> cache;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    // 失效次数, 防止回源期间被失效的旧值写回 (同 NearCache)
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ShortUrlHotCache(StringRedisTemplate stringRedisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.short-url.hot-cache.enabled:true}") boolean enabled,
+                            @Value("${app.short-url.hot-cache.maximum-size:50000}") long maximumSize,
+                            @Value("${app.short-url.hot-cache.ttl-minutes:60}") long ttlMinutes,
+                            @Value("${app.short-url.hot-cache.channel:short_url:invalidate}") String channel) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "shortUrlHotCache");
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        log.info("短链接热点缓存 已启用={}, channel={}", enabled, channel);
+    }
+
+    // 未命中返回 null
+    public String get(String shortKey) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(shortKey);
+        if (entry == null) {
+            return null;
+        }
+        entry.hits().increment();
+        return entry.longUrl();
+    }
+
+    // 回源前记录, 回填时比较
+    public long version() {
+        return invalidations.get();
+    }
+
+    // 回源期间没有发生失效才写入; 写入不保证留下, 由 W-TinyLFU 决定是否准入
+    public void putIfUnchanged(String shortKey, String longUrl, long version) {
+        if (enabled && longUrl != null && version == invalidations.get()) {
+            LongAdder hits = new LongAdder();
+            hits.increment();
+            cache.put(shortKey, new Entry(longUrl, hits));
+        }
+    }
+
+    // 本地失效 + 广播给其他节点
+    public void invalidate(String shortKey) {
+        invalidateLocal(shortKey);
+        try {
+            stringRedisTemplate.convertAndSend(channel, nodeId + "|" + shortKey);
+        } catch (Exception e) {
+            log.error("短链接热点缓存失效广播失败 key={}: {}", shortKey, e.getMessage());
+        }
+    }
+
+    public void invalidateLocal(String shortKey) {
+        invalidations.incrementAndGet();
+        cache.invalidate(shortKey);
+    }
+
+    // 本节点最热的 limit 个链接 (按 Caffeine 的访问频率估计排序) 及其在本节点缓存期间的命中次数
+    public List<HotKeyStatDTO> hottest(int limit) {
+        List<HotKeyStatDTO> result = new ArrayList<>();
+        cache.policy().eviction().ifPresent(eviction -> eviction.hottest(limit).forEach((key, entry) ->
+                result.add(new HotKeyStatDTO(key, entry.longUrl(), entry.hits().sum()))));
+        return result;
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.indexOf('|');
+        if (split < 0 || nodeId.equals(body.substring(0, split))) {
+            return;
+        }
+        invalidateLocal(body.substring(split + 1));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.demo.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// 缓存击穿保护: 同一个 key 同时只有一个线程回源数据库, 其余线程共享结果
+// 集群模式下再加一个短 Redis 租约, 其他节点等待缓存被回填
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private static final String LEASE_PREFIX = "lease:";
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "   return redis.call('del', KEYS[1]) " +
+                    "else " +
+                    "   return 0 " +
+                    "end", Long.class);
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean clusterEnabled;
+    private final long leaseMillis;
+    private final long waitMillis;
+    private final long pollMillis;
+    private final long joinTimeoutMillis;
+
+    public SingleFlight(StringRedisTemplate stringRedisTemplate,
+                        @Value("${app.cache.single-flight.cluster-enabled:false}") boolean clusterEnabled,
+                        @Value("${app.cache.single-flight.lease-ms:3000}") long leaseMillis,
+                        @Value("${app.cache.single-flight.wait-ms:1000}") long waitMillis,
+                        @Value("${app.cache.single-flight.poll-ms:20}") long pollMillis,
+                        @Value("${app.cache.single-flight.join-timeout-ms:5000}") long joinTimeoutMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.clusterEnabled = clusterEnabled;
+        this.leaseMillis = leaseMillis;
+        this.waitMillis = waitMillis;
+        this.pollMillis = pollMillis;
+        this.joinTimeoutMillis = joinTimeoutMillis;
+    }
+
+    // 本节点内合并: 同一个 key 只执行一次 loader
+    public <T> T load(String key, Supplier<T> loader) {
+        return load(key, null, loader);
+    }
+
+    // cacheLookup 用于集群模式: 没拿到租约的节点轮询缓存, 等待持有者回填
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Supplier<T> cacheLookup, Supplier<T> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return (T) await(key, existing, loader);
+        }
+
+        try {
+            T value = (clusterEnabled && cacheLookup != null)
+                    ? loadWithLease(key, cacheLookup, loader)
+                    : loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private <T> T loadWithLease(String key, Supplier<T> cacheLookup, Supplier<T> loader) {
+        String leaseKey = LEASE_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+
+        if (tryLease(leaseKey, token)) {
+            try {
+                return loader.get();
+            } finally {
+                releaseLease(leaseKey, token);
+            }
+        }
+
+        // 其他节点正在回源, 在等待时间内轮询缓存
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (System.currentTimeMillis() < deadline) {
+            T cached = cacheLookup.get();
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // 等待超时 (持有者可能挂了), 自己回源
+        log.warn("Single-flight 等待租约超时, 直接回源 key={}", key);
+        return loader.get();
+    }
+
+    private boolean tryLease(String leaseKey, String token) {
+        try {
+            return Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(leaseKey, token, leaseMillis, TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            // Redis 不可用时退化为本地合并
+            log.error("Single-flight 获取租约失败 key={}: {}", leaseKey, e.getMessage());
+            return true;
+        }
+    }
+
+    private void releaseLease(String leaseKey, String token) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(leaseKey), token);
+        } catch (Exception e) {
+            log.error("Single-flight 释放租约失败 key={}: {}", leaseKey, e.getMessage());
+        }
+    }
+
+    // 等待本节点的回源结果; 回源卡住 (数据库慢查询, 连接池耗尽) 超过 join-timeout-ms 时不再等待, 自己回源
+    private Object await(String key, CompletableFuture<Object> future, Supplier<?> loader) {
+        try {
+            return future.get(joinTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            log.warn("Single-flight 等待回源超时, 直接回源 key={}", key);
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.demo.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// 查询结果缓存的 tag 版本号: 缓存值记录依赖 tag 当时的版本, 写操作只递增相关 tag,
+// 读取时一次 MGET 比较版本, 不需要 SCAN 删除 key
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TagVersions {
+
+    private static final String TAG_PREFIX = "tag:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 一次 MGET 读取所有 tag 的当前版本, 不存在为 0; Redis 不可用时返回 null
+    public Map<String, Long> current(Collection<String> tags) {
+        List<String> tagList = new ArrayList<>(tags);
+        try {
+            List<String> values = stringRedisTemplate.opsForValue()
+                    .multiGet(tagList.stream().map(tag -> TAG_PREFIX + tag).toList());
+            Map<String, Long> versions = new HashMap<>();
+            for (int i = 0; i < tagList.size(); i++) {
+                String value = values == null ? null : values.get(i);
+                versions.put(tagList.get(i), value == null ? 0L : Long.parseLong(value));
+            }
+            return versions;
+        } catch (Exception e) {
+            log.error("读取 tag 版本失败 tags={}: {}", tags, e.getMessage());
+            return null;
+        }
+    }
+
+    // 递增 tag 版本 (Pipeline); 有事务时等提交后再递增, 避免读到旧数据的请求记下新版本
+    public void bump(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(tags);
+                }
+            });
+        } else {
+            increment(tags);
+        }
+    }
+
+    // 调用方保证每个 tag 都单独覆盖所有相关写操作, 所以只要有一个 tag 版本没变, 缓存值就仍然有效
+    public static boolean anyUnchanged(Map<String, Long> recorded, Map<String, Long> current) {
+        if (recorded == null || current == null) {
+            return false;
+        }
+        for (Map.Entry<String, Long> entry : recorded.entrySet()) {
+            if (entry.getValue().equals(current.get(entry.getKey()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void increment(Collection<String> tags) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String tag : tags) {
+                    connection.stringCommands().incr((TAG_PREFIX + tag).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("递增 tag 版本失败 tags={}: {}", tags, e.getMessage());
+        }
+    }
+}
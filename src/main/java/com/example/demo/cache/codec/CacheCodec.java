@@ -0,0 +1,40 @@
+package com.example.demo.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+import java.io.IOException;
+
+// Redis 缓存值的编解码器 SPI; id 写入帧头, 不同节点按帧头选择解码器, 所以 id 一旦分配不能修改
+public interface CacheCodec {
+
+    byte id();
+
+    // 配置中使用的名字, 如 json / smile / compact
+    String name();
+
+    // 不支持的值由 CacheCodecs 退回 JSON
+    default boolean supports(Object value) {
+        return true;
+    }
+
+    byte[] encode(Object value) throws IOException;
+
+    Object decode(byte[] data, int offset, int length, JavaType type) throws IOException;
+
+    // 预先绑定类型的读写器, 由 CacheSerde 创建一次后反复使用
+    default Reader reader(JavaType type) {
+        return (data, offset, length) -> decode(data, offset, length, type);
+    }
+
+    default Writer writer(JavaType type) {
+        return this::encode;
+    }
+
+    interface Reader {
+        Object read(byte[] data, int offset, int length) throws IOException;
+    }
+
+    interface Writer {
+        byte[] write(Object value) throws IOException;
+    }
+}
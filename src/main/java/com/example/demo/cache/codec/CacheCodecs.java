@@ -0,0 +1,231 @@
+package com.example.demo.cache.codec;
+
+import com.example.demo.cache.CachedValue;
+import com.example.demo.exception.CacheConversionException;
+import com.fasterxml.jackson.databind.JavaType;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// 按 key 前缀选择编解码器, 写入帧头 [magic][version][codecId][flags] + payload
+// 读取时只看帧头, 所以配置了不同编解码器的节点可以互相读取; 没有帧头的旧数据按 JSON 解析, 解析不了当作未命中
+// payload 超过阈值时 Deflate 压缩, flags 标记, 压缩后的 payload 前 4 字节为原始长度
+@Slf4j
+@Component
+public class CacheCodecs {
+
+    public static final byte MAGIC = (byte) 0xC5; // 不是合法 JSON 文本的开头
+    public static final byte FORMAT_VERSION = 1;
+    public static final int HEADER_LENGTH = 4;
+    public static final byte FLAG_DEFLATE = 1;
+
+    // Deflater/Inflater 创建代价较高, 每个线程复用一个
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final MeterRegistry meterRegistry;
+    private final int compressionThreshold;
+
+    private final Map<Byte, CacheCodec> codecsById = new HashMap<>();
+    private final CacheCodec json;
+    private final CacheCodec defaultCodec;
+    // 前缀 -> 编解码器, 最长前缀优先
+    private final List<Map.Entry<String, CacheCodec>> rules = new ArrayList<>();
+
+    public CacheCodecs(List<CacheCodec> codecs,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.cache.codec.default:json}") String defaultName,
+                       @Value("${app.cache.codec.rules:}") String rules,
+                       @Value("${app.cache.compression.threshold-bytes:1024}") int compressionThreshold,
+                       @Value("${app.cache.compression.level:1}") int compressionLevel) {
+        this.meterRegistry = meterRegistry;
+        this.compressionThreshold = compressionThreshold;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(compressionLevel));
+        Map<String, CacheCodec> codecsByName = new HashMap<>();
+        for (CacheCodec codec : codecs) {
+            if (codecsById.put(codec.id(), codec) != null) {
+                throw new IllegalStateException("重复的缓存编解码器 id " + codec.id());
+            }
+            codecsByName.put(codec.name(), codec);
+        }
+        this.json = codecsById.get(JsonCacheCodec.ID);
+        this.defaultCodec = lookup(codecsByName, defaultName);
+
+        // 格式: product:=compact,short_url:=compact
+        for (String rule : rules.split(",")) {
+            int split = rule.indexOf('=');
+            if (split > 0) {
+                this.rules.add(Map.entry(rule.substring(0, split).trim(),
+                        lookup(codecsByName, rule.substring(split + 1).trim())));
+            }
+        }
+        this.rules.sort(Comparator.comparingInt((Map.Entry<String, CacheCodec> rule) -> rule.getKey().length()).reversed());
+        log.info("缓存编解码器: default={}, rules={}, 压缩阈值={} 字节", defaultCodec.name(), rules, compressionThreshold);
+    }
+
+    public CacheCodec codecFor(String key) {
+        for (Map.Entry<String, CacheCodec> rule : rules) {
+            if (key.startsWith(rule.getKey())) {
+                return rule.getValue();
+            }
+        }
+        return defaultCodec;
+    }
+
+    // 绑定 key 前缀和值类型, 预先创建各编解码器的读写器
+    public CacheSerde bind(String keyPrefix, JavaType type) {
+        return new CacheSerde(this, codecFor(keyPrefix), json, codecsById.values(), type);
+    }
+
+    public byte[] encode(String key, Object value) {
+        CacheCodec codec = codecFor(key);
+        if (!codec.supports(value)) {
+            codec = json;
+        }
+        try {
+            return frame(key, codec.id(), codec.encode(value));
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing value for Redis key: " + key, e);
+        }
+    }
+
+    public <T> T decode(String key, byte[] data, JavaType type) {
+        return unframe(key, data, type, (codec, payload, offset, length) -> codec.decode(payload, offset, length, type));
+    }
+
+    // 加帧头, payload 超过阈值时压缩
+    byte[] frame(String key, byte codecId, byte[] payload) {
+        byte flags = 0;
+        int rawLength = payload.length;
+        // 小值走不压缩的快速路径; 压缩后没变小也不用
+        if (compressionThreshold > 0 && payload.length >= compressionThreshold) {
+            byte[] compressed = deflate(payload);
+            if (compressed.length < payload.length) {
+                payload = compressed;
+                flags |= FLAG_DEFLATE;
+            }
+            recordCompression(key, rawLength, payload.length);
+        }
+        byte[] frame = new byte[HEADER_LENGTH + payload.length];
+        frame[0] = MAGIC;
+        frame[1] = FORMAT_VERSION;
+        frame[2] = codecId;
+        frame[3] = flags;
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+        return frame;
+    }
+
+    // 不认识的格式版本或编解码器 (更新的节点写入) 当作未命中, 由调用方回源后覆盖
+    @SuppressWarnings("unchecked")
+    <T> T unframe(String key, byte[] data, JavaType type, PayloadReader reader) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return (T) readLegacy(key, data, reader);
+        }
+        try {
+            if (data.length < HEADER_LENGTH || data[1] != FORMAT_VERSION) {
+                log.warn("无法识别的缓存格式版本 key={}", key);
+                return null;
+            }
+            CacheCodec codec = codecsById.get(data[2]);
+            if (codec == null) {
+                log.warn("未知的缓存编解码器 id={} key={}", data[2], key);
+                return null;
+            }
+            if ((data[3] & FLAG_DEFLATE) != 0) {
+                byte[] payload = inflate(data, HEADER_LENGTH);
+                return (T) reader.read(codec, payload, 0, payload.length);
+            }
+            return (T) reader.read(codec, data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        } catch (IOException | DataFormatException e) {
+            throw new CacheConversionException(
+                    "Redis conversion failed for type " + type.toCanonical(), e);
+        }
+    }
+
+    // 没有帧头的旧数据: 缓存包装之前写入的旧格式 (short_url: 的字符串, product: 的 JSON 对象) 解析不了,
+    // 当作未命中, 回源后用新格式覆盖, 不用等旧 key 过期
+    // ObjectMapper 忽略未知字段时旧对象会被解析成空的包装 (没有软过期时间), 同样当作未命中
+    private Object readLegacy(String key, byte[] data, PayloadReader reader) {
+        try {
+            Object value = reader.read(json, data, 0, data.length);
+            if (!(value instanceof CachedValue<?> cachedValue) || cachedValue.getSoftExpireAt() > 0) {
+                return value;
+            }
+            log.debug("旧格式缓存解析为空包装, 当作未命中 key={}", key);
+        } catch (IOException e) {
+            log.debug("无法解析的旧格式缓存, 当作未命中 key={}: {}", key, e.getMessage());
+        }
+        meterRegistry.counter("cache.legacy.discarded", "prefix", metricPrefix(key)).increment();
+        return null;
+    }
+
+    interface PayloadReader {
+        Object read(CacheCodec codec, byte[] data, int offset, int length) throws IOException;
+    }
+
+    // 压缩后: 4 字节原始长度 + Deflate 数据
+    private byte[] deflate(byte[] payload) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+        out.write(payload.length >>> 24);
+        out.write(payload.length >>> 16);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate(byte[] data, int offset) throws DataFormatException {
+        int rawLength = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset + 4, data.length - offset - 4);
+        byte[] payload = new byte[rawLength];
+        int length = 0;
+        while (length < rawLength) {
+            int count = inflater.inflate(payload, length, rawLength - length);
+            if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                throw new DataFormatException("压缩数据不完整");
+            }
+            length += count;
+        }
+        return payload;
+    }
+
+    // 按 key 前缀统计压缩前后字节数 (节省字节 = raw - stored) 和压缩比
+    private void recordCompression(String key, int rawBytes, int storedBytes) {
+        String prefix = metricPrefix(key);
+        meterRegistry.counter("cache.compression.bytes", "prefix", prefix, "stage", "raw").increment(rawBytes);
+        meterRegistry.counter("cache.compression.bytes", "prefix", prefix, "stage", "stored").increment(storedBytes);
+        meterRegistry.summary("cache.compression.ratio", "prefix", prefix).record((double) rawBytes / storedBytes);
+    }
+
+    // 指标只用第一段前缀, 避免每个 key 一个标签
+    private static String metricPrefix(String key) {
+        int split = key.indexOf(':');
+        return split < 0 ? key : key.substring(0, split + 1);
+    }
+
+    private static CacheCodec lookup(Map<String, CacheCodec> codecsByName, String name) {
+        CacheCodec codec = codecsByName.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("未知的缓存编解码器: " + name);
+        }
+        return codec;
+    }
+}
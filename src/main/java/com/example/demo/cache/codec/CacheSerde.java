@@ -0,0 +1,51 @@
+package com.example.demo.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+import java.io.IOException;
+import java.util.Collection;
+
+// 绑定了 key 前缀和值类型的序列化器: 各编解码器的读写器创建一次, 读写时不再解析类型
+public final class CacheSerde {
+
+    private final CacheCodecs codecs;
+    private final JavaType type;
+    private final CacheCodec codec;
+    private final CacheCodec.Writer writer;
+    private final CacheCodec json;
+    private final CacheCodec.Writer jsonWriter;
+    // 按编解码器 id 索引, 用于读取其他节点用别的编解码器写入的值
+    private final CacheCodec.Reader[] readers = new CacheCodec.Reader[256];
+    private final CacheCodecs.PayloadReader payloadReader;
+
+    CacheSerde(CacheCodecs codecs, CacheCodec codec, CacheCodec json, Collection<CacheCodec> allCodecs, JavaType type) {
+        this.codecs = codecs;
+        this.type = type;
+        this.codec = codec;
+        this.writer = codec.writer(type);
+        this.json = json;
+        this.jsonWriter = json.writer(type);
+        for (CacheCodec each : allCodecs) {
+            readers[each.id() & 0xFF] = each.reader(type);
+        }
+        this.payloadReader = (frameCodec, data, offset, length) -> readers[frameCodec.id() & 0xFF].read(data, offset, length);
+    }
+
+    public JavaType type() {
+        return type;
+    }
+
+    public byte[] encode(String key, Object value) {
+        try {
+            return codec.supports(value)
+                    ? codecs.frame(key, codec.id(), writer.write(value))
+                    : codecs.frame(key, json.id(), jsonWriter.write(value));
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing value for Redis key: " + key, e);
+        }
+    }
+
+    public <T> T decode(String key, byte[] data) {
+        return codecs.unframe(key, data, type, payloadReader);
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.demo.cache.codec;
+
+import com.example.demo.cache.CachedValue;
+import com.example.demo.dto.ProductDTO;
+import com.fasterxml.jackson.databind.JavaType;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// 手写的紧凑格式, 只支持最多的两类缓存值: ProductDTO 和短链接 String (可以包在 CachedValue 里)
+// 没有字段名, 整数用 varint; 其他类型由 CacheCodecs 退回 JSON
+@Component
+public class CompactCacheCodec implements CacheCodec {
+
+    public static final byte ID = 3;
+
+    private static final byte NULL = 'N';
+    private static final byte STRING = 'S';
+    private static final byte PRODUCT = 'P';
+    private static final byte ENVELOPE = 'E';
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_NAME = 1 << 1;
+    private static final int HAS_PRICE = 1 << 2;
+    private static final int HAS_VERSION = 1 << 3;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "compact";
+    }
+
+    // 带 tag 版本的查询结果不支持
+    @Override
+    public boolean supports(Object value) {
+        if (value instanceof CachedValue<?> cachedValue) {
+            return cachedValue.getTagVersions() == null && supportsValue(cachedValue.getValue());
+        }
+        return value != null && supportsValue(value);
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        if (value instanceof CachedValue<?> cachedValue) {
+            out.write(ENVELOPE);
+            writeVarLong(out, cachedValue.getSoftExpireAt());
+            writeVarLong(out, cachedValue.getComputeMillis());
+            writeValue(out, cachedValue.getValue());
+        } else {
+            writeValue(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length, JavaType type) throws IOException {
+        Reader reader = new Reader(data, offset, offset + length);
+        if (length > 0 && data[offset] == ENVELOPE) {
+            reader.position++;
+            long softExpireAt = reader.readVarLong();
+            long computeMillis = reader.readVarLong();
+            return new CachedValue<>(readValue(reader), softExpireAt, computeMillis);
+        }
+        return readValue(reader);
+    }
+
+    private static boolean supportsValue(Object value) {
+        return value == null || value instanceof String || value instanceof ProductDTO;
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof String text) {
+            out.write(STRING);
+            writeString(out, text);
+        } else if (value instanceof ProductDTO product) {
+            out.write(PRODUCT);
+            int flags = (product.getId() != null ? HAS_ID : 0)
+                    | (product.getName() != null ? HAS_NAME : 0)
+                    | (product.getPrice() != null ? HAS_PRICE : 0)
+                    | (product.getVersion() != null ? HAS_VERSION : 0);
+            out.write(flags);
+            if (product.getId() != null) {
+                writeVarLong(out, product.getId());
+            }
+            if (product.getName() != null) {
+                writeString(out, product.getName());
+            }
+            if (product.getPrice() != null) {
+                long bits = Double.doubleToRawLongBits(product.getPrice());
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) (bits >>> shift));
+                }
+            }
+            if (product.getVersion() != null) {
+                writeVarLong(out, product.getVersion());
+            }
+        } else {
+            throw new IOException("Compact codec 不支持类型 " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(Reader reader) throws IOException {
+        byte kind = reader.readByte();
+        switch (kind) {
+            case NULL:
+                return null;
+            case STRING:
+                return reader.readString();
+            case PRODUCT:
+                int flags = reader.readByte();
+                ProductDTO product = new ProductDTO();
+                if ((flags & HAS_ID) != 0) {
+                    product.setId(reader.readVarLong());
+                }
+                if ((flags & HAS_NAME) != 0) {
+                    product.setName(reader.readString());
+                }
+                if ((flags & HAS_PRICE) != 0) {
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | (reader.readByte() & 0xFF);
+                    }
+                    product.setPrice(Double.longBitsToDouble(bits));
+                }
+                if ((flags & HAS_VERSION) != 0) {
+                    product.setVersion(reader.readVarLong());
+                }
+                return product;
+            default:
+                throw new IOException("Compact codec 未知的值类型 " + kind);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    // ZigZag + varint: 小的正负数都只占 1~2 字节
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.write((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.write((int) zigZag);
+    }
+
+    private static final class Reader {
+
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        Reader(byte[] data, int position, int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        byte readByte() throws IOException {
+            if (position >= limit) {
+                throw new IOException("Compact codec 数据不完整");
+            }
+            return data[position++];
+        }
+
+        long readVarLong() throws IOException {
+            long zigZag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                zigZag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new IOException("Compact codec varint 过长");
+        }
+
+        String readString() throws IOException {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > limit) {
+                throw new IOException("Compact codec 字符串长度错误");
+            }
+            String text = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return text;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.cache.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+// 原来的 JSON 格式, 也用于读取没有帧头的旧数据
+@Component
+@RequiredArgsConstructor
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final byte ID = 1;
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length, JavaType type) throws IOException {
+        return objectMapper.readValue(data, offset, length, type);
+    }
+
+    // ObjectReader/ObjectWriter 在创建时就解析好类型和 (反)序列化器
+    @Override
+    public Reader reader(JavaType type) {
+        ObjectReader reader = objectMapper.readerFor(type);
+        return reader::readValue;
+    }
+
+    @Override
+    public Writer writer(JavaType type) {
+        ObjectWriter writer = objectMapper.writerFor(type);
+        return writer::writeValueAsBytes;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.config;
+
+import com.example.demo.cache.CachePolicy;
+import com.example.demo.cache.CacheRegion;
+import com.example.demo.cache.ReadThroughCache;
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.dto.ProductPageDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.example.demo.cache.CacheRegion.NullCaching.TOMBSTONE;
+import static com.example.demo.cache.CacheRegion.NullCaching.VALUE;
+
+// 所有缓存区域: key 前缀, 值类型, 过期策略和空值策略集中在这里
+@Configuration
+public class CacheRegionConfig {
+
+    // 单个产品: 软过期 10 分钟, 之后 5 分钟内返回旧值并后台刷新; 不存在的 ID 记墓碑 60 秒
+    @Bean
+    public CacheRegion<Long, ProductDTO> productCache(ReadThroughCache readThroughCache) {
+        return readThroughCache.region("product:", new TypeReference<>() {},
+                CachePolicy.of("product", Duration.ofMinutes(10), Duration.ofMinutes(5), Duration.ofSeconds(60)),
+                TOMBSTONE);
+    }
+
+    // 分页, key 为 "<after>:<limit>": 写操作会精确删除受影响的页, TTL 可以更长
+    @Bean
+    public CacheRegion<String, ProductPageDTO> productPageCache(ReadThroughCache readThroughCache) {
+        return readThroughCache.region("product_page:", new TypeReference<>() {},
+                CachePolicy.of("product_page", Duration.ofMinutes(10), Duration.ofMinutes(2), Duration.ofSeconds(30)),
+                TOMBSTONE);
+    }
+
+    // 名称 + 最低价格查询结果: 软过期 3 分钟, 旧值最多再用 1 分钟; 空结果缓存 30 秒 (受 tag 版本校验)
+    @Bean
+    public CacheRegion<String, List<ProductDTO>> productQueryCache(ReadThroughCache readThroughCache) {
+        return readThroughCache.region("category:", new TypeReference<>() {},
+                CachePolicy.of("product_list", Duration.ofMinutes(3), Duration.ofMinutes(1), Duration.ofSeconds(30)),
+                VALUE);
+    }
+
+    // 短链接 -> 长链接: 软过期 7 天, 旧值可再用 1 天; 不存在的短链接记墓碑 60 秒
+    @Bean
+    public CacheRegion<String, String> shortUrlCache(ReadThroughCache readThroughCache) {
+        return readThroughCache.region("short_url:", new TypeReference<>() {},
+                CachePolicy.of("short_url", Duration.ofDays(7), Duration.ofDays(1), Duration.ofSeconds(60)),
+                TOMBSTONE);
+    }
+}
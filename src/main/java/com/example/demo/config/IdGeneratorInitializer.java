@@ -0,0 +1,42 @@
+package com.example.demo.config;
+
+import com.example.demo.entity.Product;
+import com.example.demo.entity.ShortUrl;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// id_generator 表 (@TableGenerator) 的初始值: 启动时把每个生成器推到现有最大 ID 之后
+// 从 IDENTITY 切换过来的表已有自增数据, 不初始化的话新分配的 ID 会和旧数据冲突
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IdGeneratorInitializer {
+
+    // 依赖 EntityManagerFactory: 等 Hibernate 建好 id_generator 表再执行
+    private final EntityManagerFactory entityManagerFactory;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        seed("product", "product", Product.ID_ALLOCATION_SIZE);
+        seed("short_url", "short_url", ShortUrl.ID_ALLOCATION_SIZE);
+    }
+
+    // 只会往前推, 不会把其他节点已经分配出去的段退回
+    // 多留一个 allocationSize: pooled 优化器把表里的值当作号段上界, 这样第一段也一定大于 MAX(id)
+    void seed(String generator, String table, int allocationSize) {
+        try {
+            jdbcTemplate.update("INSERT INTO id_generator (name, next_val) " +
+                            "SELECT ?, COALESCE(MAX(id), 0) + ? FROM " + table + " " +
+                            "ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val))",
+                    generator, allocationSize + 1);
+        } catch (Exception e) {
+            // 表还不存在 (如 ddl-auto=none) 时由 Hibernate 按 initialValue 插入
+            log.error("ID 生成器 {} 初始化失败: {}", generator, e.getMessage());
+        }
+    }
+}
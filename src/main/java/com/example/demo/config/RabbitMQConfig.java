@@ -17,6 +17,11 @@ public class RabbitMQConfig {
     private String exchange;
     @Value("${app.rabbitmq.routingKey}")
     private String routingKey;
+    // 批量消费: 每次最多取 batch-size 条, 等不满时最多等 receive-timeout-ms
+    @Value("${app.rabbitmq.consumer.batch-size:100}")
+    private int consumerBatchSize;
+    @Value("${app.rabbitmq.consumer.receive-timeout-ms:200}")
+    private long consumerReceiveTimeoutMillis;
 
     @Bean
     public Queue queue() {
@@ -46,8 +51,13 @@ public class RabbitMQConfig {
         factory.setConcurrentConsumers(2); // 最少并发消费者数
         factory.setMaxConcurrentConsumers(5); //最多并发消费者
 
-        // 当 multiple = true 时, 以下批量处理生效
-        factory.setPrefetchCount(10); // 限制每个消费者最多同时处理 10 条消息
+        // 批量消费: 监听方法一次收到一批消息, 处理完用 multiple = true 一次确认整批
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(consumerBatchSize);
+        factory.setReceiveTimeout(consumerReceiveTimeoutMillis);
+        // 预取至少两批, 处理当前批时下一批已在路上
+        factory.setPrefetchCount(consumerBatchSize * 2);
 
         // 如已标注 ackMode = "MANUAL" 则非必要, 但方便管理
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
@@ -1,6 +1,12 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.ProductBatchItemDTO;
+import com.example.demo.dto.ProductBatchRequest;
 import com.example.demo.dto.ProductDTO;
+import com.example.demo.dto.ProductImportStatusDTO;
+import com.example.demo.dto.ProductPageDTO;
+import com.example.demo.service.ProductExportService;
+import com.example.demo.service.ProductImportService;
 import com.example.demo.service.ProductService;
 import com.example.demo.dto.ApiResponseDTO;
 import com.example.demo.swagger.ApiStandardResponse;
@@ -10,11 +16,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
 
 @Slf4j
@@ -24,6 +35,10 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ProductController {
     private final ProductService productService;
+    private final ProductExportService productExportService;
+    private final ProductImportService productImportService;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     // GET 请求：通过 ID 获取
     @Operation(summary = "根据 ID 查询产品", description = "返回指定 ID 的产品信息")
@@ -37,11 +52,79 @@ public class ProductController {
         return productService.getProductById(id);
     }
 
-    @Operation(summary = "查询所有产品", description = "返回所有产品的列表")
+    // POST 请求：批量获取, 返回顺序与请求 ID 顺序一致
+    @Operation(summary = "批量查询产品", description = "一次查询多个产品 ID (最多 200 个), 不存在的 ID 在对应位置返回 404")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "成功返回每个 ID 的查询结果"),
+            @ApiResponse(responseCode = "400", description = "请求参数错误")
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponseDTO<List<ProductBatchItemDTO>>> getProductsByIds(
+            @RequestBody @Validated ProductBatchRequest request) {
+        return productService.getProductsByIds(request.getIds());
+    }
+
+    // GET 请求：Keyset 分页, http://localhost:8080/api/products?after=0&limit=50
+    @Operation(summary = "分页查询产品", description = "按 ID 升序返回 after 之后的 limit 个产品 (最多 200), nextCursor 作为下一页的 after")
     @ApiStandardResponse
     @GetMapping
-    public ResponseEntity<ApiResponseDTO<List<ProductDTO>>> getAllProducts() {
-        return productService.getAllProducts();
+    public ResponseEntity<ApiResponseDTO<ProductPageDTO>> getProductPage(
+            @RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "50") int limit) {
+        return productService.getProductPage(after, limit);
+    }
+
+    // GET 请求：流式导出全部产品, http://localhost:8080/api/products/export?format=ndjson
+    @Operation(summary = "导出全部产品", description = "流式返回整个产品目录, format=ndjson (每行一个产品) 或 json (数组)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "开始输出产品数据"),
+            @ApiResponse(responseCode = "400", description = "不支持的 format")
+    })
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (!ndjson && !"json".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+                .body(out -> productExportService.export(out, ndjson));
+    }
+
+    // POST 请求：批量导入, 请求体为 NDJSON (每行 {"name":..,"price":..}) 或 CSV (name,price, 表头可选)
+    @Operation(summary = "批量导入产品", description = "上传完成后返回任务 ID, 后台分块批量写入; 通过 /api/products/import/{jobId} 查询进度")
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "导入任务已创建"),
+            @ApiResponse(responseCode = "400", description = "不支持的 format"),
+            @ApiResponse(responseCode = "500", description = "服务器错误")
+    })
+    @PostMapping("/import")
+    public ResponseEntity<ApiResponseDTO<ProductImportStatusDTO>> importProducts(
+            @RequestParam(defaultValue = "ndjson") String format, InputStream body) throws IOException {
+        String normalized = format.toLowerCase();
+        if (!ProductImportService.isSupportedFormat(normalized)) {
+            return ResponseEntity.badRequest().body(new ApiResponseDTO<>(400, "不支持的 format: " + format, null));
+        }
+        ProductImportStatusDTO status = productImportService.submit(body, normalized);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/products/import/" + status.getJobId()))
+                .body(new ApiResponseDTO<>(202, "导入任务已创建", status));
+    }
+
+    // GET 请求：查询导入进度 (已读取/已导入/跳过的行数, 速度)
+    @Operation(summary = "查询批量导入进度", description = "返回导入任务的状态和吞吐量, 任务结束后保留 24 小时")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "成功返回任务进度"),
+            @ApiResponse(responseCode = "404", description = "任务不存在或已过期")
+    })
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<ApiResponseDTO<ProductImportStatusDTO>> getImportStatus(
+            @PathVariable("jobId") String jobId) {
+        ProductImportStatusDTO status = productImportService.getStatus(jobId);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ApiResponseDTO<>(404, "导入任务不存在: " + jobId, null));
+        }
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "查询成功", status));
     }
 
     // Get 请求：获取用RequestParam过滤后的信息, http://localhost:8080/products?category=electronics&minPrice=100
@@ -57,32 +140,56 @@ public class ProductController {
     }
 
 
-    // POST 请求：新增产品
-    @Operation(summary = "新增产品", description = "创建新产品")
+    // POST 请求：新增产品, 带 Idempotency-Key 时重试不会重复创建
+    @Operation(summary = "新增产品", description = "创建新产品; 相同 Idempotency-Key 的重试返回第一次创建的产品")
     @ApiResponses({
             @ApiResponse(responseCode = "201", description = "产品创建成功"),
             @ApiResponse(responseCode = "400", description = "请求参数错误"),
+            @ApiResponse(responseCode = "409", description = "相同 Idempotency-Key 的请求正在处理"),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key 已用于内容不同的请求"),
             @ApiResponse(responseCode = "500", description = "服务器错误")
     })
     @PostMapping
     public ResponseEntity<ApiResponseDTO<ProductDTO>> addProduct(
-            @RequestBody @Validated ProductDTO productDTO) throws IOException {
-         productService.addProduct(productDTO);
-        return productService.addProduct(productDTO);
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestBody @Validated ProductDTO productDTO) {
+        return productService.addProduct(productDTO, idempotencyKey);
     }
 
-    // PUT 请求：更新产品
-    @Operation(summary = "更新产品", description = "更新指定 ID 的产品信息")
+    // PUT 请求：更新产品, If-Match 带上查询时返回的 ETag, 版本不一致返回 409
+    @Operation(summary = "更新产品", description = "更新指定 ID 的产品信息; If-Match 为 GET 返回的 ETag 时只在版本一致时更新")
     @ApiResponses({
-            @ApiResponse(responseCode = "200", description = "产品更新成功"),
-            @ApiResponse(responseCode = "400", description = "产品未找到"),
+            @ApiResponse(responseCode = "200", description = "产品更新成功, ETag 为新版本"),
+            @ApiResponse(responseCode = "400", description = "请求参数错误"),
+            @ApiResponse(responseCode = "404", description = "产品未找到"),
+            @ApiResponse(responseCode = "409", description = "产品已被修改, 版本不一致"),
             @ApiResponse(responseCode = "429", description = "请求过于频繁"),
             @ApiResponse(responseCode = "500", description = "服务器错误")
     })
     @PutMapping("/{id}")
     public ResponseEntity<ApiResponseDTO<Long>> updateProduct(
-            @PathVariable("id") Long id, @RequestBody @Validated ProductDTO productDTO) throws IOException {
-        return productService.updateProduct(id, productDTO);
+            @PathVariable("id") Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            @RequestBody @Validated ProductDTO productDTO) {
+        Long expectedVersion;
+        try {
+            expectedVersion = parseETag(ifMatch);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(new ApiResponseDTO<>(400, "If-Match 格式错误: " + ifMatch, null));
+        }
+        return productService.updateProduct(id, productDTO, expectedVersion);
+    }
+
+    // "3" 或 W/"3" -> 3; 没有 If-Match 或 * 表示不检查版本
+    private static Long parseETag(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        return Long.parseLong(tag.replace("\"", ""));
     }
 
     // DELETE 请求：删除产品
@@ -1,11 +1,14 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.HotKeyStatDTO;
 import com.example.demo.service.ShortUrlService;
 import com.example.demo.dto.ApiResponseDTO;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +16,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 @Tag(name = "短链接管理", description = "提供短链接生成, 跳转, 访问统计等 API")
@@ -63,4 +67,17 @@ public class ShortUrlController {
         return shortUrlService.getAccessCount(shortKey);
     }
 
+
+    // 路径带 '-', 不会和 base62 的 shortKey 冲突
+    @Operation(summary = "本节点热点短链接", description = "返回当前节点热点缓存中访问频率最高的 limit 个短链接及命中次数")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "成功返回热点短链接"),
+            @ApiResponse(responseCode = "400", description = "limit 超出范围")
+    })
+    @GetMapping("/stats/hot-keys")
+    public ResponseEntity<ApiResponseDTO<List<HotKeyStatDTO>>> getHotKeys(
+            @RequestParam(defaultValue = "20") @Min(1) @Max(1000) int limit) {
+        return shortUrlService.getHotKeys(limit);
+    }
+
 }
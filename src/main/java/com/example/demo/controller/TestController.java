@@ -3,6 +3,7 @@ package com.example.demo.controller;
 
 import com.example.demo.dto.ApiResponseDTO;
 import com.example.demo.repository.ShortUrlRepository;
+import com.example.demo.service.ProductOutboxRelay;
 import com.example.demo.service.TestService;
 import com.example.demo.util.BloomFilterUtil;
 import com.example.demo.util.RedisUtil;
@@ -31,6 +32,7 @@ public class TestController {
     private final TestService testService;
     private final ShortUrlRepository shortUrlRepository;
     private final BloomFilterUtil bloomFilterUtil;
+    private final ProductOutboxRelay productOutboxRelay;
 
 
     @Operation(summary = "测试 Redis 连接", description = "返回 Redis 连接状态")
@@ -79,6 +81,8 @@ public class TestController {
                 return testService.measureRabbitMQImpact();
             case 3:
                 return testService.measureBatchProcessImpact();
+            case 4:
+                return testService.measureHitPipelineThroughput();
             default:
                 return ResponseEntity.badRequest().body("无效的测试编号");
         }
@@ -96,11 +100,23 @@ public class TestController {
         return ResponseEntity.ok("成功清空 MySQL `access_count` 和 Redis `total_hits_count`");
     }
 
-    @Operation(summary = "重建 Bloom Filter", description = "删除已有 手动重建 返回新存 id 数量")
+    @Operation(summary = "重建 Bloom Filter", description = "按数据量重新计算容量, 写入影子过滤器后原子替换, 返回每个过滤器的结果和写入数量")
     @PostMapping("/rest-bloom")
-    public  ResponseEntity<ApiResponseDTO<Map<String, Integer>>> resetBloomFilterManually() {
+    public  ResponseEntity<ApiResponseDTO<Map<String, Map<String, Object>>>> resetBloomFilterManually() {
         return bloomFilterUtil.resetBloomFilter();
     }
 
+    @Operation(summary = "重新处理失败的 Outbox 事件", description = "失败次数达到上限的产品变更事件清零计数, 由 relay 立即重新处理, 返回事件数")
+    @PostMapping("/outbox/redrive")
+    public ResponseEntity<ApiResponseDTO<Integer>> redriveOutbox() {
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "已重新处理", productOutboxRelay.redriveDead()));
+    }
+
+    @Operation(summary = "Bloom Filter 状态", description = "每个过滤器的容量, 数据量, 填充率和估算误判率")
+    @GetMapping("/bloom-stats")
+    public ResponseEntity<ApiResponseDTO<Map<String, Map<String, Object>>>> getBloomStats() {
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "查询成功", bloomFilterUtil.getStats()));
+    }
+
 }
 
@@ -0,0 +1,20 @@
+package com.example.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// 本节点热点短链接
+@Data
+@AllArgsConstructor @NoArgsConstructor
+@Schema(description = "热点短链接统计 (单个节点)")
+public class HotKeyStatDTO {
+
+    private String shortKey;
+
+    private String longUrl;
+
+    @Schema(description = "进入本节点热点缓存后的命中次数")
+    private long hits;
+}
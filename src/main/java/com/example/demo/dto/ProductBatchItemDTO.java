@@ -0,0 +1,22 @@
+package com.example.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// 批量查询中单个 ID 的结果
+@Data
+@AllArgsConstructor @NoArgsConstructor
+@Schema(description = "批量查询单项结果")
+public class ProductBatchItemDTO {
+
+    @Schema(description = "请求的产品 ID", example = "1")
+    private Long id;
+
+    @Schema(description = "状态码, 200 或 404", example = "200")
+    private int code;
+
+    @Schema(description = "产品信息, 不存在时为 null")
+    private ProductDTO product;
+}
@@ -0,0 +1,19 @@
+package com.example.demo.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor @NoArgsConstructor
+public class ProductBatchRequest {
+
+    @NotEmpty(message = "产品 ID 列表不能为空")
+    @Size(max = 200, message = "一次最多查询 200 个产品")
+    private List<@NotNull Long> ids;
+}
@@ -1,5 +1,6 @@
 package com.example.demo.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
@@ -25,6 +26,11 @@ public class ProductDTO implements Serializable {
     @Min(value = 0, message = "价格必须大于等于 0")
     private Double price;
 
+    // 版本号 (同 ETag), 只在按 ID 查询时返回; 更新时通过 If-Match 传回
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long version;
 
-
+    public ProductDTO(Long id, String name, Double price) {
+        this(id, name, price, null);
+    }
 }
@@ -0,0 +1,55 @@
+package com.example.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// 批量导入任务的进度, 保存在 Redis, 任意节点都能查询
+@Data
+@NoArgsConstructor
+@Schema(description = "产品批量导入进度")
+public class ProductImportStatusDTO {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    @Schema(description = "任务 ID")
+    private String jobId;
+
+    @Schema(description = "任务状态", example = "RUNNING")
+    private Status status;
+
+    @Schema(description = "数据格式", example = "ndjson")
+    private String format;
+
+    @Schema(description = "已读取的数据行数")
+    private long rowsRead;
+
+    @Schema(description = "已写入数据库的产品数")
+    private long imported;
+
+    @Schema(description = "校验失败被跳过的行数")
+    private long rejected;
+
+    @Schema(description = "导入速度 (行/秒)")
+    private double rowsPerSecond;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @Schema(description = "任务失败原因")
+    private String message;
+
+    @Schema(description = "前若干条被跳过的行及原因")
+    private List<String> errors = new ArrayList<>();
+
+    public ProductImportStatusDTO(String jobId, String format) {
+        this.jobId = jobId;
+        this.format = format;
+        this.status = Status.QUEUED;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Keyset 分页结果
+@Data
+@AllArgsConstructor @NoArgsConstructor
+@Schema(description = "产品分页结果")
+public class ProductPageDTO {
+
+    @Schema(description = "本页产品, 按 ID 升序")
+    private List<ProductDTO> items;
+
+    @Schema(description = "下一页的 after 参数, null 表示没有更多", example = "50")
+    private Long nextCursor;
+}
@@ -18,8 +18,13 @@ public class Product implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // 每次从 id_generator 表预取的 ID 数量; IDENTITY 要逐条 INSERT 才能拿到 ID, 无法批量插入
+    public static final int ID_ALLOCATION_SIZE = 500;
+
     @Id // 数据库主键
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // ID 自增
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "product_id")
+    @TableGenerator(name = "product_id", table = "id_generator", pkColumnName = "name", valueColumnName = "next_val",
+            pkColumnValue = "product", allocationSize = ID_ALLOCATION_SIZE) // pooled: 一次取一段 ID, 在内存里分配
     private Long id;
 
     @Column(nullable = false)
@@ -28,6 +33,11 @@ public class Product implements Serializable {
     @Column(nullable = false)
     private Double price;
 
+    // 乐观锁版本号, 每次更新 +1; 对外作为 ETag
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
+
     @Column(name = "created_at", updatable = false, nullable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
     private LocalDateTime createdAt;
 
@@ -0,0 +1,80 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// 产品变更的 Outbox 记录: 和产品写操作在同一个事务里插入, 由 ProductOutboxRelay 提交后批量处理并删除
+@Data
+@Entity
+@Table(name = "product_outbox", indexes = @Index(name = "idx_product_outbox_available_at", columnList = "available_at"))
+@AllArgsConstructor @NoArgsConstructor @Builder
+public class ProductOutboxEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Type type;
+
+    // 变更后的名称和价格 (删除时为删除前的值)
+    @Column(nullable = false)
+    private String name;
+
+    private Double price;
+
+    // 变更后的版本号, 写入缓存供 ETag 使用
+    private Long version;
+
+    // 更新前的名称, 用于让旧名称相关的查询缓存失效
+    @Column(name = "old_name")
+    private String oldName;
+
+    // 处理失败的次数 (含基础设施故障), 决定下次重试的退避时间
+    @Column(nullable = false)
+    private int attempts;
+
+    // 事件本身导致的失败次数 (Redis/数据库不可用等基础设施故障不计入), 达到上限后不再自动处理 (保留记录, 可手动重新处理)
+    @Column(nullable = false, columnDefinition = "INT DEFAULT 0")
+    private int failures;
+
+    // 下次可处理的时间, 失败后按退避时间推迟
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt;
+
+    @Column(name = "created_at", updatable = false, nullable = false)
+    private LocalDateTime createdAt;
+
+    public static ProductOutboxEvent of(Type type, Product product, String oldName) {
+        return ProductOutboxEvent.builder()
+                .productId(product.getId())
+                .type(type)
+                .name(product.getName())
+                .price(product.getPrice())
+                .version(product.getVersion())
+                .oldName(oldName)
+                .build();
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        if (this.createdAt == null) {
+            this.createdAt = now;
+        }
+        if (this.availableAt == null) {
+            this.availableAt = now;
+        }
+    }
+}
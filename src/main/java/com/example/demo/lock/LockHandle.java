@@ -0,0 +1,61 @@
+package com.example.demo.lock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 持有中的分布式锁, 用 try-with-resources 释放
+// fencingToken 单调递增: 写共享资源时带上它, 资源方拒绝比已见过的更小的 token, 防止锁过期后的旧持有者写入
+public final class LockHandle implements AutoCloseable {
+
+    private final LockService lockService;
+    private final String name;
+    private final String key;
+    private final String token;
+    private final long fencingToken;
+    private final ReentrantLock localLock;
+    private final long acquiredAt = System.nanoTime();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    LockHandle(LockService lockService, String name, String key, String token, long fencingToken, ReentrantLock localLock) {
+        this.lockService = lockService;
+        this.name = name;
+        this.key = key;
+        this.token = token;
+        this.fencingToken = fencingToken;
+        this.localLock = localLock;
+    }
+
+    public long fencingToken() {
+        return fencingToken;
+    }
+
+    // 在事务内调用时, 等事务结束后才真正释放
+    @Override
+    public void close() {
+        lockService.release(this);
+    }
+
+    String name() {
+        return name;
+    }
+
+    String key() {
+        return key;
+    }
+
+    String token() {
+        return token;
+    }
+
+    ReentrantLock localLock() {
+        return localLock;
+    }
+
+    long acquiredAt() {
+        return acquiredAt;
+    }
+
+    boolean markReleased() {
+        return released.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.demo.lock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Redis 分布式锁: Lua 原子加锁/释放, 有界等待 (指数退避 + 抖动), 看门狗续期, fencing token
+// 同一节点的竞争者先在本地按 key 排队, 只有排到的线程才去 Redis 竞争; 本地锁按引用计数创建和回收, 不同 key 互不阻塞
+// 锁名 name 是一类锁 (如 update_product), resource 是具体对象 (如产品 ID); 指标按 name 统计
+@Slf4j
+@Component
+public class LockService {
+
+    private static final String KEY_PREFIX = "lock:";
+    private static final String FENCE_PREFIX = "lock:fence:";
+
+    // 加锁成功时递增该类锁的 fencing 计数器并返回 (> 0), 失败返回 0
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = RedisScript.of(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "   return redis.call('incr', KEYS[2]) " +
+                    "else " +
+                    "   return 0 " +
+                    "end", Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "   return redis.call('del', KEYS[1]) " +
+                    "else " +
+                    "   return 0 " +
+                    "end", Long.class);
+    private static final RedisScript<Long> EXTEND_SCRIPT = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "   return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "else " +
+                    "   return 0 " +
+                    "end", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final long leaseMillis;
+    private final long backoffMinMillis;
+    private final long backoffMaxMillis;
+    // 本地排队锁: key -> (锁, 正在使用它的线程数)
+    private final ConcurrentHashMap<String, LocalLock> localLocks = new ConcurrentHashMap<>();
+
+    // 本节点持有的锁, 看门狗定期续期
+    private final Set<LockHandle> held = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LockService(StringRedisTemplate stringRedisTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.lock.lease-ms:30000}") long leaseMillis,
+                       @Value("${app.lock.backoff-min-ms:10}") long backoffMinMillis,
+                       @Value("${app.lock.backoff-max-ms:200}") long backoffMaxMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.leaseMillis = leaseMillis;
+        this.backoffMinMillis = Math.max(1, backoffMinMillis);
+        this.backoffMaxMillis = Math.max(this.backoffMinMillis, backoffMaxMillis);
+        // 租约的 1/3 续期一次, 持有者还活着锁就不会过期
+        long renewMillis = Math.max(1, leaseMillis / 3);
+        watchdog.scheduleWithFixedDelay(this::renewAll, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 在 wait 时间内获取锁, 超时返回 null
+    public LockHandle tryLock(String name, String resource, Duration wait) {
+        long start = System.nanoTime();
+        long deadline = start + wait.toNanos();
+        String key = KEY_PREFIX + name + ":" + resource;
+        LocalLock local = localLocks.compute(key, (k, existing) -> {
+            LocalLock lock = existing != null ? existing : new LocalLock();
+            lock.users++;
+            return lock;
+        });
+        ReentrantLock localLock = local.lock;
+
+        // 1. 本地排队
+        if (!localLock.tryLock()) {
+            meterRegistry.counter("lock.contention", "name", name, "scope", "local").increment();
+            long queuedAt = System.nanoTime();
+            try {
+                boolean locked = localLock.tryLock(deadline - queuedAt, TimeUnit.NANOSECONDS);
+                waitTimer(name, "local").record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                if (!locked) {
+                    releaseLocal(key);
+                    return timeout(name, start);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                releaseLocal(key);
+                return timeout(name, start);
+            }
+        }
+
+        // 2. Redis 竞争, 失败后指数退避 (全抖动), 不超过剩余等待时间
+        boolean acquired = false;
+        try {
+            String token = UUID.randomUUID().toString();
+            long backoff = backoffMinMillis;
+            while (true) {
+                long fencingToken = acquire(key, name, token);
+                if (fencingToken > 0) {
+                    LockHandle handle = new LockHandle(this, name, key, token, fencingToken, localLock);
+                    held.add(handle);
+                    acquired = true;
+                    Timer.builder("lock.acquire").tag("name", name).tag("result", "acquired")
+                            .register(meterRegistry).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return handle;
+                }
+                meterRegistry.counter("lock.contention", "name", name, "scope", "redis").increment();
+
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return timeout(name, start);
+                }
+                long sleepMillis = Math.min(ThreadLocalRandom.current().nextLong(backoff) + 1, remainingMillis);
+                long sleepStart = System.nanoTime();
+                TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                waitTimer(name, "redis").record(System.nanoTime() - sleepStart, TimeUnit.NANOSECONDS);
+                backoff = Math.min(backoff * 2, backoffMaxMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return timeout(name, start);
+        } finally {
+            if (!acquired) {
+                localLock.unlock();
+                releaseLocal(key);
+            }
+        }
+    }
+
+    public int heldCount() {
+        return held.size();
+    }
+
+    // 正在竞争或持有的本地锁数量
+    public int localLockCount() {
+        return localLocks.size();
+    }
+
+    // 有事务时等事务结束 (提交或回滚) 再释放, 其他节点不会在提交前拿到锁读到旧数据
+    void release(LockHandle handle) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    doRelease(handle);
+                }
+            });
+        } else {
+            doRelease(handle);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    private long acquire(String key, String name, String token) {
+        try {
+            Long fencingToken = stringRedisTemplate.execute(ACQUIRE_SCRIPT, List.of(key, FENCE_PREFIX + name),
+                    token, String.valueOf(leaseMillis));
+            return fencingToken != null ? fencingToken : 0;
+        } catch (Exception e) {
+            // Redis 不可用时当作没抢到, 等待超时后返回 null
+            log.error("获取锁失败 key={}: {}", key, e.getMessage());
+            return 0;
+        }
+    }
+
+    private void doRelease(LockHandle handle) {
+        if (!handle.markReleased()) {
+            return;
+        }
+        held.remove(handle);
+        meterRegistry.timer("lock.held", "name", handle.name())
+                .record(System.nanoTime() - handle.acquiredAt(), TimeUnit.NANOSECONDS);
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(handle.key()), handle.token());
+        } catch (Exception e) {
+            // 释放失败的锁会在租约到期后自动过期
+            log.error("释放锁失败 key={}: {}", handle.key(), e.getMessage());
+        } finally {
+            if (handle.localLock().isHeldByCurrentThread()) {
+                handle.localLock().unlock();
+                releaseLocal(handle.key());
+            } else {
+                log.warn("锁 key={} 不是在获取它的线程上释放的, 本地锁无法释放", handle.key());
+            }
+        }
+    }
+
+    private void renewAll() {
+        for (LockHandle handle : held) {
+            try {
+                Long renewed = stringRedisTemplate.execute(EXTEND_SCRIPT, Collections.singletonList(handle.key()),
+                        handle.token(), String.valueOf(leaseMillis));
+                if (renewed == null || renewed == 0) {
+                    // 写入方用 fencing token 拒绝过期持有者, 这里只停止续期
+                    held.remove(handle);
+                    log.warn("锁续期失败, 已被其他持有者获取或已过期 key={}", handle.key());
+                }
+            } catch (Exception e) {
+                // 下一轮再试, 租约还剩 2/3
+                log.error("锁续期出错 key={}: {}", handle.key(), e.getMessage());
+            }
+        }
+    }
+
+    // 最后一个使用者离开时移除本地锁, localLocks 只保留正在竞争或持有的 key
+    private void releaseLocal(String key) {
+        localLocks.computeIfPresent(key, (k, lock) -> --lock.users == 0 ? null : lock);
+    }
+
+    private Timer waitTimer(String name, String scope) {
+        return meterRegistry.timer("lock.wait", "name", name, "scope", scope);
+    }
+
+    private LockHandle timeout(String name, long start) {
+        Timer.builder("lock.acquire").tag("name", name).tag("result", "timeout")
+                .register(meterRegistry).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return null;
+    }
+
+    private static final class LocalLock {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        // 只在 localLocks.compute 内读写
+        private int users;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.ProductOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ProductOutboxRepository extends JpaRepository<ProductOutboxEvent, Long> {
+
+    // 锁定一批待处理事件; SKIP LOCKED 让多个节点的 relay 各取一批, 互不等待 (MySQL 8+)
+    @Query(value = "SELECT * FROM product_outbox WHERE available_at <= :now AND failures < :maxAttempts " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ProductOutboxEvent> lockBatch(@Param("now") LocalDateTime now,
+                                       @Param("maxAttempts") int maxAttempts,
+                                       @Param("limit") int limit);
+
+    // 批量处理失败后逐个重新锁定; 已被其他节点锁定的跳过
+    @Query(value = "SELECT * FROM product_outbox WHERE id IN :ids FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ProductOutboxEvent> lockAllById(@Param("ids") Collection<Long> ids);
+
+    // 处理失败: 记一次重试并推迟到 availableAt; failure = 1 表示事件本身的失败, 0 表示基础设施故障
+    @Modifying
+    @Query("UPDATE ProductOutboxEvent e SET e.attempts = e.attempts + 1, e.failures = e.failures + :failure, " +
+            "e.availableAt = :availableAt WHERE e.id IN :ids")
+    int deferAll(@Param("ids") Collection<Long> ids, @Param("availableAt") LocalDateTime availableAt,
+                 @Param("failure") int failure);
+
+    // 失败次数达到上限, 不再自动处理的事件数
+    long countByFailuresGreaterThanEqual(int failures);
+
+    // 重新处理失败次数达到上限的事件: 清零计数, 立即可处理
+    @Modifying
+    @Query("UPDATE ProductOutboxEvent e SET e.attempts = 0, e.failures = 0, e.availableAt = :now " +
+            "WHERE e.failures >= :maxAttempts")
+    int redriveDead(@Param("maxAttempts") int maxAttempts, @Param("now") LocalDateTime now);
+
+    // 批量写入的事件已由写入方直接执行: 按产品删除, 不用先查出记录 id
+    @Modifying
+    @Query("DELETE FROM ProductOutboxEvent e WHERE e.type = :type AND e.productId IN :productIds")
+    int deleteAllByTypeAndProductIdIn(@Param("type") ProductOutboxEvent.Type type,
+                                      @Param("productIds") Collection<Long> productIds);
+}
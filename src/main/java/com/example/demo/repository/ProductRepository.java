@@ -1,20 +1,48 @@
 package com.example.demo.repository;
 import com.example.demo.entity.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 // JpaRepository<Product, Long> 让Spring自动生产增删改查（CRUD）的方法
 public interface ProductRepository extends JpaRepository<Product, Long> {
 
     List<Product> findByNameContainingAndPriceGreaterThanEqual(String name, double price);
 
+    // Keyset 分页: 取 ID 大于 after 的前 limit 条
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    // 流式导出: MySQL 驱动在 fetchSize = Integer.MIN_VALUE 时逐行返回, 不会把整个结果集读进内存
+    // 必须在事务内消费并关闭 Stream
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Product p ORDER BY p.id")
+    Stream<Product> streamAllByOrderByIdAsc();
+
     // 找到 Product 表最新创建的 id
     @Query(value = "SELECT id FROM product ORDER BY created_at DESC LIMIT 1", nativeQuery = true)
     Optional<Long> findFirstValidProductId();
 
-    @Query("SELECT p.id FROM Product p")
-    List<Long> findAllProductIds();
+    // Bloom 重建期间新增的产品
+    @Query("SELECT p.id FROM Product p WHERE p.createdAt >= :since")
+    List<Long> findIdsCreatedSince(@Param("since") LocalDateTime since);
+
+    // 删除不比较版本号, 和并发更新冲突时不会抛乐观锁异常
+    @Modifying
+    @Query("DELETE FROM Product p WHERE p.id = :id")
+    int deleteProductById(@Param("id") Long id);
 }
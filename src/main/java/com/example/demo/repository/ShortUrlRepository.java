@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +31,7 @@ public interface ShortUrlRepository extends JpaRepository<ShortUrl, Long> {
     @Query("UPDATE ShortUrl u SET u.accessCount = 0")
     void resetAllAccessCounts();
 
-    @Query("SELECT s.id FROM ShortUrl s")
-    List<Long> findAllShortUrlIds();
+    // 跳转按 shortKey 检查 Bloom, 重建时写入的也必须是 shortKey
+    @Query("SELECT s.shortKey FROM ShortUrl s WHERE s.createdAt >= :since")
+    List<String> findShortKeysCreatedSince(@Param("since") LocalDateTime since);
 }
@@ -0,0 +1,473 @@
+package com.example.demo.search;
+
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+// 产品名称的内存搜索索引: trigram 倒排表 (int[] posting list) + 按价格排序的文档列,
+// "名称包含 x 且价格 >= y" = posting list 求交 + 价格二分查找, 不再对 MySQL 做 LIKE '%x%' 全表扫描
+// 启动时从数据库分批重建; 本节点写操作在事务提交后更新, 并通过 Redis Pub/Sub 同步给其他节点
+@Slf4j
+@Component
+public class ProductSearchIndex implements MessageListener {
+
+    private static final int GRAM = 3;
+
+    private final ProductRepository productRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final String channel;
+    private final int rebuildBatchSize;
+
+    // 每个节点唯一标识, 忽略自己发出的变更消息
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Index index = new Index();
+    // 重建期间到达的变更, 新索引建好后重放; 不在重建时为 null
+    private List<Change> pending;
+    private volatile boolean ready;
+
+    public ProductSearchIndex(ProductRepository productRepository,
+                              StringRedisTemplate stringRedisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.search.index.enabled:true}") boolean enabled,
+                              @Value("${app.search.index.channel:product:changed}") String channel,
+                              @Value("${app.search.index.rebuild-batch-size:1000}") int rebuildBatchSize) {
+        this.productRepository = productRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.rebuildBatchSize = rebuildBatchSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("search.index.documents", this, ProductSearchIndex::size);
+        if (enabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        }
+    }
+
+    // 应用启动完成后在后台重建, 重建完成前查询走数据库
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            Thread thread = new Thread(this::rebuild, "product-search-rebuild");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 按 ID 分批 (keyset) 读取全部产品, 建好后整体替换
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            Index fresh = new Index();
+            long after = 0;
+            List<Product> batch;
+            do {
+                batch = productRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(rebuildBatchSize));
+                for (Product product : batch) {
+                    fresh.append(product.getId(), product.getName(), product.getPrice());
+                }
+                if (!batch.isEmpty()) {
+                    after = batch.get(batch.size() - 1).getId();
+                }
+            } while (batch.size() == rebuildBatchSize);
+            fresh.sortByPrice();
+
+            lock.writeLock().lock();
+            try {
+                pending.forEach(fresh::apply);
+                index = fresh;
+                ready = true;
+            } finally {
+                pending = null;
+                lock.writeLock().unlock();
+            }
+            log.info("产品搜索索引重建完成, {} 个产品, 耗时 {} ms", fresh.liveCount, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("产品搜索索引重建失败, 查询继续走数据库: {}", e.getMessage());
+        }
+    }
+
+    // 名称包含 keyword (忽略大小写) 且价格 >= minPrice 的产品, 按 ID 升序
+    public List<ProductDTO> search(String keyword, double minPrice) {
+        String query = keyword.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            return index.search(query, minPrice);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 产品新增或修改
+    public void upsert(Long id, String name, Double price) {
+        publish(new Change(id, name, price));
+    }
+
+    public void remove(Long id) {
+        publish(new Change(id, null, null));
+    }
+
+    // 有事务时等提交后再更新, 回滚的写操作不会进入索引
+    private void publish(Change change) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyAndBroadcast(change);
+                }
+            });
+        } else {
+            applyAndBroadcast(change);
+        }
+    }
+
+    private void applyAndBroadcast(Change change) {
+        applyLocal(change);
+        try {
+            stringRedisTemplate.convertAndSend(channel, nodeId + "|" + change.encode());
+        } catch (Exception e) {
+            log.error("产品搜索索引变更广播失败 id={}: {}", change.id(), e.getMessage());
+        }
+    }
+
+    private void applyLocal(Change change) {
+        lock.writeLock().lock();
+        try {
+            index.apply(change);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.indexOf('|');
+        if (split < 0 || nodeId.equals(body.substring(0, split))) {
+            return;
+        }
+        try {
+            applyLocal(Change.decode(body.substring(split + 1)));
+        } catch (RuntimeException e) {
+            log.error("无法解析产品搜索索引变更消息 {}: {}", body, e.getMessage());
+        }
+    }
+
+    // 名称 (已转小写) 中所有不重复的 trigram
+    public static Set<String> grams(String lowerName) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= lowerName.length(); i++) {
+            grams.add(lowerName.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    // name == null 表示删除; 消息格式 "U|id|price|name" 或 "D|id", name 放最后因为可能包含 '|'
+    private record Change(Long id, String name, Double price) {
+
+        String encode() {
+            return name == null ? "D|" + id : "U|" + id + "|" + price + "|" + name;
+        }
+
+        static Change decode(String text) {
+            String[] parts = text.split("\\|", 4);
+            Long id = Long.valueOf(parts[1]);
+            return "D".equals(parts[0])
+                    ? new Change(id, null, null)
+                    : new Change(id, parts[3], Double.valueOf(parts[2]));
+        }
+    }
+
+    // 索引本体, 由外层读写锁保护; 文档号只增不减, 删除只打标记, 标记过多时压缩
+    private static final class Index {
+
+        private Map<Long, Integer> docById = new HashMap<>();
+        private long[] ids = new long[1024];
+        private String[] names = new String[1024];
+        private String[] lowerNames = new String[1024];
+        private double[] prices = new double[1024];
+        private BitSet live = new BitSet();
+        private int docCount;
+        private int liveCount;
+        private Map<String, IntList> postings = new HashMap<>();
+        // 按价格升序排列的文档号
+        private IntList byPrice = new IntList();
+
+        void apply(Change change) {
+            if (change.name() == null) {
+                remove(change.id());
+            } else {
+                remove(change.id());
+                int doc = addDoc(change.id(), change.name(), change.price());
+                byPrice.insert(priceUpperBound(prices[doc]), doc);
+            }
+        }
+
+        // 批量构建: 价格列最后统一排序
+        void append(long id, String name, double price) {
+            remove(id);
+            byPrice.add(addDoc(id, name, price));
+        }
+
+        void sortByPrice() {
+            int[] sorted = IntStream.range(0, byPrice.size)
+                    .map(byPrice::get)
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(doc -> prices[doc]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            byPrice = new IntList(sorted);
+        }
+
+        List<ProductDTO> search(String query, double minPrice) {
+            int from = priceLowerBound(minPrice);
+            IntList matches = new IntList();
+
+            // posting list 比价格范围小时走倒排表, 否则直接扫描价格范围
+            IntList candidates = query.length() >= GRAM ? candidates(query, byPrice.size - from) : null;
+            if (candidates != null) {
+                for (int i = 0; i < candidates.size; i++) {
+                    int doc = candidates.get(i);
+                    if (live.get(doc) && prices[doc] >= minPrice && lowerNames[doc].contains(query)) {
+                        matches.add(doc);
+                    }
+                }
+            } else {
+                for (int i = from; i < byPrice.size; i++) {
+                    int doc = byPrice.get(i);
+                    if (live.get(doc) && lowerNames[doc].contains(query)) {
+                        matches.add(doc);
+                    }
+                }
+            }
+
+            List<ProductDTO> products = new ArrayList<>(matches.size);
+            for (int i = 0; i < matches.size; i++) {
+                int doc = matches.get(i);
+                products.add(new ProductDTO(ids[doc], names[doc], prices[doc]));
+            }
+            products.sort(Comparator.comparing(ProductDTO::getId));
+            return products;
+        }
+
+        // 所有 trigram 的 posting list 求交 (从最短的开始); 任一 trigram 不存在直接返回空
+        private IntList candidates(String query, int priceMatches) {
+            List<IntList> lists = new ArrayList<>();
+            for (String gram : grams(query)) {
+                IntList posting = postings.get(gram);
+                if (posting == null) {
+                    return new IntList();
+                }
+                lists.add(posting);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            if (lists.get(0).size >= priceMatches) {
+                return null;
+            }
+            IntList result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.size > 0; i++) {
+                result = result.intersect(lists.get(i));
+            }
+            return result;
+        }
+
+        private int addDoc(long id, String name, double price) {
+            int doc = docCount++;
+            if (doc == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                lowerNames = Arrays.copyOf(lowerNames, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+            }
+            ids[doc] = id;
+            names[doc] = name;
+            lowerNames[doc] = name.toLowerCase(Locale.ROOT);
+            prices[doc] = price;
+            live.set(doc);
+            liveCount++;
+            docById.put(id, doc);
+            // 新文档号最大, 追加后 posting list 仍然有序
+            for (String gram : grams(lowerNames[doc])) {
+                postings.computeIfAbsent(gram, key -> new IntList()).add(doc);
+            }
+            return doc;
+        }
+
+        private void remove(long id) {
+            Integer doc = docById.remove(id);
+            if (doc == null) {
+                return;
+            }
+            live.clear(doc);
+            liveCount--;
+            int deleted = docCount - liveCount;
+            if (deleted > 1024 && deleted > liveCount) {
+                compact();
+            }
+        }
+
+        // 丢弃已删除的文档, 按原文档号顺序重新编号
+        private void compact() {
+            Index compacted = new Index();
+            for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+                compacted.append(ids[doc], names[doc], prices[doc]);
+            }
+            compacted.sortByPrice();
+            docById = compacted.docById;
+            ids = compacted.ids;
+            names = compacted.names;
+            lowerNames = compacted.lowerNames;
+            prices = compacted.prices;
+            live = compacted.live;
+            docCount = compacted.docCount;
+            liveCount = compacted.liveCount;
+            postings = compacted.postings;
+            byPrice = compacted.byPrice;
+        }
+
+        // 第一个价格 >= price 的位置
+        private int priceLowerBound(double price) {
+            int low = 0, high = byPrice.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[byPrice.get(mid)] < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // 第一个价格 > price 的位置
+        private int priceUpperBound(double price) {
+            int low = 0, high = byPrice.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[byPrice.get(mid)] <= price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // 可增长的 int 数组, 避免 List<Integer> 装箱
+    private static final class IntList {
+
+        private int[] values;
+        private int size;
+
+        IntList() {
+            this(new int[8], 0);
+        }
+
+        IntList(int[] values) {
+            this(values, values.length);
+        }
+
+        private IntList(int[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(8, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        void insert(int index, int value) {
+            add(value);
+            System.arraycopy(values, index, values, index + 1, size - 1 - index);
+            values[index] = value;
+        }
+
+        // 两个有序列表求交, 在较长的一方二分跳跃
+        IntList intersect(IntList other) {
+            IntList result = new IntList(new int[Math.min(size, other.size)], 0);
+            int from = 0;
+            for (int i = 0; i < size && from < other.size; i++) {
+                int position = Arrays.binarySearch(other.values, from, other.size, values[i]);
+                if (position >= 0) {
+                    result.add(values[i]);
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            return result;
+        }
+    }
+}
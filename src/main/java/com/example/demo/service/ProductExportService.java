@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// 全量导出产品目录: 数据库游标逐行读取, JsonGenerator 逐个写出, 内存占用与数据量无关
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductExportService {
+
+    // 每写出多少条 flush 一次
+    private static final int FLUSH_EVERY = 500;
+
+    private final ProductRepository productRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    // ndjson = true: 每行一个 JSON 对象; false: 一个 JSON 数组
+    @Transactional(readOnly = true)
+    public long export(OutputStream out, boolean ndjson) throws IOException {
+        long count = 0;
+        // ObjectMapper 默认每写一个值 flush 一次, 关掉后由下面按 FLUSH_EVERY 分块 flush
+        ObjectWriter writer = objectMapper.writerFor(ProductDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // 输出流由容器负责关闭
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // NDJSON 自己写换行, 不要默认的根值分隔符 (空格)
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+
+            Iterator<Product> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                Product product = iterator.next();
+                writer.writeValue(generator, new ProductDTO(product.getId(), product.getName(), product.getPrice()));
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+                // 写完就从持久化上下文移除, 避免一级缓存随行数增长
+                entityManager.detach(product);
+
+                // 第一条立即 flush, 让客户端尽快收到首字节
+                if (++count == 1 || count % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+        log.info("产品导出完成, 共 {} 条, 格式={}", count, ndjson ? "ndjson" : "json");
+        return count;
+    }
+}
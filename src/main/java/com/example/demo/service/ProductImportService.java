@@ -0,0 +1,330 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.dto.ProductImportStatusDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.entity.ProductOutboxEvent;
+import com.example.demo.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// 产品批量导入: 请求体 (NDJSON 或 CSV) 先落到临时文件, 后台逐行读取, 每 chunk-size 行校验后一个事务批量插入
+// 提交后每块执行一次批量副作用 (缓存 MSET, Bloom 批量添加, 分页/查询缓存失效), 进度写入 Redis 供查询
+@Slf4j
+@Service
+public class ProductImportService {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final String JOB_KEY_PREFIX = "import:product:";
+    // 进度里最多保留多少条错误明细
+    private static final int MAX_ERRORS = 20;
+
+    private final ProductRepository productRepository;
+    private final ProductOutboxRelay productOutboxRelay;
+    private final TransactionTemplate transactionTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader productReader;
+    private final Validator validator;
+    private final int chunkSize;
+    private final long jobTtlHours;
+    private final Counter importedRows;
+    private final Counter rejectedRows;
+
+    // 导入任务逐个执行, 不和在线请求抢太多数据库连接
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProductImportService(ProductRepository productRepository,
+                                ProductOutboxRelay productOutboxRelay,
+                                TransactionTemplate transactionTemplate,
+                                StringRedisTemplate stringRedisTemplate,
+                                ObjectMapper objectMapper,
+                                Validator validator,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.product.import.chunk-size:1000}") int chunkSize,
+                                @Value("${app.product.import.job-ttl-hours:24}") long jobTtlHours) {
+        this.productRepository = productRepository;
+        this.productOutboxRelay = productOutboxRelay;
+        this.transactionTemplate = transactionTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.productReader = objectMapper.readerFor(ProductDTO.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.validator = validator;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.jobTtlHours = jobTtlHours;
+        this.importedRows = meterRegistry.counter("product.import.rows", "result", "imported");
+        this.rejectedRows = meterRegistry.counter("product.import.rows", "result", "rejected");
+    }
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_NDJSON.equals(format) || FORMAT_CSV.equals(format);
+    }
+
+    // 上传读完即返回任务 (QUEUED), 客户端不用等导入结束; 临时文件在导入结束后删除
+    public ProductImportStatusDTO submit(InputStream body, String format) throws IOException {
+        ProductImportStatusDTO status = new ProductImportStatusDTO(UUID.randomUUID().toString(), format);
+        Path file = Files.createTempFile("product-import-", "." + format);
+        try {
+            Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        save(status);
+
+        try {
+            executor.execute(() -> {
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    run(status, reader);
+                } catch (IOException e) {
+                    fail(status, e);
+                } finally {
+                    deleteQuietly(file);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deleteQuietly(file);
+            fail(status, e);
+        }
+        return status;
+    }
+
+    // 不存在 (或已过期) 返回 null
+    public ProductImportStatusDTO getStatus(String jobId) {
+        String json = stringRedisTemplate.opsForValue().get(JOB_KEY_PREFIX + jobId);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, ProductImportStatusDTO.class);
+        } catch (JsonProcessingException e) {
+            log.error("导入进度解析失败 jobId={}: {}", jobId, e.getMessage());
+            return null;
+        }
+    }
+
+    // 同步执行一个导入任务; 单行校验失败只跳过该行, 数据库写入失败则整个任务失败 (已提交的块保留)
+    public ProductImportStatusDTO run(ProductImportStatusDTO status, Reader input) {
+        BufferedReader reader = input instanceof BufferedReader buffered ? buffered : new BufferedReader(input);
+        boolean csv = FORMAT_CSV.equals(status.getFormat());
+        long start = System.nanoTime();
+        status.setStatus(ProductImportStatusDTO.Status.RUNNING);
+        status.setStartedAt(LocalDateTime.now());
+        save(status);
+
+        try {
+            List<Product> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (csv && lineNumber == 1 && isCsvHeader(line))) {
+                    continue;
+                }
+                status.setRowsRead(status.getRowsRead() + 1);
+
+                String error;
+                try {
+                    ProductDTO dto = csv ? parseCsv(line) : productReader.readValue(line);
+                    error = validate(dto);
+                    if (error == null) {
+                        chunk.add(Product.builder().name(dto.getName().trim()).price(dto.getPrice()).build());
+                    }
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    error = "格式错误";
+                }
+                if (error != null) {
+                    reject(status, lineNumber, error);
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(chunk, status, start);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, status, start);
+            }
+            status.setStatus(ProductImportStatusDTO.Status.COMPLETED);
+        } catch (IOException | RuntimeException e) {
+            log.error("产品导入失败 jobId={}: {}", status.getJobId(), e.getMessage());
+            status.setStatus(ProductImportStatusDTO.Status.FAILED);
+            status.setMessage(e.getMessage());
+        }
+
+        status.setFinishedAt(LocalDateTime.now());
+        status.setRowsPerSecond(rate(status.getImported(), start));
+        save(status);
+        log.info("产品导入结束 jobId={} 状态={} 读取={} 导入={} 跳过={} 速度={}/s", status.getJobId(), status.getStatus(),
+                status.getRowsRead(), status.getImported(), status.getRejected(), (long) status.getRowsPerSecond());
+        return status;
+    }
+
+    // 一块一个事务: saveAll 只 persist, 提交前 flush 时 Hibernate 按 jdbc.batch_size 批量 INSERT
+    // 事务结束后持久化上下文随之关闭, 已插入的实体不会在内存里累积
+    // Outbox 记录在同一个事务里批量插入, 提交后直接执行副作用; 中途崩溃时由 relay 补上
+    private void writeChunk(List<Product> chunk, ProductImportStatusDTO status, long start) {
+        List<ProductOutboxEvent> events = new ArrayList<>(chunk.size());
+        transactionTemplate.executeWithoutResult(tx -> {
+            productRepository.saveAll(chunk);
+            for (Product product : chunk) {
+                events.add(ProductOutboxEvent.of(ProductOutboxEvent.Type.CREATED, product, null));
+            }
+            productOutboxRelay.appendBatch(events);
+        });
+        productOutboxRelay.applyCommitted(events);
+
+        importedRows.increment(chunk.size());
+        status.setImported(status.getImported() + chunk.size());
+        status.setRowsPerSecond(rate(status.getImported(), start));
+        save(status);
+    }
+
+    private String validate(ProductDTO dto) {
+        if (dto == null) {
+            return "格式错误";
+        }
+        Set<ConstraintViolation<ProductDTO>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            return violations.iterator().next().getMessage();
+        }
+        return dto.getPrice() == null ? "价格不能为空" : null;
+    }
+
+    private void reject(ProductImportStatusDTO status, long lineNumber, String error) {
+        rejectedRows.increment();
+        status.setRejected(status.getRejected() + 1);
+        if (status.getErrors().size() < MAX_ERRORS) {
+            status.getErrors().add("第 " + lineNumber + " 行: " + error);
+        }
+    }
+
+    // 表头行: 第二列不是数字
+    private static boolean isCsvHeader(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() < 2) {
+            return false;
+        }
+        try {
+            Double.parseDouble(fields.get(1).trim());
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    // CSV 列: name,price
+    static ProductDTO parseCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 2) {
+            throw new IllegalArgumentException("列数应为 2");
+        }
+        String price = fields.get(1).trim();
+        return new ProductDTO(null, fields.get(0), price.isEmpty() ? null : Double.valueOf(price));
+    }
+
+    // 按 RFC 4180 拆分一行: 字段可以用双引号包围, 引号内的逗号不分隔, "" 表示一个引号 (不支持字段内换行)
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("引号未闭合");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static double rate(long rows, long start) {
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return seconds > 0 ? Math.round(rows / seconds * 10) / 10.0 : 0;
+    }
+
+    private void fail(ProductImportStatusDTO status, Exception cause) {
+        log.error("产品导入任务无法执行 jobId={}: {}", status.getJobId(), cause.getMessage());
+        status.setStatus(ProductImportStatusDTO.Status.FAILED);
+        status.setMessage(cause.getMessage());
+        status.setFinishedAt(LocalDateTime.now());
+        save(status);
+    }
+
+    // 进度只是给客户端看的, 写入失败不影响导入
+    private void save(ProductImportStatusDTO status) {
+        try {
+            stringRedisTemplate.opsForValue().set(JOB_KEY_PREFIX + status.getJobId(),
+                    objectMapper.writeValueAsString(status), jobTtlHours, TimeUnit.HOURS);
+        } catch (Exception e) {
+            log.error("导入进度保存失败 jobId={}: {}", status.getJobId(), e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("临时文件删除失败 {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
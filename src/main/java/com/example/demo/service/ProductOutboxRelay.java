@@ -0,0 +1,414 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.CacheRegion;
+import com.example.demo.cache.KeysetPageIndex;
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.entity.ProductOutboxEvent;
+import com.example.demo.repository.ProductOutboxRepository;
+import com.example.demo.search.ProductSearchIndex;
+import com.example.demo.util.BloomFilterUtil;
+import com.example.demo.webSocket.WebSocketNotificationHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.RedisTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// 产品变更的 Outbox relay: 写操作只在事务里插入 product_outbox, 提交后由这里批量执行副作用
+// (缓存, Bloom, 分页/查询缓存失效, 搜索索引, WebSocket 通知)
+// 失败按指数退避重试 (有上限): Redis/数据库不可用时整批推迟, 不计入失败次数, 恢复后继续处理;
+// 其他失败把这一批拆开逐个处理, 只推迟失败的事件 (和同一产品之后的事件); 事件本身失败 max-attempts 次后不再自动处理, 可手动重新处理
+// 回滚的事务不会留下 Outbox 记录, 缓存也就不会被改
+@Slf4j
+@Component
+public class ProductOutboxRelay {
+
+    private static final String INSERT_SQL = "INSERT INTO product_outbox " +
+            "(product_id, type, name, price, version, old_name, attempts, failures, available_at, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 0, 0, ?, ?)";
+    // 退避时间按失败次数翻倍, 超过 2^20 倍后不再增长 (由 max-backoff-ms 封顶)
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    private final ProductOutboxRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheRegion<Long, ProductDTO> productCache;
+    private final CacheRegion<String, List<ProductDTO>> productQueryCache;
+    private final KeysetPageIndex keysetPageIndex;
+    private final ProductSearchIndex productSearchIndex;
+    private final BloomFilterUtil bloomFilterUtil;
+    private final WebSocketNotificationHandler notificationHandler;
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Counter relayed;
+    private final Counter failed;
+    // 失败次数达到上限的事件数, 定期从数据库刷新
+    private final AtomicLong deadEvents = new AtomicLong();
+
+    // 单线程处理, 同时最多排队一次唤醒
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    public ProductOutboxRelay(ProductOutboxRepository outboxRepository,
+                              TransactionTemplate transactionTemplate,
+                              JdbcTemplate jdbcTemplate,
+                              CacheRegion<Long, ProductDTO> productCache,
+                              CacheRegion<String, List<ProductDTO>> productQueryCache,
+                              KeysetPageIndex keysetPageIndex,
+                              ProductSearchIndex productSearchIndex,
+                              BloomFilterUtil bloomFilterUtil,
+                              WebSocketNotificationHandler notificationHandler,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.outbox.batch-size:200}") int batchSize,
+                              @Value("${app.outbox.max-attempts:10}") int maxAttempts,
+                              @Value("${app.outbox.retry-backoff-ms:1000}") long retryBackoffMillis,
+                              @Value("${app.outbox.max-backoff-ms:300000}") long maxBackoffMillis) {
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.productCache = productCache;
+        this.productQueryCache = productQueryCache;
+        this.keysetPageIndex = keysetPageIndex;
+        this.productSearchIndex = productSearchIndex;
+        this.bloomFilterUtil = bloomFilterUtil;
+        this.notificationHandler = notificationHandler;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.maxBackoffMillis = Math.max(retryBackoffMillis, maxBackoffMillis);
+        this.relayed = meterRegistry.counter("outbox.events", "result", "relayed");
+        this.failed = meterRegistry.counter("outbox.events", "result", "failed");
+        Gauge.builder("outbox.events.dead", deadEvents, AtomicLong::get).register(meterRegistry);
+    }
+
+    // 在调用方的事务里写入; 提交后立即唤醒 relay, 不用等下一次轮询
+    public void append(ProductOutboxEvent event) {
+        outboxRepository.save(event);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    public void wakeUp() {
+        if (!wakeUpPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                wakeUpPending.set(false);
+                drainAll();
+            });
+        } catch (RejectedExecutionException e) {
+            wakeUpPending.set(false);
+        }
+    }
+
+    // 兜底轮询: 节点重启前没处理完的事件, 以及退避到期的重试
+    @Scheduled(fixedDelayString = "${app.outbox.poll-ms:1000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // 一批接一批处理, 直到取不满一批 (或失败)
+    private void drainAll() {
+        try {
+            while (drain() == batchSize) {
+                // 继续下一批
+            }
+        } catch (RuntimeException e) {
+            log.error("Outbox relay 处理失败: {}", e.getMessage());
+        }
+    }
+
+    // 处理一批: 锁定 -> 执行副作用 -> 删除, 在同一个事务里; 返回成功处理的事件数
+    public int drain() {
+        List<ProductOutboxEvent> locked = new ArrayList<>();
+        try {
+            return relay(() -> outboxRepository.lockBatch(LocalDateTime.now(), maxAttempts, batchSize), locked);
+        } catch (RuntimeException e) {
+            if (locked.isEmpty()) {
+                // 锁定阶段就失败了 (数据库不可用), 等下一次轮询
+                log.error("Outbox relay 读取事件失败: {}", e.getMessage());
+                return 0;
+            }
+            // 基础设施故障时逐个处理也会失败, 整批推迟
+            if (locked.size() == 1 || isTransient(e)) {
+                defer(locked, e, !isTransient(e));
+                return 0;
+            }
+            log.warn("Outbox relay 批量处理 {} 个事件失败, 逐个重试: {}", locked.size(), e.getMessage());
+            return relayOneByOne(locked);
+        }
+    }
+
+    // 失败次数达到上限的事件重新处理, 返回事件数
+    public int redriveDead() {
+        Integer redriven = transactionTemplate.execute(status ->
+                outboxRepository.redriveDead(maxAttempts, LocalDateTime.now()));
+        int count = redriven != null ? redriven : 0;
+        log.info("Outbox relay 重新处理 {} 个失败事件", count);
+        refreshDeadCount();
+        wakeUp();
+        return count;
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.dead-check-ms:60000}")
+    public void refreshDeadCount() {
+        try {
+            long dead = outboxRepository.countByFailuresGreaterThanEqual(maxAttempts);
+            deadEvents.set(dead);
+            if (dead > 0) {
+                log.warn("Outbox 有 {} 个事件失败 {} 次后不再自动处理, 排查后调用 redriveDead 重新处理", dead, maxAttempts);
+            }
+        } catch (RuntimeException e) {
+            log.error("Outbox relay 统计失败事件出错: {}", e.getMessage());
+        }
+    }
+
+    // 在一个事务里锁定 -> 执行副作用 -> 删除; 失败时抛出, locked 中是已锁定的事件
+    private int relay(Supplier<List<ProductOutboxEvent>> lock, List<ProductOutboxEvent> locked) {
+        List<String> notifications = new ArrayList<>();
+        Integer relayedCount = transactionTemplate.execute(status -> {
+            List<ProductOutboxEvent> events = lock.get();
+            if (events.isEmpty()) {
+                return 0;
+            }
+            locked.addAll(events);
+            apply(events);
+            events.forEach(event -> notifications.add(notification(event)));
+            outboxRepository.deleteAllByIdInBatch(events.stream().map(ProductOutboxEvent::getId).toList());
+            return events.size();
+        });
+
+        // 通知放在提交之后, 尽量不重复发送
+        sendNotifications(notifications);
+        int count = relayedCount != null ? relayedCount : 0;
+        relayed.increment(count);
+        return count;
+    }
+
+    // 一批失败后逐个处理, 只推迟失败的事件; 同一产品在失败事件之后的事件也推迟, 保持同一产品的处理顺序
+    private int relayOneByOne(List<ProductOutboxEvent> events) {
+        int count = 0;
+        Set<Long> blockedProducts = new HashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            ProductOutboxEvent event = events.get(i);
+            if (blockedProducts.contains(event.getProductId())) {
+                defer(List.of(event), null, false);
+                continue;
+            }
+            try {
+                count += relay(() -> outboxRepository.lockAllById(List.of(event.getId())), new ArrayList<>());
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    // 处理中途 Redis/数据库不可用: 剩下的事件一起推迟
+                    defer(events.subList(i, events.size()), e, false);
+                    break;
+                }
+                defer(List.of(event), e, true);
+                blockedProducts.add(event.getProductId());
+            }
+        }
+        return count;
+    }
+
+    // 批量写入 (如批量导入) 在调用方的事务里一次 JDBC 批量插入 Outbox 记录 (IDENTITY 主键下 JPA 不会批量插入)
+    // 记录推迟一个退避时间才可被 relay 处理: 正常情况下提交后由 applyCommitted 直接执行并删除,
+    // 提交后节点崩溃时由 relay 到期后处理, Bloom 和缓存最终仍会更新
+    public void appendBatch(List<ProductOutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime availableAt = now.plusNanos(retryBackoffMillis * 1_000_000);
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (ps, event) -> {
+            ps.setLong(1, event.getProductId());
+            ps.setString(2, event.getType().name());
+            ps.setString(3, event.getName());
+            ps.setObject(4, event.getPrice());
+            ps.setObject(5, event.getVersion());
+            ps.setString(6, event.getOldName());
+            ps.setObject(7, availableAt);
+            ps.setObject(8, now);
+        });
+    }
+
+    // appendBatch 的事务提交后调用: 直接执行一次批量副作用, 成功后删除这些记录
+    // 失败时记录保留, 到期后由 relay 重试; 副作用可以重复执行 (Bloom 添加幂等, 缓存只删除)
+    public void applyCommitted(List<ProductOutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            apply(events);
+        } catch (RuntimeException e) {
+            log.error("批量副作用执行失败, {} 个事件留给 Outbox relay 重试: {}", events.size(), e.getMessage());
+            return;
+        }
+        relayed.increment(events.size());
+
+        Map<ProductOutboxEvent.Type, List<Long>> productIds = new EnumMap<>(ProductOutboxEvent.Type.class);
+        events.forEach(event -> productIds.computeIfAbsent(event.getType(), type -> new ArrayList<>()).add(event.getProductId()));
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    productIds.forEach(outboxRepository::deleteAllByTypeAndProductIdIn));
+        } catch (RuntimeException e) {
+            // relay 到期后会再执行一次
+            log.error("批量副作用已执行, 删除 {} 个 Outbox 记录失败: {}", events.size(), e.getMessage());
+        }
+    }
+
+    // 同一个产品在一批里只保留最后的状态, 每种副作用各执行一次批量操作
+    private void apply(List<ProductOutboxEvent> events) {
+        Map<Long, ProductOutboxEvent> latest = new LinkedHashMap<>();
+        Set<Long> createdInBatch = new HashSet<>();
+        Set<String> tags = new LinkedHashSet<>();
+        for (ProductOutboxEvent event : events) {
+            latest.put(event.getProductId(), event);
+            if (event.getType() == ProductOutboxEvent.Type.CREATED) {
+                createdInBatch.add(event.getProductId());
+            }
+            tags.addAll(event.getOldName() != null
+                    ? ProductService.writeTags(event.getOldName(), event.getName())
+                    : ProductService.writeTags(event.getName()));
+        }
+
+        // Bloom 过滤器是计数过滤器: 只在新增时加入, 删除时移除; 同一批里新增后又删除的两样都不做
+        // 缓存只删除不写入: 事件可能乱序到达 (其他节点同时处理, 推迟的批次在更新的事件之后重试),
+        // 写入事件里的快照会让旧的名称/价格/版本盖住新的, 删除后由下一次读取从数据库回源
+        Set<Long> changed = new LinkedHashSet<>();
+        Map<Long, ProductDTO> removedValues = new LinkedHashMap<>();
+        List<String> created = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (ProductOutboxEvent event : latest.values()) {
+            Long id = event.getProductId();
+            if (event.getType() == ProductOutboxEvent.Type.DELETED) {
+                removedValues.put(id, null); // 记入墓碑, 后续查询直接 404
+                productSearchIndex.remove(id);
+                if (!createdInBatch.contains(id)) {
+                    deleted.add(id.toString());
+                }
+            } else {
+                changed.add(id);
+                productSearchIndex.upsert(id, event.getName(), event.getPrice());
+                if (createdInBatch.contains(id)) {
+                    created.add(id.toString());
+                }
+            }
+        }
+
+        productCache.evictAll(changed);
+        productCache.putAll(removedValues);
+        bloomFilterUtil.addAllToBloomFilter(ProductService.BLOOM_FILTER_NAME_PRODUCT, created);
+        bloomFilterUtil.removeFromBloomFilter(ProductService.BLOOM_FILTER_NAME_PRODUCT, deleted);
+        // 只删除包含这些产品的分页缓存
+        keysetPageIndex.invalidate(ProductService.PRODUCT_PAGE_INDEX, latest.keySet());
+        productQueryCache.invalidateTags(tags);
+    }
+
+    // 推迟到 now + 退避时间; countFailure 为 false 时不计入失败次数 (基础设施故障, 或被同一产品的失败事件连带)
+    private void defer(List<ProductOutboxEvent> events, RuntimeException cause, boolean countFailure) {
+        failed.increment(events.size());
+        if (cause != null) {
+            log.error("Outbox relay 处理 {} 个事件失败{}, 退避后重试: {}", events.size(),
+                    countFailure ? "" : " (基础设施故障, 不计入失败次数)", cause.getMessage());
+        }
+        // 退避时间取决于各自已失败的次数
+        Map<Integer, List<Long>> idsByAttempts = new TreeMap<>();
+        events.forEach(event -> idsByAttempts.computeIfAbsent(event.getAttempts(), attempts -> new ArrayList<>()).add(event.getId()));
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> idsByAttempts.forEach((attempts, ids) ->
+                    outboxRepository.deferAll(ids, now.plusNanos(backoffMillis(attempts) * 1_000_000), countFailure ? 1 : 0)));
+        } catch (RuntimeException e) {
+            log.error("Outbox relay 记录重试失败 events={}: {}", events.size(), e.getMessage());
+            return;
+        }
+        if (countFailure) {
+            events.stream().filter(event -> event.getFailures() + 1 >= maxAttempts).forEach(event ->
+                    log.error("Outbox 事件 id={} product={} type={} 失败 {} 次, 不再自动处理",
+                            event.getId(), event.getProductId(), event.getType(), maxAttempts));
+        }
+    }
+
+    // 第 n 次失败后等待 retry-backoff-ms x 2^n, 不超过 max-backoff-ms
+    private long backoffMillis(int attempts) {
+        long backoff = retryBackoffMillis << Math.min(Math.max(attempts, 0), MAX_BACKOFF_SHIFT);
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    // Redis/数据库连接失败或超时: 重试本身能恢复, 与事件内容无关
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof RedisConnectionException
+                    || cause instanceof RedisTimeoutException
+                    || cause instanceof TimeoutException
+                    || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String notification(ProductOutboxEvent event) {
+        return switch (event.getType()) {
+            case CREATED -> "新增产品: " + event.getName();
+            case UPDATED -> "产品更新: " + event.getName() + " ID: " + event.getProductId();
+            case DELETED -> "产品删除成功 ID: " + event.getProductId();
+        };
+    }
+
+    // WebSocket 通知只尽力发送, 失败不重试整批
+    private void sendNotifications(List<String> notifications) {
+        for (String notification : notifications) {
+            try {
+                notificationHandler.sendNotification(notification);
+            } catch (Exception e) {
+                log.error("WebSocket 通知发送失败: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,24 +1,40 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.CacheRegion;
+import com.example.demo.cache.KeysetPageIndex;
 import com.example.demo.entity.Product;
+import com.example.demo.entity.ProductOutboxEvent;
+import com.example.demo.dto.ProductBatchItemDTO;
 import com.example.demo.dto.ProductDTO;
+import com.example.demo.dto.ProductPageDTO;
 import com.example.demo.repository.ProductRepository;
+import com.example.demo.search.ProductSearchIndex;
 import com.example.demo.exception.ProductNotFoundException;
+import com.example.demo.lock.LockHandle;
+import com.example.demo.lock.LockService;
 import com.example.demo.dto.ApiResponseDTO;
 import com.example.demo.util.BloomFilterUtil;
-import com.example.demo.webSocket.WebSocketNotificationHandler;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.example.demo.util.IdempotencyUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.IOException;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.stream.Collectors.toList;
 
@@ -28,13 +44,39 @@ import static java.util.stream.Collectors.toList;
 public class ProductService {
 
     private final ProductRepository productRepository; // ProductRepository是数据库操作的接口, 用于增删改查Product表的数据
-    private final RedisService redisService;
     private final BloomFilterUtil bloomFilterUtil;
-    private final WebSocketNotificationHandler notificationHandler;
-    private static final String BLOOM_FILTER_NAME_PRODUCT = "bloom:product:";
+    private final CacheRegion<Long, ProductDTO> productCache;
+    private final CacheRegion<String, ProductPageDTO> productPageCache;
+    private final CacheRegion<String, List<ProductDTO>> productQueryCache;
+    private final KeysetPageIndex keysetPageIndex;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductOutboxRelay productOutboxRelay;
+    private final IdempotencyUtil idempotencyUtil;
+    private final LockService lockService;
+    private final TransactionTemplate transactionTemplate;
+
+    // 默认乐观并发, 不再为每次更新获取 Redis 锁
+    @Value("${app.product.update.lock-enabled:false}")
+    private boolean updateLockEnabled;
+    @Value("${app.product.update.max-attempts:3}")
+    private int updateMaxAttempts = 3;
+    static final String BLOOM_FILTER_NAME_PRODUCT = "bloom:product:";
+    static final String PRODUCT_PAGE_INDEX = "product_page_index";
+    private static final int MAX_PAGE_SIZE = 200;
+    // 同一个产品的并发修改最多排队等待这么久, 超时返回 429
+    private static final Duration LOCK_WAIT = Duration.ofSeconds(3);
+    private static final String ADD_PRODUCT_SCOPE = "add_product";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    // 查询结果缓存的 tag: 整张表 / 名称中的某个 trigram
+    private static final String PRODUCT_TABLE_TAG = "product:all";
+    private static final String PRODUCT_GRAM_TAG_PREFIX = "product:gram:";
 
     public ResponseEntity<ApiResponseDTO<ProductDTO>> getProductById(Long id) {
-        String cacheKey = "product:" + id;
+        // 0. 本地墓碑: 已知不存在的 ID 直接返回, 没有网络 I/O
+        if (productCache.isKnownMissing(id)) {
+            return ResponseEntity.status(404)
+                    .body(new ApiResponseDTO<>(404, "产品 ID " + id + " 不存在", null));
+        }
 
         // 1. 先查 Bloom 过滤器
         if (!bloomFilterUtil.mightContain(BLOOM_FILTER_NAME_PRODUCT, id.toString())) {
@@ -42,217 +84,282 @@ public class ProductService {
                     .body(new ApiResponseDTO<>(404, "产品 ID " + id + "不存在", null));
         };
 
-        // 2. 查询缓存
-        ProductDTO cacheProduct = redisService.getFromCacheWithType(cacheKey, new TypeReference<ProductDTO>() {});
-        if (cacheProduct != null) { // 防穿透
-            if("NULL".equals(cacheProduct.getName())) {
-                log.warn("产品 ID {} 在 Redis 缓存中标记为空数据，返回 404", id);
-                return ResponseEntity.status(404)
-                        .body(new ApiResponseDTO<>(404, "产品 ID " + id + "不存在", null));
-            }
-            log.warn("从 Redis 缓存中获取产品: cacheProduct:ID={} name={}, price={}",id, cacheProduct.getName(), cacheProduct.getPrice());
-            return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", cacheProduct));
+        // 2. 查询缓存, 未命中时回源 MySQL (同一个 key 只回源一次), 软过期后返回旧值并后台刷新
+        ProductDTO product = productCache.get(id, this::findProduct);
+        if (product == null) { // 已记入墓碑, 防穿透
+            return ResponseEntity.status(404)
+                    .body(new ApiResponseDTO<>(404, "产品 ID " + id + " 不存在", null));
         }
-
-        // 3. 查询 MySQL
-        Product product =  productRepository.findById(id)
-                .orElse(null);
-        if (product == null) { // 如果不存在, 缓存空值防止缓存穿透
-            log.warn("产品 ID {} 不存在，缓存空值以防止缓存穿透", id);
-            redisService.setFromCacheWithObject(cacheKey, new ProductDTO(null, "NULL", 0.0), 60, TimeUnit.SECONDS);
-            return  ResponseEntity.status(404).body(new ApiResponseDTO<>(404, "产品 ID " + id + " 不存在",null));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (product.getVersion() != null) {
+            response.eTag(eTag(product.getVersion()));
         }
-
-        // 将数据库数据转换为 DTO，并存入 Redis
-        ProductDTO productDTO = new ProductDTO(product.getId(), product.getName(), product.getPrice());
-        redisService.setFromCacheWithObject(cacheKey, productDTO, 10, TimeUnit.MINUTES);
-
-        return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", productDTO));
+        return response.body(new ApiResponseDTO<>(200, "成功", product));
     }
 
-    public ResponseEntity<ApiResponseDTO<List<ProductDTO>>> getAllProducts() {
+    // 查询 MySQL, 转换为 DTO
+    private ProductDTO findProduct(Long id) {
+        return productRepository.findById(id)
+                .map(product -> new ProductDTO(product.getId(), product.getName(), product.getPrice(), product.getVersion()))
+                .orElseGet(() -> {
+                    log.warn("产品 ID {} 不存在，记入墓碑以防止缓存穿透", id);
+                    return null;
+                });
+    }
 
-        String cacheKey = "all_products";
-        // 1. 查询缓存
-        List<ProductDTO> cacheProducts = redisService.getFromCacheWithType(cacheKey, new TypeReference<List<ProductDTO>>() {});
+    public ResponseEntity<ApiResponseDTO<List<ProductBatchItemDTO>>> getProductsByIds(List<Long> ids) {
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
 
-        if (cacheProducts != null) {
-            return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", cacheProducts));
+        // 1. Bloom 过滤器批量检查, 一次往返
+        boolean[] mightExist = bloomFilterUtil.mightContainAll(BLOOM_FILTER_NAME_PRODUCT,
+                distinctIds.stream().map(String::valueOf).toList());
+        List<Long> candidateIds = new ArrayList<>();
+        for (int i = 0; i < distinctIds.size(); i++) {
+            if (mightExist[i]) {
+                candidateIds.add(distinctIds.get(i));
+            }
         }
 
-        // 2. 查询 MySQL
-        List<Product> products = productRepository.findAll();
+        // 2. 一次 MGET 查缓存, 未命中的一次 IN 查询回源 MySQL 并批量回填
+        Map<Long, ProductDTO> products = productCache.getAll(candidateIds, this::findProducts);
+
+        // 3. 按请求顺序组装, 不存在的 ID 返回 404 项
+        List<ProductBatchItemDTO> items = ids.stream()
+                .map(id -> {
+                    ProductDTO product = products.get(id);
+                    return product != null
+                            ? new ProductBatchItemDTO(id, 200, product)
+                            : new ProductBatchItemDTO(id, 404, null);
+                })
+                .collect(toList());
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", items));
+    }
 
-        if (products.isEmpty()) {
-            log.warn("No products found in database when finding all products, returning empty list.");
-            // 防止穿透
-            redisService.setFromCacheWithObject(cacheKey, Collections.emptyList(), 30, TimeUnit.SECONDS);
-            return ResponseEntity.status(404)
-                    .body(new ApiResponseDTO<>(404, "MySQL 没有", null));
+    // 一次 IN 查询多个产品
+    private Map<Long, ProductDTO> findProducts(List<Long> ids) {
+        Map<Long, ProductDTO> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(ids)) {
+            products.put(product.getId(),
+                    new ProductDTO(product.getId(), product.getName(), product.getPrice(), product.getVersion()));
         }
+        return products;
+    }
 
-        // 将查询到的 Product 转换成 ProductDTO 列表
-        List<ProductDTO> productDTOS = products.stream()
+    // Keyset 分页: ?after=上一页最后的 ID&limit=每页数量, 每页单独缓存
+    public ResponseEntity<ApiResponseDTO<ProductPageDTO>> getProductPage(long after, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String pageId = after + ":" + pageSize;
+
+        AtomicBoolean loaded = new AtomicBoolean();
+        ProductPageDTO page = productPageCache.get(pageId, key -> {
+            loaded.set(true);
+            return loadProductPage(key, after, pageSize);
+        });
+        // 页已写入缓存再确认索引: 回源期间有写操作失效了这一页, 就删除刚写入的 (可能是旧的) 页
+        if (loaded.get() && !keysetPageIndex.commit(PRODUCT_PAGE_INDEX, productPageCache.key(pageId), page.getNextCursor())) {
+            log.debug("Keyset 分页回源期间被失效, 删除缓存页 {}", pageId);
+        }
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", page));
+    }
+
+    private ProductPageDTO loadProductPage(String pageId, long after, int pageSize) {
+        // 先登记索引再查询: 查询之后的写操作一定能找到这一页
+        keysetPageIndex.reserve(PRODUCT_PAGE_INDEX, productPageCache.key(pageId));
+        List<Product> products = productRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(pageSize));
+        List<ProductDTO> items = products.stream()
                 .map(product -> new ProductDTO(product.getId(), product.getName(), product.getPrice()))
                 .collect(toList());
 
-        // 存入 cache 时限 10分钟
-        redisService.setFromCacheWithObject(cacheKey, productDTOS, 3, TimeUnit.MINUTES);
+        // 满页: 下一页从最后一个 ID 开始; 不满说明是最后一页
+        Long nextCursor = items.size() == pageSize ? items.get(items.size() - 1).getId() : null;
+        return new ProductPageDTO(items, nextCursor);
+    }
 
-        return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", productDTOS));
+    // 定期清理分页索引中已过期的页
+    @Scheduled(fixedRate = 10 * 60 * 1000)
+    public void cleanupProductPageIndex() {
+        keysetPageIndex.cleanup(PRODUCT_PAGE_INDEX);
     }
 
     public ResponseEntity<ApiResponseDTO<List<ProductDTO>>> getProductByCategoryAndMinPrice(String category, double minPrice) {
 
-        String cacheKey = "category:" + category + " minPrice:" + minPrice;
-
-        // 查 Redis
-        List<ProductDTO> cacheProducts = redisService.getFromCacheWithType(cacheKey, new TypeReference<List<ProductDTO>>() {});
-        if (cacheProducts != null) {
-            return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", cacheProducts));
+        List<ProductDTO> products;
+        if (productSearchIndex.isReady()) {
+            // 内存索引已建好: trigram 求交 + 价格二分, 不访问 Redis 和 MySQL
+            products = productSearchIndex.search(category, minPrice);
+            products = products.isEmpty() ? null : products;
+        } else {
+            // 索引重建中: 查 Redis (校验 tag 版本), 未命中查 MySQL
+            products = productQueryCache.get(category + " minPrice:" + minPrice, queryTags(category),
+                    key -> toDTOs(productRepository.findByNameContainingAndPriceGreaterThanEqual(category, minPrice)));
         }
 
-        // 查 MySQL
-        List<Product> products = productRepository.findByNameContainingAndPriceGreaterThanEqual(category, minPrice);
-        if (products.isEmpty()) {
+        if (products == null) {
             log.warn("No products found in database with category {} minPrice {}, returning empty list.", category, minPrice);
-            // 防止穿透
-            redisService.setFromCacheWithObject(cacheKey, Collections.emptyList(), 30, TimeUnit.SECONDS);
             return ResponseEntity.status(404)
                     .body(new ApiResponseDTO<>(404, "MySQL返回: 没有", null));
         }
-
-        // to DTOs 再存入 Redis
-        List<ProductDTO> productDTOS = products.stream()
-                .map(product -> new ProductDTO(product.getId(), product.getName(), product.getPrice()))
-                .collect(toList());
-
-        redisService.setFromCacheWithObject(cacheKey, productDTOS, 3, TimeUnit.MINUTES);
-
-        return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", cacheProducts));
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "成功", products));
     }
 
-
-    public ResponseEntity<ApiResponseDTO<ProductDTO>> addProduct(ProductDTO productDTO) {
-        String lockKey = "lock:add_product:";
-        String requestId = UUID.randomUUID().toString();
-        log.info("Enter ProductService ok");
-
-        // 尝试获取 Redis 分布式锁，最多等待 10 秒
-        if (!redisService.tryLock(lockKey, requestId, 10)) {
-            log.info("请求过于繁忙, 请稍后再试");
-            return ResponseEntity.status(429)
-                    .body(new ApiResponseDTO<>(429,"请求过于繁忙, 请稍后再试, Server is busy, try later", null));
+    // 名称包含 keyword 的产品, 名称一定包含 keyword 的每个 trigram, 所以每个 trigram tag 都覆盖了所有相关写操作;
+    // keyword 太短没有 trigram 时依赖整张表
+    private static List<String> queryTags(String keyword) {
+        Set<String> grams = ProductSearchIndex.grams(keyword.toLowerCase(Locale.ROOT));
+        if (grams.isEmpty()) {
+            return List.of(PRODUCT_TABLE_TAG);
         }
+        return grams.stream().map(gram -> PRODUCT_GRAM_TAG_PREFIX + gram).toList();
+    }
 
-        log.info("Set Lock ok");
-        try {
-            Product product = Product.builder()
-                    .name(productDTO.getName())
-                    .price(productDTO.getPrice())
-                    .build();
+    // 写操作影响的 tag: 整张表 + 新旧名称的所有 trigram
+    static Set<String> writeTags(String... names) {
+        Set<String> tags = new LinkedHashSet<>();
+        tags.add(PRODUCT_TABLE_TAG);
+        for (String name : names) {
+            ProductSearchIndex.grams(name.toLowerCase(Locale.ROOT))
+                    .forEach(gram -> tags.add(PRODUCT_GRAM_TAG_PREFIX + gram));
+        }
+        return tags;
+    }
 
-            productRepository.save(product);
-            productDTO.setId(product.getId()); // 设置 ID
+    // to DTOs, 空列表返回 null 以便缓存空值
+    private static List<ProductDTO> toDTOs(List<Product> products) {
+        if (products.isEmpty()) {
+            return null;
+        }
+        return products.stream()
+                .map(product -> new ProductDTO(product.getId(), product.getName(), product.getPrice()))
+                .collect(toList());
+    }
 
-            redisService.setFromCacheWithObject("product:" + product.getId(), productDTO, 10, TimeUnit.MINUTES);
-            // 加入 Bloom 过滤器
-            bloomFilterUtil.addToBloomFilter(BLOOM_FILTER_NAME_PRODUCT, product.getId().toString());
 
-            // 考虑之后将其分片缓存或采取分布式缓存管理方案（例如 Redis Cluster 或分布式缓存工具如 Hazelcast）。
-            log.info("调用 redisService.deleteCache(\"all_products\")");
-            redisService.deleteFromCache("all_products");
+    // 新增不加全局锁, 各请求并行插入; 带 Idempotency-Key 的重试直接返回第一次创建的产品
+    @Transactional
+    public ResponseEntity<ApiResponseDTO<ProductDTO>> addProduct(ProductDTO productDTO, String idempotencyKey) {
+        String fingerprint = null;
+        if (idempotencyKey != null) {
+            fingerprint = IdempotencyUtil.fingerprint(productDTO.getName() + "|" + productDTO.getPrice());
+            IdempotencyUtil.Claim claim = idempotencyUtil.claim(ADD_PRODUCT_SCOPE, idempotencyKey, fingerprint);
+            switch (claim.status()) {
+                case COMPLETED -> {
+                    ProductDTO created = new ProductDTO(claim.resultId(), productDTO.getName(), productDTO.getPrice());
+                    return ResponseEntity.status(201).header(IDEMPOTENT_REPLAYED_HEADER, "true")
+                            .body(new ApiResponseDTO<>(201, "产品创建成功", created));
+                }
+                case IN_PROGRESS -> {
+                    return ResponseEntity.status(409)
+                            .body(new ApiResponseDTO<>(409, "相同 Idempotency-Key 的请求正在处理, 请稍后重试", null));
+                }
+                case MISMATCH -> {
+                    return ResponseEntity.status(422)
+                            .body(new ApiResponseDTO<>(422, "Idempotency-Key 已用于内容不同的请求", null));
+                }
+                case ACQUIRED -> {
+                    // 第一次请求, 继续创建
+                }
+            }
+        }
 
-            // 新增产品后通知 WebSocket
-            notificationHandler.sendNotification("新增产品: " + productDTO.getName());
+        Product product = Product.builder()
+                .name(productDTO.getName())
+                .price(productDTO.getPrice())
+                .build();
 
-            return ResponseEntity.status(201).body(new ApiResponseDTO<>(201, "产品创建成功", productDTO));
+        productRepository.save(product);
+        productDTO.setId(product.getId()); // 设置 ID
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            redisService.unlock(lockKey, requestId);   // 释放锁
+        // 缓存, Bloom, 搜索索引和 WebSocket 通知由 Outbox relay 在提交后处理
+        productOutboxRelay.append(ProductOutboxEvent.of(ProductOutboxEvent.Type.CREATED, product, null));
+        if (idempotencyKey != null) {
+            idempotencyUtil.complete(ADD_PRODUCT_SCOPE, idempotencyKey, fingerprint, product.getId());
         }
-    }
 
-    @Transactional
-    public ResponseEntity<ApiResponseDTO<Long>> updateProduct(Long id, ProductDTO productDTO) {
-        String lockKey = "lock:update_product:" + id;
-        String requestId  = UUID.randomUUID().toString();
+        return ResponseEntity.status(201).body(new ApiResponseDTO<>(201, "产品创建成功", productDTO));
+    }
 
-        if (!redisService.tryLock(lockKey, requestId , 10)) {
+    // 乐观并发: expectedVersion 来自 If-Match, 与当前版本不一致返回 409
+    // 没有 If-Match 时, 读到写之间被别人改过就在服务层重新读取并重试
+    // 开启 app.product.update.lock-enabled 时先获取分布式锁 (旧的悲观模式)
+    public ResponseEntity<ApiResponseDTO<Long>> updateProduct(Long id, ProductDTO productDTO, Long expectedVersion) {
+        if (!updateLockEnabled) {
+            return updateWithRetry(id, productDTO, expectedVersion);
+        }
+        LockHandle lock = lockService.tryLock("update_product", id.toString(), LOCK_WAIT);
+        if (lock == null) {
             return ResponseEntity.status(429)
                     .body(new ApiResponseDTO<>(429, "请求过于繁忙，请稍后再试", null));
         }
+        try (lock) {
+            return updateWithRetry(id, productDTO, expectedVersion);
+        }
+    }
 
-        try {
-            // 查询产品 查不到抛 404 异常
-            Product product = productRepository.findById(id)
-                    .orElseThrow(() -> new ProductNotFoundException("Product ID " + id + " not found for updating"));
-
-            // 更新数据库产品信息
-            product.setName(productDTO.getName());
-            product.setPrice(productDTO.getPrice());
-            productRepository.save(product);
+    private ResponseEntity<ApiResponseDTO<Long>> updateWithRetry(Long id, ProductDTO productDTO, Long expectedVersion) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> update(id, productDTO, expectedVersion));
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // 客户端指定了版本, 重试也只会得到同样的冲突
+                if (expectedVersion != null || attempt >= updateMaxAttempts) {
+                    return versionConflict(id);
+                }
+                log.debug("Product ID {} 更新冲突, 第 {} 次重试", id, attempt);
+            }
+        }
+    }
 
-            // 更新 Redis 缓存
-            redisService.setFromCacheWithObject("product:" + id, productDTO, 10, TimeUnit.MINUTES);
-            // 加入 Bloom 过滤器
-            bloomFilterUtil.addToBloomFilter(BLOOM_FILTER_NAME_PRODUCT, product.getId().toString());
+    private ResponseEntity<ApiResponseDTO<Long>> update(Long id, ProductDTO productDTO, Long expectedVersion) {
+        // 查询产品 查不到抛 404 异常
+        Product product = productRepository.findById(id)
+                .orElseThrow(() -> new ProductNotFoundException("Product ID " + id + " not found for updating"));
+        if (expectedVersion != null && !expectedVersion.equals(product.getVersion())) {
+            return versionConflict(id);
+        }
 
-            // 考虑之后将其分片缓存或采取分布式缓存管理方案（例如 Redis Cluster 或分布式缓存工具如 Hazelcast）。
-            redisService.deleteFromCache("all_products");
+        // 更新数据库产品信息; flush 时带版本号条件更新, 并发修改会抛乐观锁异常
+        String oldName = product.getName();
+        product.setName(productDTO.getName());
+        product.setPrice(productDTO.getPrice());
+        productRepository.saveAndFlush(product);
+        productOutboxRelay.append(ProductOutboxEvent.of(ProductOutboxEvent.Type.UPDATED, product, oldName));
 
-            log.debug("Product ID {} successfully updated", id);
+        log.debug("Product ID {} successfully updated", id);
 
-            // 更新产品后通知 WebSocket
-            notificationHandler.sendNotification("产品更新: " + productDTO.getName() + " ID: " + id);
+        return ResponseEntity.ok().eTag(eTag(product.getVersion()))
+                .body(new ApiResponseDTO<>(200, "产品更新成功", id));
+    }
 
-            return ResponseEntity.status(201)
-                    .body(new ApiResponseDTO<>(200, "产品更新成功", id));
+    private static ResponseEntity<ApiResponseDTO<Long>> versionConflict(Long id) {
+        return ResponseEntity.status(409)
+                .body(new ApiResponseDTO<>(409, "产品 ID " + id + " 已被修改, 请重新获取后再更新", null));
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            log.info("Releasing lock: {}", lockKey);
-            redisService.unlock(lockKey, requestId);
-        }
+    private static String eTag(Long version) {
+        return "\"" + version + "\"";
     }
 
+    @Transactional
     public ResponseEntity<ApiResponseDTO<Long>> deleteProduct(Long id) {
-        String lockKey = "lock:delete_product:" + id;
-        String requiredId = UUID.randomUUID().toString();
-
-        if (!redisService.tryLock(lockKey, requiredId, 10)) {
+        LockHandle lock = lockService.tryLock("delete_product", id.toString(), LOCK_WAIT);
+        if (lock == null) {
             return ResponseEntity.status(429) // 429 Too Many Requests
                     .body(new ApiResponseDTO<>(429, "请求过于繁忙，请稍后再试", null));
         }
-        try {
-            if (!productRepository.existsById(id)) {
+        try (lock) {
+            // 需要名称来递增对应的 tag
+            Product product = productRepository.findById(id).orElse(null);
+            if (product == null) {
                 return ResponseEntity.status(404)
                         .body(new ApiResponseDTO<>(404, "产品 ID " + id + " 不存在, 无法删除", null));
             }
 
-            productRepository.deleteById(id);
-
-            // 缓存 NULL 减少误判
-            redisService.setFromCacheWithObject(
-                    "product:" + id, new ProductDTO(null, "NULL", 0.0), 60, TimeUnit.SECONDS);
-            // 考虑之后将其分片缓存或采取分布式缓存管理方案（例如 Redis Cluster 或分布式缓存工具如 Hazelcast）。
-            redisService.deleteFromCache("all_products");
-
-
-            // 更新产品后通知 WebSocket
-            notificationHandler.sendNotification("产品删除成功 ID: " + id);
-
+            productRepository.deleteProductById(id);
+            // 墓碑, 分页/查询缓存失效由 Outbox relay 在提交后处理
+            productOutboxRelay.append(ProductOutboxEvent.of(ProductOutboxEvent.Type.DELETED, product, null));
 
             return ResponseEntity.ok(new ApiResponseDTO<>(200, "产品删除成功", id));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            redisService.unlock(lockKey, requiredId);
         }
-
     }
 
 }
@@ -1,6 +1,6 @@
 package com.example.demo.service.RabbitMQ;
 
-import com.example.demo.util.RedisUtil;
+import com.example.demo.service.ShortUrlStatsService;
 import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
@@ -8,37 +8,51 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 public class RabbitMQConsumer {
 
-    private final RedisUtil redisUtil;
+    private final ShortUrlStatsService shortUrlStatsService;
 
-    public RabbitMQConsumer(RedisUtil redisUtil) {
-        this.redisUtil = redisUtil;
+    public RabbitMQConsumer(ShortUrlStatsService shortUrlStatsService) {
+        this.shortUrlStatsService = shortUrlStatsService;
     }
 
+    // 批量消费 (见 RabbitMQConfig): 一批消息的访问次数合并后一次 Pipeline 写入 Redis, 再一次确认整批
     @RabbitListener(queues = "${app.rabbitmq.queue}", ackMode = "MANUAL", containerFactory = "rabbitListenerContainerFactory")
-    public void receiveMessage(
-            Message message, Channel channel) {
+    public void receiveMessages(List<Message> messages, Channel channel) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 同一个 channel 上的 deliveryTag 递增, 最后一条的 tag 覆盖整批
+        long lastTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
 
-            long tag  = message.getMessageProperties().getDeliveryTag(); // 获取唯一 deliverTag
-            String shortKey = new String(message.getBody(), StandardCharsets.UTF_8);
-        try {
-            log.info("Consumer received message from queue:{}", shortKey);
+        Map<String, Long> hits = new HashMap<>();
+        for (Message message : messages) {
+            try {
+                ShortUrlHitBatch.decode(message.getBody()).forEach((shortKey, count) -> hits.merge(shortKey, count, Long::sum));
+            } catch (IllegalArgumentException e) {
+                // 格式错误的消息重新入队也不会成功, 跳过, 随整批一起确认
+                log.error("RabbitMQ 消息格式错误, 丢弃: {}", e.getMessage());
+            }
+        }
 
-            redisUtil.pushToRedisListBuffer("short_url_buffer",shortKey);
+        try {
+            shortUrlStatsService.applyHits(hits);
+            log.debug("Consumer processed {} messages, {} keys", messages.size(), hits.size());
             // 1.tag 2. multiple=false->只确认当前信息 true->确认比tag小的未确认信息
-            channel.basicAck(tag, false);
+            channel.basicAck(lastTag, true);
         } catch (Exception e) {
 
-            log.error("RabbitMQ failed 消费失败: {}", e.getMessage());
+            log.error("RabbitMQ failed 消费失败 ({} 条消息): {}", messages.size(), e.getMessage());
             try {
                 if(channel.isOpen()) {
                     // 1.tag 2.true=是否拒绝所有比tag小的确认消息 3.true=是否重新入队,否则丢掉或死信
-                    channel.basicNack(tag, false, true);
+                    channel.basicNack(lastTag, true, true);
                 }
             } catch (IOException ioException) {
                 log.error("RabbitMQ basicNack 失败:{}", ioException.getMessage());
@@ -1,10 +1,21 @@
 package com.example.demo.service.RabbitMQ;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 @Slf4j
 @Service
 public class RabbitMQProducer {
@@ -15,14 +26,63 @@ public class RabbitMQProducer {
     private String exchange;
     @Value("${app.rabbitmq.routingKey}")
     private String routingKey;
+    // 一条消息最多带多少个 shortKey, 避免一次刷新产生超大消息
+    @Value("${app.rabbitmq.publish.max-keys-per-message:5000}")
+    private int maxKeysPerMessage = 5000;
 
     public RabbitMQProducer(RabbitTemplate rabbitTemplate) {
         this.rabbitTemplate = rabbitTemplate;
     }
 
-    public void sendMessage(String shortKey) {
-        rabbitTemplate.convertAndSend(exchange, routingKey, shortKey);
-        log.info("Sent message to RabbitMQ: {}", shortKey);
+    public CompletableFuture<Void> sendHits(Map<String, Long> hits, Consumer<Map<String, Long>> onFailure) {
+        return sendHits(hits, routingKey, onFailure);
+    }
+
+    // 一批访问次数按 maxKeysPerMessage 拆成几条消息 (见 ShortUrlHitBatch), 连续发送, 不逐条等待 Broker 确认
+    // 确认异步到达 (publisher confirms): 被拒绝或发送失败的那部分交给 onFailure, 由调用方决定是否重发
+    // 返回的 future 在所有消息都收到确认 (或失败) 后完成
+    public CompletableFuture<Void> sendHits(Map<String, Long> hits, String routingKey, Consumer<Map<String, Long>> onFailure) {
+        List<CompletableFuture<?>> confirms = new ArrayList<>();
+        for (Map<String, Long> chunk : chunks(hits)) {
+            Message message = MessageBuilder.withBody(ShortUrlHitBatch.encode(chunk))
+                    .setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN)
+                    .build();
+            CorrelationData correlation = new CorrelationData();
+            try {
+                rabbitTemplate.send(exchange, routingKey, message, correlation);
+            } catch (Exception e) {
+                log.error("RabbitMQ 发送访问次数失败 keys={}: {}", chunk.size(), e.getMessage());
+                onFailure.accept(chunk);
+                continue;
+            }
+            confirms.add(correlation.getFuture().whenComplete((confirm, e) -> {
+                if (e != null || !confirm.isAck()) {
+                    log.error("RabbitMQ 未确认访问次数消息 keys={}: {}", chunk.size(),
+                            e != null ? e.getMessage() : confirm.getReason());
+                    onFailure.accept(chunk);
+                }
+            }));
+        }
+        log.debug("Sent hit batch to RabbitMQ: {} keys, {} messages", hits.size(), confirms.size());
+        return CompletableFuture.allOf(confirms.toArray(CompletableFuture[]::new));
     }
 
+    private List<Map<String, Long>> chunks(Map<String, Long> hits) {
+        if (hits.size() <= maxKeysPerMessage) {
+            return List.of(hits);
+        }
+        List<Map<String, Long>> chunks = new ArrayList<>();
+        Map<String, Long> chunk = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : hits.entrySet()) {
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() == maxKeysPerMessage) {
+                chunks.add(chunk);
+                chunk = new LinkedHashMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
 }
@@ -0,0 +1,42 @@
+package com.example.demo.service.RabbitMQ;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 短链接访问次数的批量消息格式: 每行 "shortKey 次数", 一条消息带一个节点一次刷新的全部计数
+// 旧版本每次访问发送一条只有 shortKey 的消息, 按 1 次处理
+public final class ShortUrlHitBatch {
+
+    private ShortUrlHitBatch() {
+    }
+
+    public static byte[] encode(Map<String, Long> hits) {
+        StringBuilder body = new StringBuilder(hits.size() * 16);
+        for (Map.Entry<String, Long> entry : hits.entrySet()) {
+            body.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 同一个 shortKey 出现多次时累加; 格式错误的行抛出 IllegalArgumentException
+    public static Map<String, Long> decode(byte[] body) {
+        Map<String, Long> hits = new LinkedHashMap<>();
+        for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                hits.merge(line.trim(), 1L, Long::sum);
+                continue;
+            }
+            try {
+                hits.merge(line.substring(0, space), Long.parseLong(line.substring(space + 1).trim()), Long::sum);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("访问次数格式错误: " + line, e);
+            }
+        }
+        return hits;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.demo.service;
 
-import com.example.demo.util.RedisLockUtil;
+import com.example.demo.cache.NearCache;
+import com.example.demo.cache.codec.CacheSerde;
 import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,8 +10,11 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import com.example.demo.util.RedisUtil;
 
-import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -20,28 +24,93 @@ import java.util.concurrent.TimeUnit;
 public class RedisService {
 
     private final RedisUtil redisUtil;
-    private  final RedisLockUtil redisLockUtil;
+    private final NearCache nearCache;
 
 
+    // 先查 L1 本地缓存, 未命中再查 Redis
     public <T> T getFromCacheWithType(String cacheKey, TypeReference<T> valueTypeRef) {
-        return redisUtil.getObjectByKeyAndConvert(cacheKey, valueTypeRef);
+        if (!nearCache.supports(cacheKey)) {
+            return redisUtil.getObjectByKeyAndConvert(cacheKey, valueTypeRef);
+        }
+        return nearCache.get(cacheKey, () -> redisUtil.getObjectByKeyAndConvert(cacheKey, valueTypeRef));
     }
 
+    // CacheRegion 使用: 预编译的 CacheSerde, 先查 L1
+    public <T> T getFromCache(String cacheKey, CacheSerde serde) {
+        if (!nearCache.supports(cacheKey)) {
+            return redisUtil.getObject(cacheKey, serde);
+        }
+        return nearCache.get(cacheKey, () -> redisUtil.getObject(cacheKey, serde));
+    }
+
+    // 批量读取: 先查 L1, 剩下的一次 MGET
+    @SuppressWarnings("unchecked")
+    public <T> List<T> multiGetFromCache(List<String> cacheKeys, CacheSerde serde) {
+        List<T> results = new ArrayList<>(Collections.nCopies(cacheKeys.size(), null));
+        List<Integer> remoteIndexes = new ArrayList<>();
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            String key = cacheKeys.get(i);
+            Object local = nearCache.supports(key) ? nearCache.getIfPresent(key) : null;
+            if (local != null) {
+                results.set(i, (T) local);
+            } else {
+                remoteIndexes.add(i);
+            }
+        }
+        if (remoteIndexes.isEmpty()) {
+            return results;
+        }
+
+        long version = nearCache.version();
+        List<String> remoteKeys = remoteIndexes.stream().map(cacheKeys::get).toList();
+        List<T> remoteValues = redisUtil.getObjects(remoteKeys, serde);
+        for (int i = 0; i < remoteKeys.size(); i++) {
+            T value = remoteValues.get(i);
+            results.set(remoteIndexes.get(i), value);
+            if (nearCache.supports(remoteKeys.get(i))) {
+                nearCache.putIfUnchanged(remoteKeys.get(i), value, version);
+            }
+        }
+        return results;
+    }
+
+    // 批量写入 (Pipeline), ttlMillis 为每个 key 的过期毫秒数
+    public void multiSetToCache(Map<String, Object> values, Map<String, Long> ttlMillis, CacheSerde serde) {
+        if (values.isEmpty()) {
+            return;
+        }
+        redisUtil.setObjects(values, ttlMillis, serde);
+        nearCache.invalidateAll(values.keySet().stream().filter(nearCache::supports).toList());
+    }
+
+    public void setToCache(String cacheKey, Object value, long ttlMillis, CacheSerde serde) {
+        redisUtil.setObject(cacheKey, value, ttlMillis, serde);
+        if (nearCache.supports(cacheKey)) {
+            nearCache.invalidate(cacheKey);
+        }
+    }
+
+    // 写 Redis 后让所有节点的 L1 失效, 下次读取时再从 Redis 回填
     public void setFromCacheWithObject(String cacheKey, Object value, long ttl, TimeUnit unit) {
         redisUtil.setObjectByKey(cacheKey, value, ttl, unit);
+        if (nearCache.supports(cacheKey)) {
+            nearCache.invalidate(cacheKey);
+        }
     }
 
     public void deleteFromCache(String cacheKey) {
         redisUtil.deleteCache(cacheKey);
+        if (nearCache.supports(cacheKey)) {
+            nearCache.invalidate(cacheKey);
+        }
     }
 
-    // Redis tryLock & unlock
-    public boolean tryLock(String key, String value, long ttl) {
-        return redisLockUtil.tryLock(key, value, ttl);
-    }
-
-    public void unlock(String key, String value) {
-        redisLockUtil.unlock(key, value);
+    public void multiDeleteFromCache(Collection<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+        redisUtil.deleteCaches(cacheKeys);
+        nearCache.invalidateAll(cacheKeys.stream().filter(nearCache::supports).toList());
     }
 
     public String getStringWithKey(String key) {
@@ -56,6 +125,13 @@ public class RedisService {
         redisUtil.incrementBy(key, i);
     }
 
+    // 多个计数器一次 Pipeline 更新
+    public void incrementAll(Map<String, Long> increments) {
+        if (!increments.isEmpty()) {
+            redisUtil.incrementAllBy(increments);
+        }
+    }
+
     public Set<String> getKeysByPattern(String pattern) {
         return redisUtil.getByPattern(pattern);
     }
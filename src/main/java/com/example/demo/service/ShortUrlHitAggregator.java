@@ -0,0 +1,188 @@
+package com.example.demo.service;
+
+import com.example.demo.service.RabbitMQ.RabbitMQProducer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// 短链接访问次数的本地聚合: 跳转时只在内存里加 1, 不再每次访问同步发送一条 RabbitMQ 消息
+// 1. 计数: ConcurrentHashMap<shortKey, LongAdder>, 不同 key 分散在不同桶, 同一个热门 key 的并发累加分散在 LongAdder 的多个 cell
+// 2. 刷新: 每 flush-ms 毫秒, 或累计 max-pending-hits 次访问时, 把全部 (shortKey, 次数) 作为一批发送 (很大时由 RabbitMQProducer 拆成几条消息)
+// 3. 发送不等待 Broker 确认; 发送失败或确认为拒绝时计数加回去, 下次刷新再发; 连续一个周期没有访问的 key 从 map 里移除
+// 4. 关闭时等待最后一批的确认 (最多 shutdown-timeout-ms 毫秒)
+// 访问量越倾斜, 一条消息合并的访问越多, RabbitMQ 和 Redis 的写入量下降越明显
+@Slf4j
+@Component
+public class ShortUrlHitAggregator {
+
+    // 大约每 256 次访问检查一次累计量, 热路径上不读取所有 cell
+    private static final int PENDING_CHECK_MASK = 0xFF;
+    // 关闭时最多发送几轮 (被拒绝的部分加回后再发)
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    private final RabbitMQProducer rabbitMQProducer;
+    private final boolean enabled;
+    private final long maxPendingHits;
+    private final long shutdownTimeoutMillis;
+
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    // 上次刷新后的访问次数
+    private final LongAdder pending = new LongAdder();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "short-url-hit-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter recorded;
+    private final Counter flushedHits;
+    private final Counter flushedBatches;
+    private final Counter failedBatches;
+
+    public ShortUrlHitAggregator(RabbitMQProducer rabbitMQProducer,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.short-url.hits.aggregate:true}") boolean enabled,
+                                 @Value("${app.short-url.hits.max-pending-hits:10000}") long maxPendingHits,
+                                 @Value("${app.short-url.hits.shutdown-timeout-ms:5000}") long shutdownTimeoutMillis) {
+        this.rabbitMQProducer = rabbitMQProducer;
+        this.enabled = enabled;
+        this.maxPendingHits = maxPendingHits;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.recorded = meterRegistry.counter("short_url.hits.recorded");
+        this.flushedHits = meterRegistry.counter("short_url.hits.flushed");
+        this.flushedBatches = meterRegistry.counter("short_url.hits.batches");
+        this.failedBatches = meterRegistry.counter("short_url.hits.batches.failed");
+        Gauge.builder("short_url.hits.pending.keys", counts, Map::size).register(meterRegistry);
+    }
+
+    // 跳转热路径: 只做内存累加
+    public void record(String shortKey) {
+        if (!enabled) {
+            // 关闭聚合时每次访问单独发送 (和旧行为一样一条消息一次访问), 失败不重发
+            rabbitMQProducer.sendHits(Map.of(shortKey, 1L), failed -> failedBatches.increment());
+            return;
+        }
+        counts.computeIfAbsent(shortKey, key -> new LongAdder()).increment();
+        pending.increment();
+        recorded.increment();
+        if ((ThreadLocalRandom.current().nextInt() & PENDING_CHECK_MASK) == 0 && pending.sum() >= maxPendingHits
+                && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.short-url.hits.flush-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    // 取出全部计数作为一批发送, 返回发送的 key 数量
+    public synchronized int flush() {
+        flushRequested.set(false);
+        Map<String, Long> batch = drain();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        send(batch);
+        return batch.size();
+    }
+
+    // 当前累计但还没发送的访问次数
+    public long pendingHits() {
+        return pending.sum();
+    }
+
+    // 关闭前发送剩余计数并等待 Broker 确认; 被拒绝的部分加回后再发, 超时或几轮后仍未发出的计数丢弃
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        for (int attempt = 0; attempt < SHUTDOWN_ATTEMPTS; attempt++) {
+            Map<String, Long> batch;
+            synchronized (this) {
+                batch = drain();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                send(batch).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (TimeoutException e) {
+                break;
+            } catch (ExecutionException e) {
+                // 失败的部分已经由 requeue 加回, 下一轮再发
+            }
+        }
+        if (pending.sum() > 0) {
+            log.warn("关闭时仍有 {} 次短链接访问没有确认发送", pending.sum());
+        }
+    }
+
+    // 只统计 Broker 确认的部分; 被拒绝的部分由 requeue 加回计数
+    private CompletableFuture<Void> send(Map<String, Long> batch) {
+        long hits = batch.values().stream().mapToLong(Long::longValue).sum();
+        LongAdder failedHits = new LongAdder();
+        return rabbitMQProducer.sendHits(batch, failed -> {
+            failedHits.add(failed.values().stream().mapToLong(Long::longValue).sum());
+            requeue(failed);
+        }).whenComplete((ignored, e) -> {
+            long confirmed = hits - failedHits.sum();
+            if (confirmed > 0) {
+                flushedBatches.increment();
+                flushedHits.increment(confirmed);
+            }
+        });
+    }
+
+    // 没有发送成功的计数加回去, 下次刷新一起发送; 可能在确认线程上调用
+    private void requeue(Map<String, Long> failed) {
+        failedBatches.increment();
+        failed.forEach((shortKey, hits) -> {
+            counts.computeIfAbsent(shortKey, key -> new LongAdder()).add(hits);
+            pending.add(hits);
+        });
+        log.warn("短链接访问次数发送失败, {} 个 key 留到下次", failed.size());
+    }
+
+    private Map<String, Long> drain() {
+        Map<String, Long> batch = new HashMap<>();
+        long drained = 0;
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            LongAdder adder = entry.getValue();
+            long hits = adder.sumThenReset();
+            if (hits == 0) {
+                // 整个周期没有访问: 在桶锁内确认仍为 0 再移除, 期间有新访问就保留到下次刷新
+                // 移除后仍持有旧 LongAdder 的并发累加会丢失, 访问统计允许这样的误差
+                counts.computeIfPresent(entry.getKey(), (key, current) -> current.sum() == 0 ? null : current);
+            }
+            if (hits > 0) {
+                batch.put(entry.getKey(), hits);
+                drained += hits;
+            }
+        }
+        pending.add(-drained);
+        return batch;
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.CacheRegion;
+import com.example.demo.cache.ShortUrlHotCache;
 import com.example.demo.dto.ApiResponseDTO;
+import com.example.demo.dto.HotKeyStatDTO;
 import com.example.demo.entity.ShortUrl;
 import com.example.demo.repository.ShortUrlRepository;
-import com.example.demo.service.RabbitMQ.RabbitMQProducer;
 import com.example.demo.util.BloomFilterUtil;
 import com.example.demo.util.RedisUtil;
 import com.example.demo.util.ShortKeyGenerator;
@@ -16,6 +18,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -27,38 +30,32 @@ public class ShortUrlService {
 
     private final ShortUrlRepository shortUrlRepository;
     private final RedisService redisService;
-    private final RabbitMQProducer rabbitMQProducer;
+    private final ShortUrlHitAggregator shortUrlHitAggregator;
     private final BloomFilterUtil bloomFilterUtil;
+    private final CacheRegion<String, String> shortUrlCache;
+    private final ShortUrlHotCache shortUrlHotCache;
     private static final String REDIS_KEY_PREFIX = "short_url:";
     private static final String REDIS_HITS_PREFIX = "short_url_hits:";
     private static final String BLOOM_FILTER_NAME_SHORT = "bloom:shortUrl:";
 
+    private static final TypeReference<String> STRING_TYPE = new TypeReference<>() {};
+
 
     public ResponseEntity<ApiResponseDTO<String>> redirect(String shortKey) {
 
-        // 1. 先查询 Bloom 过滤器
-        if (!bloomFilterUtil.mightContain(BLOOM_FILTER_NAME_SHORT, shortKey)) {
-            return ResponseEntity.status(404).body(new ApiResponseDTO<>(404, "短链接不存在", null));
+        // 0. 本地热点缓存: 热门链接直接跳转, 不查 Bloom 和 Redis
+        String longUrl = shortUrlHotCache.get(shortKey);
+        if (longUrl == null) {
+            longUrl = lookup(shortKey);
         }
 
-        // 2. 查 Redis 缓存
-        String longUrl = redisService.getFromCacheWithType(REDIS_KEY_PREFIX + shortKey, new TypeReference<String>() {});
-
-        // 3. 如果 Redis 没有
+        // 不存在
         if (longUrl == null) {
-            // 再查数据库
-            Optional<ShortUrl> optional = shortUrlRepository.findByShortKey(shortKey);
-            if (optional.isEmpty()) {
-                return ResponseEntity.status(404).body(new ApiResponseDTO<>(404, "短链接不存在", null));
-            }
-            // 存入 Redis
-            longUrl = optional.get().getLongUrl();
-            redisService.setFromCacheWithObject(REDIS_KEY_PREFIX + shortKey, longUrl, 7, TimeUnit.DAYS);
+            return ResponseEntity.status(404).body(new ApiResponseDTO<>(404, "短链接不存在", null));
         }
 
-        // 4. 统计访问次数 发送消息到 RabbitMQ
-        log.info("Producer 发送消息: {}", shortKey);
-        rabbitMQProducer.sendMessage(shortKey);
+        // 4. 统计访问次数: 本地累加, 定期整批发送到 RabbitMQ
+        shortUrlHitAggregator.record(shortKey);
 
         // redisUtil.increment(REDIS_HITS_PREFIX + shortKey); //先存 Redis, 之后每10分钟 存1次数据库
 
@@ -66,10 +63,35 @@ public class ShortUrlService {
         return ResponseEntity.status(302).header("Location", longUrl).build();
     }
 
+    // 热点缓存未命中: 本地墓碑 -> Bloom -> Redis -> 数据库, 找到后交给热点缓存决定是否留下
+    private String lookup(String shortKey) {
+        // 1. 本地墓碑: 已知不存在的短链接直接返回, 没有网络 I/O
+        if (shortUrlCache.isKnownMissing(shortKey)) {
+            return null;
+        }
+
+        // 2. 查询 Bloom 过滤器
+        if (!bloomFilterUtil.mightContain(BLOOM_FILTER_NAME_SHORT, shortKey)) {
+            return null;
+        }
+
+        // 3. 查 Redis 缓存, 没有再查数据库 (同一个 shortKey 只回源一次)
+        long version = shortUrlHotCache.version();
+        String longUrl = shortUrlCache.get(shortKey,
+                key -> shortUrlRepository.findByShortKey(key).map(ShortUrl::getLongUrl).orElse(null));
+        shortUrlHotCache.putIfUnchanged(shortKey, longUrl, version);
+        return longUrl;
+    }
+
+    // 本节点最热的短链接
+    public ResponseEntity<ApiResponseDTO<List<HotKeyStatDTO>>> getHotKeys(int limit) {
+        return ResponseEntity.ok(new ApiResponseDTO<>(200, "查询成功", shortUrlHotCache.hottest(limit)));
+    }
+
     @Transactional
     public ResponseEntity<ApiResponseDTO<String>> createShortUrl(String longUrl) {
         // 1. 先查 Redis 缓存
-        String shortKey = redisService.getFromCacheWithType(REDIS_KEY_PREFIX + "longUrl:" +longUrl, new TypeReference<String>() {});
+        String shortKey = redisService.getFromCacheWithType(REDIS_KEY_PREFIX + "longUrl:" +longUrl, STRING_TYPE);
         if(shortKey != null) {
             return ResponseEntity.ok(new ApiResponseDTO<>(200, "Redis 短链接已存在", shortKey));
         }
@@ -96,8 +118,9 @@ public class ShortUrlService {
         bloomFilterUtil.addToBloomFilter(BLOOM_FILTER_NAME_SHORT, shortKey);
 
 
-        // 6. 存入 Redis 缓存
-        redisService.setFromCacheWithObject(REDIS_KEY_PREFIX + shortKey, longUrl, 7, TimeUnit.DAYS);
+        // 6. 存入 Redis 缓存; 短链接 key 被重新使用时 (旧数据被手工删除) 清掉各节点热点缓存里的旧映射
+        shortUrlCache.put(shortKey, longUrl);
+        shortUrlHotCache.invalidate(shortKey);
 
         return ResponseEntity.ok(new ApiResponseDTO<>(200, "短链接生成成功", shortKey));
     }
@@ -18,8 +18,10 @@ public class ShortUrlStatsService {
     private final RedisService redisService;
     private final ShortUrlRepository shortUrlRepository;
     private static final String REDIS_HITS_PREFIX = "short_url_hits:";
+    private static final String TOTAL_HITS_KEY = "total_hits_count:";
 
     // 每 5 秒执行一次 Redis List 更新到 Redis
+    // 访问次数现在由 ShortUrlHitAggregator 在本地聚合后整批发送, 这里只处理旧版本留在 List 里的数据
     @Transactional
     @Scheduled(fixedRate = 5 * 1000)
     public void synAccessCountToRedis() {
@@ -34,17 +36,27 @@ public class ShortUrlStatsService {
             }
 
             // 统计每个点链接的访问次数
-            Map<String, Integer> countMap = new HashMap<>();
+            Map<String, Long> countMap = new HashMap<>();
             for (String shortKey : shortKeyList) {
-                countMap.put(shortKey, countMap.getOrDefault(shortKey, 0) + 1);
+                countMap.merge(shortKey, 1L, Long::sum);
             }
+            applyHits(countMap);
+        }
+    }
 
-            // 统一更新给 Redis 访问次数
-            for (Map.Entry<String, Integer> entry : countMap.entrySet()) {
-                redisService.incrementByInteger(REDIS_HITS_PREFIX + entry.getKey(), entry.getValue());
-                redisService.incrementByInteger("total_hits_count:", entry.getValue());  // 记录总访问量 测试用
-            }
+    // 统一更新给 Redis 访问次数: 一批 (shortKey, 次数) 一次 Pipeline 写入
+    public void applyHits(Map<String, Long> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        Map<String, Long> increments = new HashMap<>();
+        long total = 0;
+        for (Map.Entry<String, Long> entry : hits.entrySet()) {
+            increments.put(REDIS_HITS_PREFIX + entry.getKey(), entry.getValue());
+            total += entry.getValue();
         }
+        increments.put(TOTAL_HITS_KEY, total); // 记录总访问量 测试用
+        redisService.incrementAll(increments);
     }
 
     // 每 90 秒执行一次 Redis 更新到 数据库
@@ -2,12 +2,13 @@ package com.example.demo.service;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import com.example.demo.cache.CacheRegion;
 import com.example.demo.dto.ProductDTO;
 import com.example.demo.entity.Product;
 import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ShortUrlRepository;
+import com.example.demo.service.RabbitMQ.RabbitMQProducer;
 import com.example.demo.webSocket.WebSocketNotificationHandler;
-import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.LoggerFactory;
@@ -18,7 +19,14 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Service
@@ -29,12 +37,19 @@ public class TestService {
     private final ShortUrlRepository shortUrlRepository;
     private final RedisService redisService;
     private final WebSocketNotificationHandler notificationHandler;
+    private final CacheRegion<Long, ProductDTO> productCache;
+    private final RabbitMQProducer rabbitMQProducer;
+
+    // 访问次数链路测试: 消息发到没有绑定队列的 routing key, Broker 确认后直接丢弃, 不影响真实统计
+    private static final String BENCHMARK_ROUTING_KEY = "short-url-benchmark";
+    private static final String BENCHMARK_HITS_PREFIX = "benchmark_hits:";
+    private static final int BENCHMARK_HITS = 20_000;
+    private static final int BENCHMARK_KEYS = 1_000;
 
     // 1. 测试 Redis vs MySQL 查询
     public ResponseEntity<String> measureQueryPerformance() {
-        String cacheKey = "product:";
         Long id = productRepository.findFirstValidProductId()
-                .filter( idl -> redisService.isKeyExists(cacheKey + idl))
+                .filter( idl -> redisService.isKeyExists(productCache.key(idl)))
                 .orElse(null);
         if (id == null) {
             return ResponseEntity.notFound().build();
@@ -42,7 +57,7 @@ public class TestService {
 
         // 记录 Redis 查询时间
         Instant startRedis = Instant.now();
-        ProductDTO redisProduct = redisService.getFromCacheWithType(cacheKey + id, new TypeReference<ProductDTO>() {});
+        ProductDTO redisProduct = productCache.peek(id);
         Instant endRedis = Instant.now();
         long redisTime = Duration.between(startRedis, endRedis).toMillis();
 
@@ -89,6 +104,62 @@ public class TestService {
                 redisCounts, dbWritesLast10Min, throughputBoost));
     }
 
+    // 4. 测试访问次数链路: 每次访问一条消息 + 每条一次 Redis 写入 vs 本地聚合后批量发送 + 一次 Pipeline 写入
+    public ResponseEntity<String> measureHitPipelineThroughput() {
+        // 倾斜分布: 少数热门 key 占大部分访问
+        List<String> hits = new ArrayList<>(BENCHMARK_HITS);
+        for (int i = 0; i < BENCHMARK_HITS; i++) {
+            double r = ThreadLocalRandom.current().nextDouble();
+            hits.add("bench" + (int) (BENCHMARK_KEYS * r * r * r));
+        }
+
+        try {
+            // 之前: 每次访问发送一条消息, 消费端每条消息写一次 Redis
+            Instant start = Instant.now();
+            List<CompletableFuture<Void>> confirms = new ArrayList<>(hits.size());
+            for (String shortKey : hits) {
+                confirms.add(rabbitMQProducer.sendHits(Map.of(shortKey, 1L), BENCHMARK_ROUTING_KEY, failed -> { }));
+            }
+            CompletableFuture.allOf(confirms.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+            long publishBefore = Duration.between(start, Instant.now()).toMillis();
+
+            start = Instant.now();
+            for (String shortKey : hits) {
+                redisService.incrementByInteger(BENCHMARK_HITS_PREFIX + shortKey, 1);
+            }
+            long redisBefore = Duration.between(start, Instant.now()).toMillis();
+
+            // 之后: 本地 LongAdder 聚合 (同 ShortUrlHitAggregator), 一批发送, 消费端一次 Pipeline
+            start = Instant.now();
+            Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+            hits.forEach(shortKey -> counts.computeIfAbsent(shortKey, key -> new LongAdder()).increment());
+            Map<String, Long> batch = new HashMap<>();
+            counts.forEach((shortKey, adder) -> batch.put(shortKey, adder.sum()));
+            rabbitMQProducer.sendHits(batch, BENCHMARK_ROUTING_KEY, failed -> { }).get(60, TimeUnit.SECONDS);
+            long publishAfter = Duration.between(start, Instant.now()).toMillis();
+
+            start = Instant.now();
+            Map<String, Long> increments = new HashMap<>();
+            batch.forEach((shortKey, count) -> increments.put(BENCHMARK_HITS_PREFIX + shortKey, count));
+            redisService.incrementAll(increments);
+            long redisAfter = Duration.between(start, Instant.now()).toMillis();
+
+            redisService.multiDeleteFromCache(increments.keySet());
+
+            return ResponseEntity.ok(String.format(
+                    "访问次数链路 (%d 次访问, %d 个 key): RabbitMQ 每次一条 %dms (%d 条消息) vs 聚合后 %dms (1 批), 提升 %.1fx " +
+                            "| Redis 逐条写入 %dms vs Pipeline %dms, 提升 %.1fx",
+                    hits.size(), batch.size(), publishBefore, hits.size(), publishAfter,
+                    (double) publishBefore / Math.max(publishAfter, 1),
+                    redisBefore, redisAfter, (double) redisBefore / Math.max(redisAfter, 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(503).body("测试被中断");
+        } catch (ExecutionException | TimeoutException e) {
+            return ResponseEntity.status(503).body("RabbitMQ 确认超时或失败: " + e.getMessage());
+        }
+    }
+
     public String getLiveStats() {
         long redisListSize = redisService.getBufferListSize("short_url_buffer");
         long redisProcessed = redisService.getTotalHitsCount();
@@ -1,16 +1,41 @@
 package com.example.demo.util;
 
+import com.example.demo.bloom.BloomFilterLoader;
+import com.example.demo.bloom.CountingBloomFilter;
+import com.example.demo.bloom.BloomFilterReplica;
+import com.example.demo.bloom.LocalCountingBloomFilter;
 import com.example.demo.dto.ApiResponseDTO;
+import com.example.demo.lock.LockHandle;
+import com.example.demo.lock.LockService;
 import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ShortUrlRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBloomFilter;
+import org.redisson.api.RFuture;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 
 @Slf4j
@@ -20,8 +45,84 @@ public class BloomFilterUtil {
     private final RedissonClient redissonClient;
     private final ProductRepository productRepository;
     private final ShortUrlRepository shortUrlRepository;
+    private final BloomFilterReplica bloomFilterReplica;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LockService lockService;
+    private final BloomFilterLoader bloomFilterLoader;
     private static final String BLOOM_FILTER_NAME_PRODUCT = "bloom:product:";
     private static final String BLOOM_FILTER_NAME_SHORT = "bloom:shortUrl:";
+    private static final List<String> FILTER_NAMES = List.of(BLOOM_FILTER_NAME_PRODUCT, BLOOM_FILTER_NAME_SHORT);
+
+    // 重建时先写入影子过滤器, 写完再整体替换正式过滤器
+    private static final String SHADOW_SUFFIX = "shadow";
+    // 追加新增数据时每次 add 写入的值数量 (一次 Redisson 脚本调用)
+    private static final int ADD_BATCH_SIZE = 10_000;
+
+    // 影子过滤器的各个 key (位图 / 计数器, 已添加集合, 配置) 一起改名为正式过滤器, 读取方不会看到空的或只替换了一半的过滤器
+    // KEYS[1] 记录最后一次替换的 fencing token, ARGV[1] 为本次重建锁的 token: 不大于已记录的 token 说明锁已过期并被新的重建者获取, 拒绝替换
+    // 其余 KEYS 两两一组 (影子, 正式); 影子 key 不存在 (没有数据) 时删除正式 key
+    private static final RedisScript<Long> SWAP_SCRIPT = RedisScript.of(
+            "if tonumber(ARGV[1]) <= tonumber(redis.call('get', KEYS[1]) or '0') then " +
+                    "   return 0 " +
+                    "end " +
+                    "redis.call('set', KEYS[1], ARGV[1]) " +
+                    "for i = 2, #KEYS, 2 do " +
+                    "   if redis.call('exists', KEYS[i]) == 1 then " +
+                    "       redis.call('rename', KEYS[i], KEYS[i + 1]) " +
+                    "   else " +
+                    "       redis.call('del', KEYS[i + 1]) " +
+                    "   end " +
+                    "end " +
+                    "return 1", Long.class);
+
+    // 目标误判率
+    @Value("${app.bloom.false-probability:0.01}")
+    private double falseProbability;
+
+    // 容量 = 当前行数 x headroom, 留出增长空间
+    @Value("${app.bloom.headroom:2.0}")
+    private double headroom;
+
+    @Value("${app.bloom.min-expected-insertions:10000}")
+    private long minExpectedInsertions;
+
+    // 估算误判率超过目标的多少倍时自动重建
+    @Value("${app.bloom.rebuild-fpp-factor:2.0}")
+    private double rebuildFppFactor;
+
+    // 重建开始时间往前多算一段, 覆盖加载期间还没提交的事务
+    @Value("${app.bloom.catch-up-margin-seconds:60}")
+    private long catchUpMarginSeconds;
+
+    // 使用计数 Bloom 过滤器 (支持删除) 的过滤器
+    @Value("${app.bloom.counting-filters:bloom:product:}")
+    private Set<String> countingFilters = Set.of();
+
+    // 删除标记的保留时间, 覆盖删除事件可能被重放的时间范围
+    @Value("${app.bloom.counting.removal-marker-ttl-seconds:86400}")
+    private long removalMarkerTtlSeconds;
+
+    private final Map<String, CountingBloomFilter> countingBloomFilters = new ConcurrentHashMap<>();
+
+    // 普通过滤器的 size / hashIterations, 批量检查时本地计算位置用
+    private final Map<String, long[]> bloomConfigs = new ConcurrentHashMap<>();
+
+    // 已确认在 Redis 里初始化过的过滤器
+    private final Set<String> initialized = ConcurrentHashMap.newKeySet();
+
+    // 计数过滤器的首次构建 (全量读取数据库) 在后台线程执行, 不占用写操作和 Outbox relay 的线程
+    private final Set<String> initPending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService initExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bloom-init");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 过滤器的数据来源: 行数, 全量加载用的表和列, 某个时间之后新增的值
+    private record Source(Supplier<Long> count,
+                          BloomFilterLoader.Table table,
+                          Function<LocalDateTime, List<String>> createdSince) {
+    }
 
     // 初始化过滤器
     public void initBloomFilter(String filterName, long expectedInsertions, double falseProbability) {
@@ -31,59 +132,429 @@ public class BloomFilterUtil {
 
     // 添加 JSON 数据到 Bloom 过滤器
     public void addToBloomFilter(String filterName, String value) {
+        addAllToBloomFilter(filterName, List.of(value));
+    }
+
+    // 批量添加: 一次调用写入所有值
+    // 重建切换的瞬间 Redisson 可能因配置已变化拒绝写入, 用新的配置重试一次; 仍然失败时抛出, 由调用方重试
+    // (Outbox 推迟整批), 漏掉的值会被判为不存在
+    public void addAllToBloomFilter(String filterName, Collection<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // 如果 Bloom 第一次运行, 则按数据量初始化, 其他时间不再初始化
+                if (!ensureInitialized(filterName)) {
+                    // 计数过滤器还在后台构建: 构建从数据库全量读取, 替换后再补上构建期间的新增, 这些值不会漏掉
+                    log.debug("Bloom 过滤器 {} 构建中, 跳过 {} 个新增", filterName, values.size());
+                    return;
+                }
+                if (countingFilters.contains(filterName)) {
+                    // 计数过滤器的添加是幂等的, 副本只同步真正添加的值
+                    for (CountingBloomFilter.Update update : countingFilter(filterName).add(values)) {
+                        bloomFilterReplica.added(filterName, update.sequence(), update.values());
+                    }
+                } else {
+                    redissonClient.<String>getBloomFilter(filterName).add(values);
+                    bloomFilterReplica.added(filterName, values);
+                }
+                return;
+            } catch (Exception e) {
+                initialized.remove(filterName);
+                if (attempt >= 2) {
+                    log.error("Bloom 过滤器批量添加失败 count={}: {}", values.size(), e.getMessage());
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // 从计数过滤器中删除 (如已删除的产品), 之后检查直接返回不存在; 普通过滤器不支持删除, 忽略
+    // 只有确实添加过的值才会被删除, 同一个值重复删除只生效一次
+    public void removeFromBloomFilter(String filterName, Collection<String> values) {
+        if (values.isEmpty() || !countingFilters.contains(filterName)) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                for (CountingBloomFilter.Update update : countingFilter(filterName).remove(values)) {
+                    bloomFilterReplica.removed(filterName, update.sequence(), update.values());
+                }
+                return;
+            } catch (Exception e) {
+                if (attempt >= 2) {
+                    // 值仍然 "可能存在", 由缓存墓碑拦截, 不影响正确性
+                    log.error("Bloom 过滤器批量删除失败 count={}: {}", values.size(), e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    // 检查数据是否存在: 先查本地副本, 副本和 Redis 同步时存在和不存在都直接返回
+    // 副本给不出结果 (还没同步, 或广播序号有缺口, 其他节点的新增可能还没收到) 时查 Redis, 过滤器不能漏判
+    public boolean mightContain(String filterName, String value) {
+        Boolean local = bloomFilterReplica.mightContain(filterName, value);
+        if (local != null) {
+            return local;
+        }
+        return remoteMightContainAll(filterName, List.of(value))[0];
+    }
+
+    // 批量检查: 副本给出结果的直接返回, 其余的一次发往 Redis
+    public boolean[] mightContainAll(String filterName, List<String> values) {
+        boolean[] results = new boolean[values.size()];
+        List<Integer> remoteIndexes = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            Boolean local = bloomFilterReplica.mightContain(filterName, values.get(i));
+            if (local != null) {
+                results[i] = local;
+            } else {
+                remoteIndexes.add(i);
+            }
+        }
+        if (remoteIndexes.isEmpty()) {
+            return results;
+        }
+        boolean[] remote = remoteMightContainAll(filterName, remoteIndexes.stream().map(values::get).toList());
+        for (int i = 0; i < remote.length; i++) {
+            results[remoteIndexes.get(i)] = remote[i];
+        }
+        return results;
+    }
+
+    // 手动重建全部过滤器; 重建期间正式过滤器照常使用
+    // 每个过滤器单独报告结果: rebuilt (写入数量) / locked (其他请求正在重建) / failed (错误信息)
+    public ResponseEntity<ApiResponseDTO<Map<String, Map<String, Object>>>> resetBloomFilter() {
+        log.info("正在重建 Bloom Filters...");
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        result.put("products", rebuildResult(BLOOM_FILTER_NAME_PRODUCT));
+        result.put("shortUrls", rebuildResult(BLOOM_FILTER_NAME_SHORT));
+
+        long rebuilt = result.values().stream().filter(filter -> "rebuilt".equals(filter.get("status"))).count();
+        if (rebuilt == result.size()) {
+            return ResponseEntity.ok(new ApiResponseDTO<>(200, "Bloom Filters 重建完成", result));
+        }
+        if (rebuilt > 0) {
+            return ResponseEntity.ok(new ApiResponseDTO<>(200, "部分 Bloom Filters 重建完成", result));
+        }
+        boolean locked = result.values().stream().anyMatch(filter -> "locked".equals(filter.get("status")));
+        return locked
+                ? ResponseEntity.status(409).body(new ApiResponseDTO<>(409, "Bloom Filter 正在由其他请求重建", result))
+                : ResponseEntity.status(500).body(new ApiResponseDTO<>(500, "Bloom Filters 重建失败", result));
+    }
+
+    private Map<String, Object> rebuildResult(String filterName) {
+        Map<String, Object> filterResult = new LinkedHashMap<>();
         try {
-            RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(filterName);
+            long loaded = rebuild(filterName);
+            if (loaded < 0) {
+                filterResult.put("status", "locked");
+            } else {
+                filterResult.put("status", "rebuilt");
+                filterResult.put("values", loaded);
+            }
+        } catch (Exception e) {
+            log.error("Bloom 过滤器 {} 重建失败: {}", filterName, e.getMessage());
+            filterResult.put("status", "failed");
+            filterResult.put("error", e.getMessage());
+        }
+        return filterResult;
+    }
+
+    // 按当前数据量重建一个过滤器: 写入影子过滤器 -> 补上加载期间的新增 -> 原子替换 -> 通知各节点副本同步
+    // 返回写入的值数量, 其他节点正在重建时返回 -1
+    public long rebuild(String filterName) {
+        try (LockHandle lock = lockService.tryLock("bloom_rebuild", filterName, Duration.ZERO)) {
+            if (lock == null) {
+                log.info("Bloom 过滤器 {} 正在由其他节点重建, 跳过", filterName);
+                return -1;
+            }
+            Source source = source(filterName);
+            String shadowName = filterName + SHADOW_SUFFIX;
+            LocalDateTime startedAt = LocalDateTime.now().minusSeconds(catchUpMarginSeconds);
+            long rows = source.count().get();
+            long expectedInsertions = expectedInsertions(rows);
+
+            // 1. 上次失败可能留下影子过滤器, 先删除再按新容量初始化
+            boolean counting = countingFilters.contains(filterName);
+            Consumer<List<String>> shadow;
+            Consumer<List<String>> live;
+            List<String> swapKeys;
+            if (counting) {
+                CountingBloomFilter countingShadow = new CountingBloomFilter(stringRedisTemplate, shadowName, removalMarkerTtlSeconds);
+                CountingBloomFilter countingLive = countingFilter(filterName);
+                countingShadow.delete();
+                countingShadow.tryInit(expectedInsertions, falseProbability);
+                shadow = countingShadow::add;
+                live = countingLive::add;
+                swapKeys = List.of(fenceName(filterName), countingShadow.countersKey(), countingLive.countersKey(),
+                        countingShadow.addedKey(), countingLive.addedKey(),
+                        countingShadow.configKey(), countingLive.configKey());
+            } else {
+                RBloomFilter<String> bloomShadow = redissonClient.getBloomFilter(shadowName);
+                bloomShadow.delete();
+                bloomShadow.tryInit(expectedInsertions, falseProbability);
+                shadow = bloomShadow::add;
+                live = redissonClient.<String>getBloomFilter(filterName)::add;
+                swapKeys = List.of(fenceName(filterName), shadowName, filterName, configName(shadowName), configName(filterName));
+            }
+
+            // 2. 分块并行加载全部数据; 普通过滤器再补上加载期间的新增
+            long loaded = bloomFilterLoader.load(filterName, source.table(), shadow, rows);
+            if (!counting) {
+                addInBatches(shadow, source.createdSince().apply(startedAt));
+            }
+
+            // 3. 原子替换; 加载期间锁过期并被其他节点拿走时放弃, 不用旧的影子覆盖新的重建结果
+            Long swapped = stringRedisTemplate.execute(SWAP_SCRIPT, swapKeys, String.valueOf(lock.fencingToken()));
+            if (swapped == null || swapped == 0) {
+                log.warn("Bloom 过滤器 {} 重建期间锁已被其他节点获取 (fencing token {}), 放弃替换", filterName, lock.fencingToken());
+                return -1;
+            }
+            initialized.add(filterName);
+            bloomConfigs.remove(filterName);
+
+            // 4. 加载期间和替换前一刻写进旧过滤器的新增再补一次
+            // 计数过滤器只在这里追加一次: 已添加集合随计数器一起替换, 加载时已写入的值不会再加计数
+            addInBatches(live, source.createdSince().apply(startedAt));
+            bloomFilterReplica.resyncEverywhere(filterName);
+
+            log.info("Bloom 过滤器 {} 重建完成: {} 条, 容量 {}, 误判率 {}",
+                    filterName, loaded, expectedInsertions, falseProbability);
+            return loaded;
+        }
+    }
 
-            // 如果 Bloom 第一次运行, 则初始化, 其他时间不再初始化
-            if (bloomFilter.isExists()) {
-                log.warn("Bloom 过滤器 {} 未初始化. 正在初始化...", filterName);
-                bloomFilter.tryInit(10000, 0.01); // 默认 1 万个数据, 误判率 1% 越低占内存越高
+    // 定期检查: 数据量超过容量, 或按填充率估算的误判率明显高于目标时重建
+    @Scheduled(fixedDelayString = "${app.bloom.health-check-ms:600000}",
+            initialDelayString = "${app.bloom.health-check-ms:600000}")
+    public void checkHealth() {
+        for (String filterName : FILTER_NAMES) {
+            try {
+                String reason = rebuildReason(filterName);
+                if (reason != null) {
+                    log.warn("Bloom 过滤器 {} 需要重建: {}", filterName, reason);
+                    rebuild(filterName);
+                }
+            } catch (Exception e) {
+                log.error("Bloom 过滤器 {} 检查失败: {}", filterName, e.getMessage());
             }
+        }
+    }
+
+    // 每个过滤器的容量, 数据量, 填充率和估算误判率
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (String filterName : FILTER_NAMES) {
+            Map<String, Object> filterStats = new LinkedHashMap<>();
+            filterStats.put("rows", source(filterName).count().get());
+            try {
+                if (countingFilters.contains(filterName)) {
+                    CountingBloomFilter countingFilter = countingFilter(filterName);
+                    filterStats.put("type", "counting");
+                    filterStats.put("expectedInsertions", countingFilter.getExpectedInsertions());
+                    filterStats.put("size", countingFilter.getSize());
+                    filterStats.put("hashIterations", countingFilter.getHashIterations());
+                } else {
+                    RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(filterName);
+                    filterStats.put("type", "bloom");
+                    filterStats.put("expectedInsertions", bloomFilter.getExpectedInsertions());
+                    filterStats.put("size", bloomFilter.getSize());
+                    filterStats.put("hashIterations", bloomFilter.getHashIterations());
+                }
+            } catch (Exception e) {
+                filterStats.put("error", "未初始化");
+            }
+            filterStats.put("fillRatio", bloomFilterReplica.fillRatio(filterName));
+            filterStats.put("estimatedFpp", bloomFilterReplica.estimatedFpp(filterName));
+            stats.put(filterName, filterStats);
+        }
+        return stats;
+    }
 
-            bloomFilter.add(value);
+    private String rebuildReason(String filterName) {
+        long expectedInsertions;
+        try {
+            expectedInsertions = countingFilters.contains(filterName)
+                    ? countingFilter(filterName).getExpectedInsertions()
+                    : redissonClient.getBloomFilter(filterName).getExpectedInsertions();
         } catch (Exception e) {
-            log.error("Bloom 过滤器添加失败: {}", e.getMessage());
+            return "未初始化";
+        }
+        long rows = source(filterName).count().get();
+        if (rows > expectedInsertions) {
+            return "数据量 " + rows + " 超过容量 " + expectedInsertions;
         }
+        double fpp = bloomFilterReplica.estimatedFpp(filterName);
+        if (fpp > falseProbability * rebuildFppFactor) {
+            return String.format("估算误判率 %.4f 超过目标 %.4f 的 %.1f 倍", fpp, falseProbability, rebuildFppFactor);
+        }
+        return null;
+    }
 
+    // 启动后在后台构建还没初始化的计数过滤器
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        countingFilters.forEach(this::requestInitialization);
     }
 
-    // 检查数据是否存在
-    public boolean mightContain(String filterName, String value) {
-        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(filterName);
-        return bloomFilter.contains(value);
+    @PreDestroy
+    public void shutdown() {
+        initExecutor.shutdownNow();
     }
 
-    // 每天凌晨 3点 执行重建 Bloom
-    //@Scheduled(cron = "0 0 3 * * ?")
-    public ResponseEntity<ApiResponseDTO<Map<String, Integer>>> resetBloomFilter() {
-        log.info("正在重建 Bloom Filters...");
+    // 返回 false 表示计数过滤器还没构建好 (已在后台构建), 这时不能写入
+    private boolean ensureInitialized(String filterName) {
+        if (initialized.contains(filterName)) {
+            return true;
+        }
+        if (countingFilters.contains(filterName)) {
+            // 计数过滤器第一次使用 (如刚从普通过滤器切换过来, 或是没有已添加集合的旧格式) 时要从数据库全量构建, 空过滤器会把已有数据全部判为不存在
+            // Redis 里已有完整的配置 (其他节点构建过) 才算初始化; 构建期间检查按 "可能存在" 处理
+            if (!countingFilter(filterName).isInitialized()) {
+                requestInitialization(filterName);
+                return false;
+            }
+        } else {
+            redissonClient.getBloomFilter(filterName)
+                    .tryInit(expectedInsertions(source(filterName).count().get()), falseProbability);
+        }
+        initialized.add(filterName);
+        return true;
+    }
+
+    // 同一个过滤器同时只排队一次构建; 构建成功时 rebuild 记为已初始化
+    // 其他节点正在构建时跳过, 它替换完成后 Redis 里就有配置, 下次写入时确认; 它失败了下次写入会再触发
+    private void requestInitialization(String filterName) {
+        if (!initPending.add(filterName)) {
+            return;
+        }
+        try {
+            initExecutor.execute(() -> {
+                try {
+                    if (countingFilter(filterName).isInitialized()) {
+                        initialized.add(filterName);
+                    } else if (rebuild(filterName) < 0) {
+                        log.info("Bloom 过滤器 {} 正在由其他节点构建", filterName);
+                    }
+                } catch (Exception e) {
+                    log.error("Bloom 过滤器 {} 构建失败, 下次写入时重试: {}", filterName, e.getMessage());
+                } finally {
+                    initPending.remove(filterName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            initPending.remove(filterName);
+        }
+    }
+
+    // 查询 Redis 里的过滤器, 一次网络往返: 计数过滤器一次脚本调用, 普通过滤器一次 RBatch
+    private boolean[] remoteMightContainAll(String filterName, List<String> values) {
+        if (countingFilters.contains(filterName)) {
+            return countingMightContainAll(filterName, values);
+        }
+        return bloomMightContainAll(filterName, values);
+    }
+
+    // 和 RedissonBloomFilter.contains 相同: 位置在本地计算, 配置和所有位放在同一个 RBatch 里读取
+    // 配置和缓存的不一致 (过滤器被重建替换) 时重新读取配置再查一次
+    // RedissonBloomFilter 的 containsAsync 每个值各自一次往返, 批量方法只返回数量, 所以这里直接读位图
+    private boolean[] bloomMightContainAll(String filterName, List<String> values) {
+        for (int attempt = 1; ; attempt++) {
+            long[] config = bloomConfigs.computeIfAbsent(filterName, name -> {
+                RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(name);
+                return new long[]{bloomFilter.getSize(), bloomFilter.getHashIterations()};
+            });
+            long size = config[0];
+            int hashIterations = (int) config[1];
+            long[] indexes = new long[values.size() * hashIterations];
+            for (int i = 0; i < values.size(); i++) {
+                long[] hash = bloomFilterReplica.hash(filterName, values.get(i));
+                System.arraycopy(LocalCountingBloomFilter.indexes(hash[0], hash[1], hashIterations, size), 0,
+                        indexes, i * hashIterations, hashIterations);
+            }
+
+            RBatch batch = redissonClient.createBatch();
+            RFuture<Map<String, String>> current = batch.<String, String>getMap(configName(filterName), StringCodec.INSTANCE)
+                    .getAllAsync(Set.of("size", "hashIterations"));
+            RFuture<boolean[]> bits = batch.getBitSet(filterName).getAsync(indexes);
+            batch.execute();
+
+            Map<String, String> currentConfig = current.toCompletableFuture().join();
+            if (!String.valueOf(size).equals(currentConfig.get("size"))
+                    || !String.valueOf(hashIterations).equals(currentConfig.get("hashIterations"))) {
+                bloomConfigs.remove(filterName);
+                if (attempt >= 2) {
+                    throw new IllegalStateException("Bloom 过滤器 " + filterName + " 的配置已变化");
+                }
+                continue;
+            }
+
+            boolean[] set = bits.toCompletableFuture().join();
+            boolean[] results = new boolean[values.size()];
+            for (int i = 0; i < values.size(); i++) {
+                results[i] = true;
+                for (int j = i * hashIterations; j < (i + 1) * hashIterations; j++) {
+                    if (!set[j]) {
+                        results[i] = false;
+                        break;
+                    }
+                }
+            }
+            return results;
+        }
+    }
 
-        // 1. 找到过滤器
-        RBloomFilter<String> bloomFilter1 = redissonClient.getBloomFilter(BLOOM_FILTER_NAME_PRODUCT);
-        RBloomFilter<String> bloomFilter2 = redissonClient.getBloomFilter(BLOOM_FILTER_NAME_SHORT);
+    // 计数过滤器还没有构建时按 "可能存在" 处理, 由缓存和数据库给出结果, 等健康检查构建
+    private boolean[] countingMightContainAll(String filterName, List<String> values) {
+        try {
+            return countingFilter(filterName).containsAll(values);
+        } catch (IllegalStateException e) {
+            boolean[] results = new boolean[values.size()];
+            Arrays.fill(results, true);
+            return results;
+        }
+    }
 
-        // 2. 删除过滤器
-        bloomFilter1.delete();
-        bloomFilter2.delete();
+    private CountingBloomFilter countingFilter(String filterName) {
+        return countingBloomFilters.computeIfAbsent(filterName,
+                name -> new CountingBloomFilter(stringRedisTemplate, name, removalMarkerTtlSeconds));
+    }
 
-        // 3. 初始化过滤器
-        bloomFilter1.tryInit(10000, 0.01);
-        bloomFilter2.tryInit(10000, 0.01);
+    private long expectedInsertions(long rows) {
+        return Math.max(minExpectedInsertions, (long) Math.ceil(rows * headroom));
+    }
 
-        // 4. 重新加载数据库数据 Product
-        List<Long> productsIds = productRepository.findAllProductIds();
-        productsIds.forEach(id -> bloomFilter1.add(id.toString()));
+    private Source source(String filterName) {
+        return switch (filterName) {
+            case BLOOM_FILTER_NAME_PRODUCT -> new Source(productRepository::count,
+                    new BloomFilterLoader.Table("product", "id"),
+                    since -> toStrings(productRepository.findIdsCreatedSince(since)));
+            case BLOOM_FILTER_NAME_SHORT -> new Source(shortUrlRepository::count,
+                    new BloomFilterLoader.Table("short_url", "short_key"),
+                    shortUrlRepository::findShortKeysCreatedSince);
+            default -> throw new IllegalArgumentException("未知的 Bloom 过滤器: " + filterName);
+        };
+    }
+
+    private static void addInBatches(Consumer<List<String>> bloomFilter, List<String> values) {
+        for (int from = 0; from < values.size(); from += ADD_BATCH_SIZE) {
+            bloomFilter.accept(values.subList(from, Math.min(values.size(), from + ADD_BATCH_SIZE)));
+        }
+    }
 
-        // 4. 重新加载数据库数据 ShorUrl
-        List<Long> shortUrlIds = shortUrlRepository.findAllShortUrlIds();
-        shortUrlIds.forEach(id -> bloomFilter2.add(id.toString()));
+    private static List<String> toStrings(List<Long> ids) {
+        return ids.stream().map(String::valueOf).toList();
+    }
 
-        // 5. 记录日志
-        Map<String, Integer> result = new HashMap<>();
-        result.put("products", productsIds.size());
-        result.put("shortUrls", shortUrlIds.size());
+    // Redisson 把过滤器配置存在 "{name}:config"
+    private static String configName(String filterName) {
+        return filterName.contains("{") ? filterName + ":config" : "{" + filterName + "}:config";
+    }
 
-        log.info("Bloom Filter 重建完成: Product 数据 {} 条, ShortUrl 数据 {} 条", productsIds.size(), shortUrlIds.size());
-        return ResponseEntity.ok(new ApiResponseDTO<>(200, "Bloom Filters 重建完成", result));
+    private static String fenceName(String filterName) {
+        return filterName.contains("{") ? filterName + ":fence" : "{" + filterName + "}:fence";
     }
 }
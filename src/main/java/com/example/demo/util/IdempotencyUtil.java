@@ -0,0 +1,128 @@
+package com.example.demo.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Idempotency-Key: 客户端重试同一个请求时返回第一次的结果, 不重复执行
+// Redis 值格式 "P|指纹" (处理中) 或 "D|指纹|结果 ID" (已完成); 指纹是请求体摘要, 防止同一个 key 被用于不同的请求
+@Slf4j
+@Component
+public class IdempotencyUtil {
+
+    private static final String KEY_PREFIX = "idempotency:";
+
+    public enum Status {
+        ACQUIRED,       // 第一次请求, 由调用方执行
+        IN_PROGRESS,    // 同一个 key 的请求正在处理
+        COMPLETED,      // 已处理过, resultId 为当时的结果
+        MISMATCH        // key 已用于内容不同的请求
+    }
+
+    public record Claim(Status status, Long resultId) {
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long pendingTtlSeconds;
+    private final long ttlHours;
+
+    public IdempotencyUtil(StringRedisTemplate stringRedisTemplate,
+                           @Value("${app.idempotency.pending-ttl-seconds:30}") long pendingTtlSeconds,
+                           @Value("${app.idempotency.ttl-hours:24}") long ttlHours) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.pendingTtlSeconds = pendingTtlSeconds;
+        this.ttlHours = ttlHours;
+    }
+
+    public static String fingerprint(String requestBody) {
+        return DigestUtils.md5DigestAsHex(requestBody.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // SET NX 占用 key; 已存在时按记录的状态返回
+    // 在事务内调用时, 事务没有提交 (回滚或异常) 就释放 key, 客户端可以直接重试
+    public Claim claim(String scope, String key, String fingerprint) {
+        String redisKey = redisKey(scope, key);
+        try {
+            // 第二次是 key 在 SET NX 和 GET 之间过期或被释放的情况
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                        .setIfAbsent(redisKey, "P|" + fingerprint, pendingTtlSeconds, TimeUnit.SECONDS))) {
+                    releaseUnlessCommitted(redisKey);
+                    return new Claim(Status.ACQUIRED, null);
+                }
+                String value = stringRedisTemplate.opsForValue().get(redisKey);
+                if (value == null) {
+                    continue;
+                }
+                String[] parts = value.split("\\|");
+                if (!parts[1].equals(fingerprint)) {
+                    return new Claim(Status.MISMATCH, null);
+                }
+                return "D".equals(parts[0])
+                        ? new Claim(Status.COMPLETED, Long.parseLong(parts[2]))
+                        : new Claim(Status.IN_PROGRESS, null);
+            }
+            return new Claim(Status.IN_PROGRESS, null);
+        } catch (Exception e) {
+            // Redis 不可用时不阻塞写操作, 退化为不去重
+            log.error("Idempotency-Key 检查失败 key={}: {}", redisKey, e.getMessage());
+            return new Claim(Status.ACQUIRED, null);
+        }
+    }
+
+    // 记录结果; 有事务时提交后才记录
+    public void complete(String scope, String key, String fingerprint, Long resultId) {
+        String redisKey = redisKey(scope, key);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            store(redisKey, fingerprint, resultId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                store(redisKey, fingerprint, resultId);
+            }
+        });
+    }
+
+    private void releaseUnlessCommitted(String redisKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    release(redisKey);
+                }
+            }
+        });
+    }
+
+    private void store(String redisKey, String fingerprint, Long resultId) {
+        try {
+            stringRedisTemplate.opsForValue().set(redisKey, "D|" + fingerprint + "|" + resultId, ttlHours, TimeUnit.HOURS);
+        } catch (Exception e) {
+            log.error("Idempotency-Key 结果保存失败 key={}: {}", redisKey, e.getMessage());
+        }
+    }
+
+    private void release(String redisKey) {
+        try {
+            stringRedisTemplate.delete(redisKey);
+        } catch (Exception e) {
+            log.error("Idempotency-Key 释放失败 key={}: {}", redisKey, e.getMessage());
+        }
+    }
+
+    private static String redisKey(String scope, String key) {
+        return KEY_PREFIX + scope + ":" + key;
+    }
+}
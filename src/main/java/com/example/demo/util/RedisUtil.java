@@ -1,17 +1,23 @@
 package com.example.demo.util;
 
-import com.example.demo.exception.CacheConversionException;
+import com.example.demo.cache.codec.CacheCodecs;
+import com.example.demo.cache.codec.CacheSerde;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -22,40 +28,85 @@ public class RedisUtil {
 
     private final ObjectMapper objectMapper;
     private final StringRedisTemplate stringRedisTemplate;
+    private final CacheCodecs cacheCodecs;
 
 
+    // 缓存值按 key 前缀选择编解码器 (见 CacheCodecs), 以原始字节读写
     public <T> T getObjectByKeyAndConvert(String key, TypeReference<T> valueTypeRef) {
-        String cacheData = stringRedisTemplate.opsForValue().get(key);
+        JavaType valueType = objectMapper.getTypeFactory().constructType(valueTypeRef);
+        byte[] cacheData = getBytes(key);
+        return cacheData == null ? null : cacheCodecs.decode(key, cacheData, valueType);
+    }
 
-        if (cacheData == null) return null;
+    public void setObjectByKey(String key, Object value, long ttl, TimeUnit unit) {
+        setBytes(key, cacheCodecs.encode(key, value), unit.toMillis(ttl));
+    }
 
-        try {
-            // JSON String 转为 valueTypeRef 类型 再返回
-            return objectMapper.readValue(cacheData, valueTypeRef);
-        } catch (Exception e) {
-            throw new CacheConversionException(
-                    "Redis conversion failed for type " + valueTypeRef.getType().getTypeName(), e);
+    // CacheSerde 已经绑定了值类型和编解码器, 读写时不再解析
+    public <T> T getObject(String key, CacheSerde serde) {
+        byte[] cacheData = getBytes(key);
+        return cacheData == null ? null : serde.decode(key, cacheData);
+    }
+
+    public void setObject(String key, Object value, long ttlMillis, CacheSerde serde) {
+        setBytes(key, serde.encode(key, value), ttlMillis);
+    }
+
+    // MGET 一次取多个 key, 不存在的位置为 null
+    public <T> List<T> getObjects(List<String> keys, CacheSerde serde) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = raw(keys.get(i));
         }
+        List<byte[]> cacheData = stringRedisTemplate.execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        List<T> results = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] data = cacheData != null ? cacheData.get(i) : null;
+            results.add(data == null ? null : serde.decode(keys.get(i), data));
+        }
+        return results;
     }
 
-    public void setObjectByKey(String key, Object value, long ttl, TimeUnit unit) {
-        try {
-            // Object 转为 JSON String 再存
-            String jsonValue = objectMapper.writeValueAsString(value);
-            stringRedisTemplate.opsForValue().set(key, jsonValue, ttl, unit);
-        } catch (Exception e) {
-            throw new RuntimeException("Error serializing value for Redis key: " + key, e);
+    // Pipeline 批量 SET, 每个 key 有自己的过期时间 (毫秒)
+    public void setObjects(Map<String, Object> values, Map<String, Long> ttlMillis, CacheSerde serde) {
+        Map<byte[], byte[]> serialized = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            serialized.put(raw(entry.getKey()), serde.encode(entry.getKey(), entry.getValue()));
         }
+
+        List<Long> ttls = new ArrayList<>(ttlMillis.size());
+        values.keySet().forEach(key -> ttls.add(ttlMillis.get(key)));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            int i = 0;
+            for (Map.Entry<byte[], byte[]> entry : serialized.entrySet()) {
+                connection.stringCommands().set(entry.getKey(), entry.getValue(),
+                        Expiration.milliseconds(ttls.get(i++)), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    private byte[] getBytes(String key) {
+        return stringRedisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(raw(key)));
     }
 
+    private void setBytes(String key, byte[] data, long ttlMillis) {
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands()
+                .set(raw(key), data, Expiration.milliseconds(ttlMillis), RedisStringCommands.SetOption.upsert()));
+    }
+
+    private static byte[] raw(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
 
     public void deleteCache(String key) {
         stringRedisTemplate.delete(key);
     }
 
-    // 没上锁就上锁
-    public boolean setIfLock(String key, String value, long ttl) {
-        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(key, value, ttl, TimeUnit.SECONDS));
+    public void deleteCaches(Collection<String> keys) {
+        stringRedisTemplate.delete(keys);
     }
 
     // Key 拿 Value
@@ -73,6 +124,16 @@ public class RedisUtil {
         stringRedisTemplate.opsForValue().increment(key, n);
     }
 
+    // Pipeline 批量 INCRBY, 一次往返更新多个计数器
+    public void incrementAllBy(Map<String, Long> increments) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, Long> entry : increments.entrySet()) {
+                connection.stringCommands().incrBy(raw(entry.getKey()), entry.getValue());
+            }
+            return null;
+        });
+    }
+
     // SCAN 查询
     public Set<String> getByPattern(String pattern) {
 
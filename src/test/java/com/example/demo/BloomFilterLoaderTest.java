@@ -0,0 +1,83 @@
+package com.example.demo;
+
+import com.example.demo.bloom.BloomFilterLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BloomFilterLoaderTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private BloomFilterLoader loader;
+    private final NavigableMap<Long, String> rows = new TreeMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // id 有空洞: 2, 4, ..., 100
+        for (long id = 2; id <= 100; id += 2) {
+            rows.put(id, "k" + id);
+        }
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(Map.of("min_id", 2L, "max_id", 100L));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            long after = invocation.getArgument(2);
+            long to = invocation.getArgument(3);
+            int limit = invocation.getArgument(4);
+            for (Map.Entry<Long, String> row : rows.subMap(after, false, to, true).entrySet().stream().limit(limit).toList()) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(row.getKey());
+                when(rs.getString(2)).thenReturn(row.getValue());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(), any(), any());
+
+        meterRegistry = new SimpleMeterRegistry();
+        loader = new BloomFilterLoader(jdbcTemplate, meterRegistry, 4, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loader.shutdown();
+    }
+
+    @Test
+    void testLoadsEveryRowInBoundedChunks() {
+        List<String> added = Collections.synchronizedList(new ArrayList<>());
+        Consumer<List<String>> target = values -> {
+            assertTrue(values.size() <= 4); // 每次写入不超过一块
+            added.addAll(values);
+        };
+
+        long loaded = loader.load("bloom:shortUrl:", new BloomFilterLoader.Table("short_url", "short_key"), target, 50);
+
+        assertEquals(50, loaded);
+        assertEquals(new HashSet<>(rows.values()), new HashSet<>(added));
+        assertEquals(50, added.size());
+        assertEquals(50, meterRegistry.get("bloom.rebuild.values").counter().count());
+        assertEquals(1.0, meterRegistry.get("bloom.rebuild.progress").gauge().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEmptyTableLoadsNothing() {
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(new HashMap<>(Map.of()));
+        Consumer<List<String>> target = mock(Consumer.class);
+
+        assertEquals(0, loader.load("bloom:product:", new BloomFilterLoader.Table("product", "id"), target, 0));
+        verifyNoInteractions(target);
+    }
+}
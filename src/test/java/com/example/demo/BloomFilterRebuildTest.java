@@ -0,0 +1,282 @@
+package com.example.demo;
+
+import com.example.demo.bloom.BloomFilterLoader;
+import com.example.demo.bloom.BloomFilterReplica;
+import com.example.demo.dto.ApiResponseDTO;
+import com.example.demo.lock.LockHandle;
+import com.example.demo.lock.LockService;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.repository.ShortUrlRepository;
+import com.example.demo.util.BloomFilterUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBitSetAsync;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.misc.CompletableFutureWrapper;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BloomFilterRebuildTest {
+
+    private RedissonClient redissonClient;
+    private ShortUrlRepository shortUrlRepository;
+    private BloomFilterReplica replica;
+    private StringRedisTemplate redisTemplate;
+    private LockService lockService;
+    private BloomFilterLoader loader;
+    private RBloomFilter<String> live;
+    private RBloomFilter<String> shadow;
+    private BloomFilterUtil bloomFilterUtil;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redissonClient = mock(RedissonClient.class);
+        shortUrlRepository = mock(ShortUrlRepository.class);
+        replica = mock(BloomFilterReplica.class);
+        redisTemplate = mock(StringRedisTemplate.class);
+        lockService = mock(LockService.class);
+        loader = mock(BloomFilterLoader.class);
+        live = mock(RBloomFilter.class);
+        shadow = mock(RBloomFilter.class);
+        when(redissonClient.<String>getBloomFilter("bloom:shortUrl:")).thenReturn(live);
+        when(redissonClient.<String>getBloomFilter("bloom:shortUrl:shadow")).thenReturn(shadow);
+
+        bloomFilterUtil = new BloomFilterUtil(redissonClient, mock(ProductRepository.class), shortUrlRepository,
+                replica, redisTemplate, lockService, loader);
+        ReflectionTestUtils.setField(bloomFilterUtil, "falseProbability", 0.01);
+        ReflectionTestUtils.setField(bloomFilterUtil, "headroom", 2.0);
+        ReflectionTestUtils.setField(bloomFilterUtil, "minExpectedInsertions", 10L);
+        ReflectionTestUtils.setField(bloomFilterUtil, "rebuildFppFactor", 2.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRebuildFillsShadowThenSwaps() {
+        LockHandle lock = mock(LockHandle.class);
+        when(lock.fencingToken()).thenReturn(5L);
+        when(lockService.tryLock(anyString(), anyString(), any())).thenReturn(lock);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+        when(shortUrlRepository.count()).thenReturn(100L);
+        when(loader.load(eq("bloom:shortUrl:"), any(), any(), anyLong())).thenAnswer(invocation -> {
+            Consumer<List<String>> target = invocation.getArgument(2);
+            target.accept(List.of("abc123", "xyz789"));
+            return 2L;
+        });
+        when(shortUrlRepository.findShortKeysCreatedSince(any())).thenReturn(List.of("new001"));
+
+        assertEquals(2, bloomFilterUtil.rebuild("bloom:shortUrl:"));
+
+        // 影子按行数 x headroom 初始化, 写完才替换; 正式过滤器从未被删除
+        InOrder order = inOrder(shadow, loader, redisTemplate, live, replica);
+        order.verify(shadow).delete();
+        order.verify(shadow).tryInit(200L, 0.01);
+        order.verify(loader).load(eq("bloom:shortUrl:"), eq(new BloomFilterLoader.Table("short_url", "short_key")), any(), eq(100L));
+        order.verify(shadow).add(List.of("abc123", "xyz789"));
+        order.verify(shadow).add(List.of("new001"));
+        order.verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("{bloom:shortUrl:}:fence",
+                "bloom:shortUrl:shadow", "bloom:shortUrl:", "{bloom:shortUrl:shadow}:config", "{bloom:shortUrl:}:config")), eq("5"));
+        order.verify(live).add(List.of("new001"));
+        order.verify(replica).resyncEverywhere("bloom:shortUrl:");
+        verify(live, never()).delete();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCountingFilterIsBuiltInTheBackgroundAndMarkedOnlyOnceBuilt() throws Exception {
+        bloomFilterUtil = new BloomFilterUtil(redissonClient, mock(ProductRepository.class), shortUrlRepository,
+                replica, redisTemplate, lockService, loader);
+        ReflectionTestUtils.setField(bloomFilterUtil, "countingFilters", Set.of("bloom:product:"));
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.hasKey(anyString(), any())).thenReturn(false);
+        when(hashOperations.multiGet(anyString(), any())).thenReturn(List.of("1917", "7"));
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation ->
+                invocation.<RedisScript<?>>getArgument(0).getResultType() == Long.class ? 1L : List.of());
+        // 其他节点正在构建: 拿不到重建锁
+        CountDownLatch release = new CountDownLatch(1);
+        when(lockService.tryLock(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+
+        try {
+            // 写入不等待构建, 也不写入还没构建好的过滤器
+            bloomFilterUtil.addAllToBloomFilter("bloom:product:", List.of("1"));
+            release.countDown();
+            verify(lockService, timeout(1000)).tryLock("bloom_rebuild", "bloom:product:", Duration.ZERO);
+
+            // 构建没有成功, 不记为已初始化
+            bloomFilterUtil.addAllToBloomFilter("bloom:product:", List.of("2"));
+            verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+
+            // 其他节点构建完成, Redis 里有配置后正常写入
+            when(hashOperations.hasKey(anyString(), any())).thenReturn(true);
+            bloomFilterUtil.addAllToBloomFilter("bloom:product:", List.of("3"));
+            verify(redisTemplate).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        } finally {
+            bloomFilterUtil.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStaleLockHolderDoesNotSwap() {
+        // 加载期间锁过期, 其他节点用更大的 fencing token 完成了替换: 替换脚本返回 0
+        when(lockService.tryLock(anyString(), anyString(), any())).thenReturn(mock(LockHandle.class));
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+        when(shortUrlRepository.count()).thenReturn(100L);
+        when(loader.load(eq("bloom:shortUrl:"), any(), any(), anyLong())).thenReturn(2L);
+
+        assertEquals(-1, bloomFilterUtil.rebuild("bloom:shortUrl:"));
+
+        verify(live, never()).add(anyList());
+        verify(replica, never()).resyncEverywhere(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCountingRebuildSwapsAddedSetAndCatchesUpOnce() {
+        ProductRepository productRepository = mock(ProductRepository.class);
+        bloomFilterUtil = new BloomFilterUtil(redissonClient, productRepository, shortUrlRepository,
+                replica, redisTemplate, lockService, loader);
+        ReflectionTestUtils.setField(bloomFilterUtil, "falseProbability", 0.01);
+        ReflectionTestUtils.setField(bloomFilterUtil, "headroom", 2.0);
+        ReflectionTestUtils.setField(bloomFilterUtil, "minExpectedInsertions", 10L);
+        ReflectionTestUtils.setField(bloomFilterUtil, "countingFilters", Set.of("bloom:product:"));
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.multiGet(anyString(), any())).thenReturn(List.of("1917", "7"));
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation ->
+                invocation.<RedisScript<?>>getArgument(0).getResultType() == Long.class ? 1L : List.of());
+        LockHandle lock = mock(LockHandle.class);
+        when(lock.fencingToken()).thenReturn(5L);
+        when(lockService.tryLock(anyString(), anyString(), any())).thenReturn(lock);
+        when(productRepository.count()).thenReturn(100L);
+        when(productRepository.findIdsCreatedSince(any())).thenReturn(List.of(7L));
+        when(loader.load(eq("bloom:product:"), any(), any(), anyLong())).thenReturn(100L);
+
+        assertEquals(100, bloomFilterUtil.rebuild("bloom:product:"));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("{bloom:product:}:fence",
+                "{bloom:product:shadow}:counters", "{bloom:product:}:counters",
+                "{bloom:product:shadow}:added", "{bloom:product:}:added",
+                "{bloom:product:shadow}:counters:config", "{bloom:product:}:counters:config")), eq("5"));
+        // 加载期间的新增只在替换后追加一次
+        verify(productRepository, times(1)).findIdsCreatedSince(any());
+    }
+
+    @Test
+    void testRebuildIsSkippedWhileAnotherNodeHoldsTheLock() {
+        when(lockService.tryLock(anyString(), anyString(), any())).thenReturn(null);
+
+        assertEquals(-1, bloomFilterUtil.rebuild("bloom:shortUrl:"));
+        verifyNoInteractions(shadow);
+    }
+
+    @Test
+    void testAddFailureIsRethrownAfterRetry() {
+        doThrow(new IllegalStateException("redis down")).when(live).add(anyCollection());
+
+        assertThrows(IllegalStateException.class, () -> bloomFilterUtil.addToBloomFilter("bloom:shortUrl:", "abc123"));
+        verify(live, times(2)).add(anyCollection());
+        verify(replica, never()).added(anyString(), anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReplicaWithoutAnswerFallsBackToRedisInOneBatch() {
+        // 副本序号有缺口, 给不出 "不存在" 的结果; 其他节点刚新增的值本节点副本还没收到
+        when(replica.mightContain("bloom:shortUrl:", "abc123")).thenReturn(null);
+        when(replica.mightContain("bloom:shortUrl:", "xyz789")).thenReturn(true);
+        when(replica.mightContain("bloom:shortUrl:", "nope00")).thenReturn(null);
+        // 副本同步时的 "不存在" 直接使用
+        when(replica.mightContain("bloom:shortUrl:", "gone00")).thenReturn(false);
+        when(replica.hash(eq("bloom:shortUrl:"), anyString())).thenReturn(new long[]{11, 7});
+        when(live.getSize()).thenReturn(100L);
+        when(live.getHashIterations()).thenReturn(3);
+        RBatch batch = mock(RBatch.class);
+        RMapAsync<Object, Object> config = mock(RMapAsync.class);
+        RBitSetAsync bits = mock(RBitSetAsync.class);
+        when(redissonClient.createBatch()).thenReturn(batch);
+        when(batch.getMap(eq("{bloom:shortUrl:}:config"), any())).thenReturn(config);
+        when(batch.getBitSet("bloom:shortUrl:")).thenReturn(bits);
+        when(config.getAllAsync(any())).thenReturn(completed(Map.of("size", "100", "hashIterations", "3")));
+        // 第一个值 3 个位都已置位, 第二个值缺一位
+        when(bits.getAsync(any(long[].class))).thenReturn(completed(new boolean[]{true, true, true}),
+                completed(new boolean[]{true, true, true, true, false, true}));
+
+        assertTrue(bloomFilterUtil.mightContain("bloom:shortUrl:", "abc123"));
+        assertFalse(bloomFilterUtil.mightContain("bloom:shortUrl:", "gone00"));
+        assertArrayEquals(new boolean[]{true, true, false, false},
+                bloomFilterUtil.mightContainAll("bloom:shortUrl:", List.of("abc123", "xyz789", "nope00", "gone00")));
+
+        // 每次检查一个 RBatch; 副本给出结果的不发往 Redis
+        verify(batch, times(2)).execute();
+        ArgumentCaptor<long[]> indexes = ArgumentCaptor.forClass(long[].class);
+        verify(bits, times(2)).getAsync(indexes.capture());
+        assertEquals(6, indexes.getAllValues().get(1).length);
+        verify(live, never()).containsAsync(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testResetReportsEachFilterSeparately() {
+        // 产品过滤器正在由其他请求重建, 短链接过滤器重建成功
+        LockHandle lock = mock(LockHandle.class);
+        when(lock.fencingToken()).thenReturn(5L);
+        when(lockService.tryLock("bloom_rebuild", "bloom:product:", Duration.ZERO)).thenReturn(null);
+        when(lockService.tryLock("bloom_rebuild", "bloom:shortUrl:", Duration.ZERO)).thenReturn(lock);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+        when(shortUrlRepository.count()).thenReturn(100L);
+        when(loader.load(eq("bloom:shortUrl:"), any(), any(), anyLong())).thenReturn(2L);
+
+        ResponseEntity<ApiResponseDTO<Map<String, Map<String, Object>>>> response = bloomFilterUtil.resetBloomFilter();
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(Map.of("status", "locked"), response.getBody().getData().get("products"));
+        assertEquals(Map.of("status", "rebuilt", "values", 2L), response.getBody().getData().get("shortUrls"));
+    }
+
+    @Test
+    void testDegradedFilterIsRebuiltByHealthCheck() {
+        when(live.getExpectedInsertions()).thenReturn(1000L);
+        when(shortUrlRepository.count()).thenReturn(500L);
+        when(replica.estimatedFpp("bloom:shortUrl:")).thenReturn(0.05); // 目标 0.01 的 5 倍
+        when(lockService.tryLock(anyString(), anyString(), any())).thenReturn(null);
+        RBloomFilter<Object> products = mock(RBloomFilter.class);
+        when(products.getExpectedInsertions()).thenReturn(1000L);
+        when(redissonClient.getBloomFilter("bloom:product:")).thenReturn(products);
+        when(replica.estimatedFpp("bloom:product:")).thenReturn(0.001);
+
+        bloomFilterUtil.checkHealth();
+
+        verify(lockService).tryLock("bloom_rebuild", "bloom:shortUrl:", Duration.ZERO);
+        verify(lockService, never()).tryLock(anyString(), eq("bloom:product:"), any());
+    }
+
+    private static <T> RFuture<T> completed(T value) {
+        return new CompletableFutureWrapper<>(value);
+    }
+}
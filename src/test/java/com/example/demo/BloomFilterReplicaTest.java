@@ -0,0 +1,181 @@
+package com.example.demo;
+
+import com.example.demo.bloom.BloomFilterReplica;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objenesis.ObjenesisStd;
+import org.redisson.RedissonBloomFilter;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.codec.Kryo5Codec;
+import org.redisson.config.Config;
+import org.redisson.misc.Hash;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BloomFilterReplicaTest {
+
+    private static final String FILTER = "bloom:shortUrl:";
+    private static final long SIZE = 95851; // Redisson tryInit(10000, 0.01)
+    private static final int HASH_ITERATIONS = 7;
+
+    @TempDir
+    Path snapshotDir;
+
+    private RedissonClient redissonClient;
+    private RBucket<Object> bucket;
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private final Kryo5Codec codec = new Kryo5Codec();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redissonClient = mock(RedissonClient.class);
+        Config config = new Config();
+        config.setCodec(codec);
+        when(redissonClient.getConfig()).thenReturn(config);
+
+        RBloomFilter<Object> bloomFilter = mock(RBloomFilter.class);
+        when(bloomFilter.getSize()).thenReturn(SIZE);
+        when(bloomFilter.getHashIterations()).thenReturn(HASH_ITERATIONS);
+        when(redissonClient.getBloomFilter(FILTER)).thenReturn(bloomFilter);
+        bucket = mock(RBucket.class);
+        when(redissonClient.getBucket(eq(FILTER), any())).thenReturn(bucket);
+        redisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void testReplicaMatchesRedissonBitmap() throws Exception {
+        // 用 Redisson 自己的位置计算生成 Redis 里的位图 (SETBIT 位序)
+        byte[] bitmap = new byte[(int) ((SIZE + 7) / 8)];
+        for (int i = 0; i < 500; i++) {
+            for (long index : redissonIndexes("key" + i)) {
+                bitmap[(int) (index >>> 3)] |= (byte) (0x80 >>> (index & 7));
+            }
+        }
+        when(bucket.get()).thenReturn(bitmap);
+
+        BloomFilterReplica replica = replica();
+        assertNull(replica.mightContain(FILTER, "key0")); // 还没有同步
+        replica.resync(FILTER);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 500; i++) {
+            assertTrue(replica.mightContain(FILTER, "key" + i));
+            if (replica.mightContain(FILTER, "other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 25);
+
+        // 重启后从快照恢复, 不需要访问 Redis
+        replica.shutdown();
+        BloomFilterReplica restarted = replica();
+        restarted.init();
+        assertTrue(restarted.mightContain(FILTER, "key42"));
+        restarted.shutdown();
+    }
+
+    @Test
+    void testAddsArriveOverPubSub() {
+        when(bucket.get()).thenReturn(null);
+        BloomFilterReplica replica = replica();
+        replica.resync(FILTER);
+        assertFalse(replica.mightContain(FILTER, "abc123"));
+
+        replica.onMessage(message("other-node|add|" + FILTER + "|1|abc123\nxyz789"), null);
+
+        assertTrue(replica.mightContain(FILTER, "abc123"));
+        assertTrue(replica.mightContain(FILTER, "xyz789"));
+    }
+
+    @Test
+    void testNegativesAreTrustedOnlyWithoutSequenceGaps() {
+        when(bucket.get()).thenReturn(null);
+        when(valueOperations.get("{" + FILTER + "}:seq")).thenReturn("4");
+        BloomFilterReplica replica = replica();
+        replica.resync(FILTER);
+        assertTrue(replica.isInSync(FILTER));
+        assertFalse(replica.mightContain(FILTER, "abc123"));
+
+        // 5 先于 6 到达时没有缺口; 7 丢失, 8 先到: 副本判为不存在的结果交给 Redis
+        replica.onMessage(message("other-node|add|" + FILTER + "|5|abc123"), null);
+        replica.onMessage(message("other-node|add|" + FILTER + "|8|xyz789"), null);
+        assertFalse(replica.isInSync(FILTER));
+        assertTrue(replica.mightContain(FILTER, "abc123"));
+        assertTrue(replica.mightContain(FILTER, "xyz789"));
+        assertNull(replica.mightContain(FILTER, "nope00"));
+
+        // 乱序的 6, 7 补上缺口; 重复的 6 不再应用
+        replica.onMessage(message("other-node|add|" + FILTER + "|7|def456"), null);
+        replica.onMessage(message("other-node|add|" + FILTER + "|6|"), null);
+        replica.onMessage(message("other-node|add|" + FILTER + "|6|ghi000"), null);
+        assertTrue(replica.isInSync(FILTER));
+        assertTrue(replica.mightContain(FILTER, "def456"));
+        assertFalse(replica.mightContain(FILTER, "ghi000"));
+        replica.shutdown();
+    }
+
+    @Test
+    void testLostTrailingMessagesAreFoundBySequenceCheck() {
+        when(bucket.get()).thenReturn(null);
+        when(valueOperations.get("{" + FILTER + "}:seq")).thenReturn("2");
+        BloomFilterReplica replica = replica();
+        replica.resync(FILTER);
+        assertTrue(replica.isInSync(FILTER));
+
+        // 其他节点分配了 3, 广播没有送达: 核对后不再信任否定结果, 下一次核对仍未收到时重新同步
+        when(valueOperations.get("{" + FILTER + "}:seq")).thenReturn("3");
+        replica.checkSequences();
+        assertFalse(replica.isInSync(FILTER));
+        assertNull(replica.mightContain(FILTER, "abc123"));
+        verify(bucket, times(1)).get();
+
+        replica.checkSequences();
+        verify(bucket, timeout(1000).times(2)).get();
+        replica.shutdown(); // 等后台同步结束
+        assertTrue(replica.isInSync(FILTER));
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("bloom:added".getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BloomFilterReplica replica() {
+        return new BloomFilterReplica(redissonClient, redisTemplate,
+                mock(RedisMessageListenerContainer.class), new SimpleMeterRegistry(), true, FILTER, "", 86400,
+                "bloom:added", snapshotDir.toString());
+    }
+
+    // 调用 RedissonBloomFilter 的私有位置计算, 保证副本和 Redisson 的结果一致
+    private long[] redissonIndexes(String value) throws Exception {
+        ByteBuf state = codec.getValueEncoder().encode(value);
+        long[] hash;
+        try {
+            hash = Hash.hash128(state);
+        } finally {
+            state.release();
+        }
+        Method method = RedissonBloomFilter.class.getDeclaredMethod("hash", long.class, long.class, int.class, long.class);
+        method.setAccessible(true);
+        RedissonBloomFilter<?> filter = new ObjenesisStd().newInstance(RedissonBloomFilter.class);
+        return (long[]) method.invoke(filter, hash[0], hash[1], HASH_ITERATIONS, SIZE);
+    }
+}
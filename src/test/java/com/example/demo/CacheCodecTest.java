@@ -0,0 +1,97 @@
+package com.example.demo;
+
+import com.example.demo.cache.CachedValue;
+import com.example.demo.cache.codec.CacheCodecs;
+import com.example.demo.cache.codec.CompactCacheCodec;
+import com.example.demo.cache.codec.JsonCacheCodec;
+import com.example.demo.cache.codec.SmileCacheCodec;
+import com.example.demo.dto.ProductDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CacheCodecs codecs = new CacheCodecs(
+            List.of(new JsonCacheCodec(objectMapper), new SmileCacheCodec(objectMapper), new CompactCacheCodec()),
+            new SimpleMeterRegistry(), "smile", "product:=compact,short_url:=compact", 1024, 1);
+
+    private final JavaType productEnvelope = objectMapper.getTypeFactory()
+            .constructType(new TypeReference<CachedValue<ProductDTO>>() {});
+
+    @Test
+    void testCompactRoundTripIsSmallerThanJson() throws Exception {
+        CachedValue<ProductDTO> value = new CachedValue<>(new ProductDTO(42L, "Laptop", 4999.5, 3L), 1_760_000_000_000L, 12);
+
+        byte[] frame = codecs.encode("product:42", value);
+        assertEquals(CompactCacheCodec.ID, frame[2]);
+        assertTrue(frame.length < objectMapper.writeValueAsBytes(value).length / 2);
+
+        CachedValue<ProductDTO> decoded = codecs.decode("product:42", frame, productEnvelope);
+        assertEquals(value, decoded);
+    }
+
+    @Test
+    void testLargeValuesAreCompressed() {
+        List<ProductDTO> products = new ArrayList<>();
+        for (long i = 1; i <= 200; i++) {
+            products.add(new ProductDTO(i, "Product " + i, i * 10.0));
+        }
+        CachedValue<List<ProductDTO>> value = new CachedValue<>(products, 1L, 0);
+        JavaType listEnvelope = objectMapper.getTypeFactory()
+                .constructType(new TypeReference<CachedValue<List<ProductDTO>>>() {});
+
+        byte[] frame = codecs.encode("product_page:0:200", value);
+        assertEquals(CacheCodecs.FLAG_DEFLATE, frame[3]);
+        assertEquals(value, codecs.decode("product_page:0:200", frame, listEnvelope));
+
+        // 小值不压缩
+        assertEquals(0, codecs.encode("product:1", new ProductDTO(1L, "Bag", 10.0))[3]);
+    }
+
+    @Test
+    void testUnsupportedValueFallsBackToJsonAndLegacyJsonIsReadable() throws Exception {
+        CachedValue<ProductDTO> tagged = new CachedValue<>(new ProductDTO(1L, "Bag", 10.0), 1L, 0, Map.of("product:all", 3L));
+        byte[] frame = codecs.encode("product:1", tagged);
+        assertEquals(JsonCacheCodec.ID, frame[2]);
+        assertEquals(tagged, codecs.decode("product:1", frame, productEnvelope));
+
+        // 没有帧头的旧 JSON 数据
+        byte[] legacy = objectMapper.writeValueAsBytes(tagged);
+        assertEquals(tagged, codecs.decode("product:1", legacy, productEnvelope));
+
+        // 其他前缀走默认的 Smile
+        byte[] smile = codecs.encode("category:bag", tagged);
+        assertEquals(SmileCacheCodec.ID, smile[2]);
+        assertEquals(tagged, codecs.decode("category:bag", smile, productEnvelope));
+    }
+
+    @Test
+    void testPreEnvelopeValuesAreTreatedAsMisses() throws Exception {
+        // 缓存包装之前的旧格式: short_url: 存 JSON 字符串, product: 存 ProductDTO 本身
+        byte[] shortUrl = objectMapper.writeValueAsBytes("https://example.com/a");
+        byte[] product = objectMapper.writeValueAsBytes(new ProductDTO(1L, "Bag", 10.0));
+        JavaType stringEnvelope = objectMapper.getTypeFactory()
+                .constructType(new TypeReference<CachedValue<String>>() {});
+
+        assertNull(codecs.decode("short_url:abc123", shortUrl, stringEnvelope));
+        assertNull(codecs.decode("product:1", product, productEnvelope));
+        assertNull(codecs.decode("product:1", "not json".getBytes(), productEnvelope));
+
+        // 忽略未知字段的 ObjectMapper (Spring Boot 默认) 会把旧对象解析成空包装
+        ObjectMapper lenient = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        CacheCodecs lenientCodecs = new CacheCodecs(List.of(new JsonCacheCodec(lenient)),
+                new SimpleMeterRegistry(), "json", "", 1024, 1);
+        assertNull(lenientCodecs.decode("product:1", product, productEnvelope));
+    }
+}
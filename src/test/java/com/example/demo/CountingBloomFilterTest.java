@@ -0,0 +1,151 @@
+package com.example.demo;
+
+import com.example.demo.bloom.BloomFilterReplica;
+import com.example.demo.bloom.CountingBloomFilter;
+import com.example.demo.bloom.LocalCountingBloomFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class CountingBloomFilterTest {
+
+    private static final String FILTER = "bloom:product:";
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    void testRemoveOnlyAffectsTheRemovedValue() {
+        LocalCountingBloomFilter filter = new LocalCountingBloomFilter(95851, 7);
+        for (int i = 0; i < 1000; i++) {
+            long[] hash = LocalCountingBloomFilter.hash(String.valueOf(i));
+            filter.add(hash[0], hash[1]);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            long[] hash = LocalCountingBloomFilter.hash(String.valueOf(i));
+            assertTrue(filter.remove(hash[0], hash[1]));
+        }
+
+        // 删除的值判为不存在 (除少量误判), 没删除的一定仍然存在
+        int stillPresent = 0;
+        for (int i = 0; i < 1000; i++) {
+            long[] hash = LocalCountingBloomFilter.hash(String.valueOf(i));
+            if (i % 2 == 1) {
+                assertTrue(filter.contains(hash[0], hash[1]));
+            } else if (filter.contains(hash[0], hash[1])) {
+                stillPresent++;
+            }
+        }
+        assertTrue(stillPresent < 25);
+
+        // 不存在的值删除不改变任何计数器
+        long[] missing = LocalCountingBloomFilter.hash("missing");
+        double fill = filter.fillRatio();
+        if (!filter.contains(missing[0], missing[1])) {
+            assertFalse(filter.remove(missing[0], missing[1]));
+            assertEquals(fill, filter.fillRatio());
+        }
+    }
+
+    @Test
+    void testCountersMatchRedisBitfieldLayoutAndSaturate() {
+        // BITFIELD u4 #0 = 高 4 位, #1 = 低 4 位; #2 在下一个字节
+        LocalCountingBloomFilter filter = LocalCountingBloomFilter.fromRedisCounters(20, 1,
+                new byte[]{(byte) 0x3F, (byte) 0x10});
+        assertEquals(3, filter.count(0));
+        assertEquals(15, filter.count(1));
+        assertEquals(1, filter.count(2));
+        assertEquals(0, filter.count(3));
+
+        // 找一个落在计数器 1 (已饱和) 的值: 加减都不改变饱和计数器
+        for (int i = 0; ; i++) {
+            long[] hash = LocalCountingBloomFilter.hash("v" + i);
+            if (LocalCountingBloomFilter.indexes(hash[0], hash[1], 1, 20)[0] == 1) {
+                filter.add(hash[0], hash[1]);
+                assertTrue(filter.remove(hash[0], hash[1]));
+                assertTrue(filter.remove(hash[0], hash[1]));
+                assertEquals(15, filter.count(1));
+                break;
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAddAndRemoveReportOnlyValuesTheScriptChanged() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.multiGet(eq("{" + FILTER + "}:counters:config"), any())).thenReturn(List.of("95851", "7"));
+        List<List<String>> keys = new ArrayList<>();
+        List<Object[]> args = new ArrayList<>();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            keys.add(invocation.getArgument(1));
+            args.add(Arrays.copyOfRange(invocation.getRawArguments(), 2, invocation.getRawArguments().length));
+            return List.of(7L, 2L); // 分配序号 7; 第一个值之前已经添加过 (或删除过)
+        });
+        CountingBloomFilter filter = new CountingBloomFilter(redisTemplate, FILTER, 86400);
+
+        assertEquals(List.of(new CountingBloomFilter.Update(7, List.of("42"))), filter.add(List.of("41", "42")));
+        assertEquals(List.of("{" + FILTER + "}:counters", "{" + FILTER + "}:counters:config", "{" + FILTER + "}:added",
+                "{" + FILTER + "}:seq", "{" + FILTER + "}:removed:41", "{" + FILTER + "}:removed:42"), keys.get(0));
+        // size, hashIterations, 每个值: 值 + 7 个位置
+        Object[] addArgs = (Object[]) args.get(0)[0];
+        assertEquals(2 + 2 * 8, addArgs.length);
+        assertEquals("41", addArgs[2]);
+        assertEquals("42", addArgs[10]);
+
+        assertEquals(List.of(new CountingBloomFilter.Update(7, List.of("42"))), filter.remove(List.of("41", "42")));
+        Object[] removeArgs = (Object[]) args.get(1)[0];
+        assertEquals("86400", removeArgs[2]);
+        assertEquals("41", removeArgs[3]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReplicaAppliesRemovalsFromOtherNodes() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getConfig()).thenReturn(new Config());
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.multiGet(eq("{" + FILTER + "}:counters:config"), any())).thenReturn(List.of("95851", "7"));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(new CountingBloomFilter.Snapshot(0, null));
+
+        BloomFilterReplica replica = new BloomFilterReplica(redissonClient, redisTemplate,
+                mock(RedisMessageListenerContainer.class), new SimpleMeterRegistry(), true, FILTER, FILTER, 86400,
+                "bloom:added", snapshotDir.toString());
+        replica.resync(FILTER);
+
+        replica.onMessage(message("other-node|add|" + FILTER + "|1|41\n42"), null);
+        assertTrue(replica.mightContain(FILTER, "41"));
+        assertTrue(replica.mightContain(FILTER, "42"));
+
+        replica.onMessage(message("other-node|remove|" + FILTER + "|2|42"), null);
+        assertTrue(replica.mightContain(FILTER, "41"));
+        assertFalse(replica.mightContain(FILTER, "42"));
+        replica.shutdown();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("bloom:added".getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
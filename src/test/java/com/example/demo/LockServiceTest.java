@@ -0,0 +1,106 @@
+package com.example.demo;
+
+import com.example.demo.lock.LockHandle;
+import com.example.demo.lock.LockService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class LockServiceTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private LockService lockService;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        lockService = new LockService(stringRedisTemplate, meterRegistry, 30000, 1, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lockService.shutdown();
+    }
+
+    @Test
+    void testAcquireReturnsFencingTokenAndReleases() {
+        // 加锁脚本 (key, token, lease) 返回 fencing token, 释放脚本 (key, token) 返回 1
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(7L);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString())).thenReturn(1L);
+
+        try (LockHandle lock = lockService.tryLock("update_product", "1", Duration.ofMillis(100))) {
+            assertNotNull(lock);
+            assertEquals(7L, lock.fencingToken());
+            assertEquals(1, lockService.heldCount());
+        }
+
+        assertEquals(0, lockService.heldCount());
+        verify(stringRedisTemplate).execute(any(RedisScript.class), anyList(), anyString());
+    }
+
+    @Test
+    void testTimesOutWithBackoffWhenHeldElsewhere() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(0L);
+
+        assertNull(lockService.tryLock("update_product", "1", Duration.ofMillis(50)));
+
+        // 有界等待内多次重试, 每次都记一次竞争
+        assertTrue(meterRegistry.counter("lock.contention", "name", "update_product", "scope", "redis").count() > 1);
+        assertEquals(1, meterRegistry.timer("lock.acquire", "name", "update_product", "result", "timeout").count());
+    }
+
+    @Test
+    void testSameNodeContendersQueueLocally() throws Exception {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(1L);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (LockHandle lock = lockService.tryLock("update_product", "1", Duration.ofMillis(100))) {
+            assertNotNull(lock);
+            // 另一个线程在本地排队直到超时, 不会去 Redis
+            Future<LockHandle> other = executorService.submit(() ->
+                    lockService.tryLock("update_product", "1", Duration.ofMillis(50)));
+            assertNull(other.get(5, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(stringRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), anyString(), anyString());
+        assertEquals(1, meterRegistry.counter("lock.contention", "name", "update_product", "scope", "local").count());
+    }
+
+    @Test
+    void testLocalLocksArePerKeyAndRemovedWhenUnused() throws Exception {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString())).thenReturn(1L);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), anyString())).thenReturn(1L);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (LockHandle lock = lockService.tryLock("update_product", "1", Duration.ofMillis(100))) {
+            assertNotNull(lock);
+            // 另一个 key 不在本地排队
+            Future<LockHandle> other = executorService.submit(() -> {
+                LockHandle handle = lockService.tryLock("update_product", "2", Duration.ZERO);
+                handle.close();
+                return handle;
+            });
+            assertNotNull(other.get(5, TimeUnit.SECONDS));
+            assertEquals(1, lockService.localLockCount());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(0, lockService.localLockCount());
+        assertEquals(0, meterRegistry.counter("lock.contention", "name", "update_product", "scope", "local").count());
+    }
+}
@@ -3,6 +3,9 @@ package com.example.demo;
 import com.example.demo.controller.ProductController;
 import com.example.demo.dto.ApiResponseDTO;
 import com.example.demo.dto.ProductDTO;
+import com.example.demo.dto.ProductPageDTO;
+import com.example.demo.service.ProductExportService;
+import com.example.demo.service.ProductImportService;
 import com.example.demo.service.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Disabled;
@@ -20,6 +23,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
 
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -45,6 +49,12 @@ public class ProductControllerTest {
     @MockitoBean
     private ProductService productService;// Mock Service 层
 
+    @MockitoBean
+    private ProductExportService productExportService;
+
+    @MockitoBean
+    private ProductImportService productImportService;
+
 
     @Test
     public void testGetAllProducts() throws Exception {
@@ -54,15 +64,15 @@ public class ProductControllerTest {
         );
 
         // Mock Service 返回数据
-        when(productService.getAllProducts())
-                .thenReturn(ResponseEntity.ok(new ApiResponseDTO<>(200, "", mockProducts)));
+        when(productService.getProductPage(0L, 50))
+                .thenReturn(ResponseEntity.ok(new ApiResponseDTO<>(200, "", new ProductPageDTO(mockProducts, null))));
         // 执行 GET 请求 /products
         mockMvc.perform(get("/api/products"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.data.length()").value(2))
-                .andExpect(jsonPath("$.data[0].id").value(1))
-                .andExpect(jsonPath("$.data[1].name").value("Product2"))
-                .andExpect(jsonPath("$.data[1].price").value(300.0));
+                .andExpect(jsonPath("$.data.items.length()").value(2))
+                .andExpect(jsonPath("$.data.items[0].id").value(1))
+                .andExpect(jsonPath("$.data.items[1].name").value("Product2"))
+                .andExpect(jsonPath("$.data.items[1].price").value(300.0));
     }
 
     @Test
@@ -85,7 +95,7 @@ public class ProductControllerTest {
         ProductDTO mockProduct = new ProductDTO(1L,"Banana", 20.0);
 
         // Mock Service 层
-        when(productService.addProduct(any(ProductDTO.class))).
+        when(productService.addProduct(any(ProductDTO.class), isNull())).
                 thenReturn(ResponseEntity.ok(new ApiResponseDTO<>(200, "", mockProduct)));
 
         mockMvc.perform(post("/api/products")
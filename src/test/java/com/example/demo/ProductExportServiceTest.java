@@ -0,0 +1,103 @@
+package com.example.demo;
+
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.service.ProductExportService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProductExportServiceTest {
+
+    // 超过一个 flush 块 (500 条)
+    private static final int ROWS = 1_201;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ProductRepository productRepository;
+    private EntityManager entityManager;
+    private ProductExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        entityManager = mock(EntityManager.class);
+        when(productRepository.streamAllByOrderByIdAsc()).thenAnswer(invocation -> LongStream.rangeClosed(1, ROWS)
+                .mapToObj(id -> Product.builder().id(id).name("Product " + id).price((double) id).build()));
+        exportService = new ProductExportService(productRepository, entityManager, objectMapper);
+    }
+
+    @Test
+    void testNdjsonStreamsOneProductPerLineInChunks() throws Exception {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+
+        assertEquals(ROWS, exportService.export(out, true));
+
+        // 第一条, 第 500 条, 第 1000 条各 flush 一次, 结束时再 flush 一次; 输出流不由导出关闭
+        assertEquals(4, out.flushes);
+        assertFalse(out.closed);
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"));
+        List<String> lines = body.lines().toList();
+        assertEquals(ROWS, lines.size());
+        for (int i = 0; i < ROWS; i++) {
+            ProductDTO product = objectMapper.readValue(lines.get(i), ProductDTO.class);
+            assertEquals(i + 1L, product.getId());
+            assertEquals("Product " + (i + 1), product.getName());
+        }
+        // 写完的实体从持久化上下文移除
+        verify(entityManager, times(ROWS)).detach(any(Product.class));
+    }
+
+    @Test
+    void testJsonStreamsOneArray() throws Exception {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+
+        assertEquals(ROWS, exportService.export(out, false));
+
+        assertTrue(out.flushes > 1);
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("[{"));
+        assertTrue(body.endsWith("}]"));
+        assertFalse(body.contains("\n"));
+        List<ProductDTO> products = objectMapper.readValue(body, new TypeReference<>() {});
+        assertEquals(ROWS, products.size());
+        assertEquals(1L, products.get(0).getId());
+        assertEquals((long) ROWS, products.get(ROWS - 1).getId());
+    }
+
+    @Test
+    void testEmptyCatalogIsAnEmptyArray() throws Exception {
+        when(productRepository.streamAllByOrderByIdAsc()).thenAnswer(invocation -> LongStream.empty().mapToObj(id -> new Product()));
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+
+        assertEquals(0, exportService.export(out, false));
+        assertEquals("[]", out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static class FlushCountingOutputStream extends ByteArrayOutputStream {
+        private int flushes;
+        private boolean closed;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo;
+
+import com.example.demo.dto.ProductImportStatusDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.entity.ProductOutboxEvent;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.service.ProductImportService;
+import com.example.demo.service.ProductOutboxRelay;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ProductImportServiceTest {
+
+    private ProductRepository productRepository;
+    private ProductOutboxRelay productOutboxRelay;
+    private ProductImportService importService;
+    private final List<List<Product>> savedChunks = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        productOutboxRelay = mock(ProductOutboxRelay.class);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+
+        // 模拟数据库分配 ID
+        AtomicLong ids = new AtomicLong();
+        when(productRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Product> chunk = invocation.getArgument(0);
+            chunk.forEach(product -> product.setId(ids.incrementAndGet()));
+            savedChunks.add(new ArrayList<>(chunk));
+            return chunk;
+        });
+
+        importService = new ProductImportService(productRepository, productOutboxRelay,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), redisTemplate,
+                new ObjectMapper().findAndRegisterModules(), Validation.buildDefaultValidatorFactory().getValidator(),
+                new SimpleMeterRegistry(), 2, 24);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testNdjsonIsWrittenInChunks() {
+        String body = """
+                {"name":"Laptop","price":5000}
+                {"name":"Mouse","price":50}
+
+                {"name":"","price":10}
+                {"name":"Keyboard","price":-1}
+                not json
+                {"name":"Monitor","price":1200}
+                """;
+
+        ProductImportStatusDTO status = importService.run(
+                new ProductImportStatusDTO("job-1", ProductImportService.FORMAT_NDJSON), new StringReader(body));
+
+        assertEquals(ProductImportStatusDTO.Status.COMPLETED, status.getStatus());
+        assertEquals(6, status.getRowsRead());
+        assertEquals(3, status.getImported());
+        assertEquals(3, status.getRejected());
+        assertEquals(3, status.getErrors().size());
+        assertTrue(status.getErrors().get(0).startsWith("第 4 行"));
+
+        // chunk-size = 2: 两次批量写入, 每块在同一个事务里写入 Outbox, 提交后一次批量副作用
+        assertEquals(2, savedChunks.size());
+        assertEquals(List.of("Laptop", "Mouse"), savedChunks.get(0).stream().map(Product::getName).toList());
+        ArgumentCaptor<List<ProductOutboxEvent>> appended = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<ProductOutboxEvent>> events = ArgumentCaptor.forClass(List.class);
+        InOrder order = inOrder(productRepository, productOutboxRelay);
+        order.verify(productRepository).saveAll(anyList());
+        order.verify(productOutboxRelay).appendBatch(appended.capture());
+        order.verify(productOutboxRelay).applyCommitted(anyList());
+        verify(productOutboxRelay, times(2)).applyCommitted(events.capture());
+        assertEquals(List.of(1L, 2L), appended.getValue().stream().map(ProductOutboxEvent::getProductId).toList());
+        assertEquals(3L, events.getAllValues().get(1).get(0).getProductId());
+    }
+
+    @Test
+    void testCsvWithHeaderAndQuotedNames() {
+        String body = """
+                name,price
+                "Desk, oak",300.5
+                "The ""Best"" Chair",99
+                Lamp,abc
+                """;
+
+        ProductImportStatusDTO status = importService.run(
+                new ProductImportStatusDTO("job-2", ProductImportService.FORMAT_CSV), new StringReader(body));
+
+        assertEquals(ProductImportStatusDTO.Status.COMPLETED, status.getStatus());
+        assertEquals(3, status.getRowsRead());
+        assertEquals(2, status.getImported());
+        assertEquals(1, status.getRejected());
+        assertEquals("Desk, oak", savedChunks.get(0).get(0).getName());
+        assertEquals("The \"Best\" Chair", savedChunks.get(0).get(1).getName());
+    }
+
+    @Test
+    void testDatabaseFailureFailsTheJob() {
+        when(productRepository.saveAll(anyList())).thenThrow(new IllegalStateException("db down"));
+
+        ProductImportStatusDTO status = importService.run(
+                new ProductImportStatusDTO("job-3", ProductImportService.FORMAT_NDJSON),
+                new StringReader("{\"name\":\"Laptop\",\"price\":5000}\n"));
+
+        assertEquals(ProductImportStatusDTO.Status.FAILED, status.getStatus());
+        assertEquals(0, status.getImported());
+        assertNotNull(status.getFinishedAt());
+        verify(productOutboxRelay, never()).applyCommitted(anyList());
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.demo;
+
+import com.example.demo.cache.CacheRegion;
+import com.example.demo.cache.KeysetPageIndex;
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.entity.ProductOutboxEvent;
+import com.example.demo.repository.ProductOutboxRepository;
+import com.example.demo.search.ProductSearchIndex;
+import com.example.demo.service.ProductOutboxRelay;
+import com.example.demo.util.BloomFilterUtil;
+import com.example.demo.webSocket.WebSocketNotificationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ProductOutboxRelayTest {
+
+    private ProductOutboxRepository outboxRepository;
+    private CacheRegion<Long, ProductDTO> productCache;
+    private KeysetPageIndex keysetPageIndex;
+    private BloomFilterUtil bloomFilterUtil;
+    private WebSocketNotificationHandler notificationHandler;
+    private SimpleMeterRegistry meterRegistry;
+    private ProductOutboxRelay relay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outboxRepository = mock(ProductOutboxRepository.class);
+        productCache = mock(CacheRegion.class);
+        keysetPageIndex = mock(KeysetPageIndex.class);
+        bloomFilterUtil = mock(BloomFilterUtil.class);
+        notificationHandler = mock(WebSocketNotificationHandler.class);
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new ProductOutboxRelay(outboxRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                mock(JdbcTemplate.class), productCache, mock(CacheRegion.class), keysetPageIndex, mock(ProductSearchIndex.class),
+                bloomFilterUtil, notificationHandler, meterRegistry, 100, 10, 1000, 60_000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchIsCoalescedPerProduct() throws Exception {
+        when(outboxRepository.lockBatch(any(), anyInt(), anyInt())).thenReturn(List.of(
+                event(1L, ProductOutboxEvent.Type.CREATED, 1L, "Laptop", 5000.0),
+                event(2L, ProductOutboxEvent.Type.UPDATED, 1L, "Gaming Laptop", 6000.0),
+                event(3L, ProductOutboxEvent.Type.DELETED, 2L, "Mouse", 50.0)));
+
+        assertEquals(3, relay.drain());
+
+        // 变更的产品删除缓存 (不写入事件快照), 删除的产品记入墓碑, 各一次批量操作
+        verify(productCache, times(1)).evictAll(Set.of(1L));
+        ArgumentCaptor<Map<Long, ProductDTO>> values = ArgumentCaptor.forClass(Map.class);
+        verify(productCache, times(1)).putAll(values.capture());
+        assertEquals(Collections.singletonMap(2L, null), values.getValue());
+
+        verify(bloomFilterUtil).addAllToBloomFilter(anyString(), eq(List.of("1")));
+        verify(bloomFilterUtil).removeFromBloomFilter(anyString(), eq(List.of("2")));
+        verify(keysetPageIndex).invalidate(anyString(), eq(Set.of(1L, 2L)));
+        verify(outboxRepository).deleteAllByIdInBatch(List.of(1L, 2L, 3L));
+        verify(notificationHandler, times(3)).sendNotification(anyString());
+    }
+
+    @Test
+    void testFailedBatchIsDeferred() throws Exception {
+        when(outboxRepository.lockBatch(any(), anyInt(), anyInt())).thenReturn(List.of(
+                event(7L, ProductOutboxEvent.Type.CREATED, 5L, "Keyboard", 300.0)));
+        when(keysetPageIndex.invalidate(anyString(), anyCollection())).thenThrow(new IllegalStateException("redis down"));
+
+        assertEquals(0, relay.drain());
+
+        verify(outboxRepository, never()).deleteAllByIdInBatch(anyList());
+        verify(outboxRepository).deferAll(eq(List.of(7L)), any(), eq(1));
+        verify(notificationHandler, never()).sendNotification(anyString());
+    }
+
+    @Test
+    void testBloomAddFailureDefersTheBatch() throws Exception {
+        when(outboxRepository.lockBatch(any(), anyInt(), anyInt())).thenReturn(List.of(
+                event(8L, ProductOutboxEvent.Type.CREATED, 6L, "Monitor", 900.0)));
+        doThrow(new IllegalStateException("redis down")).when(bloomFilterUtil).addAllToBloomFilter(anyString(), anyCollection());
+
+        assertEquals(0, relay.drain());
+
+        verify(outboxRepository, never()).deleteAllByIdInBatch(anyList());
+        verify(outboxRepository).deferAll(eq(List.of(8L)), any(), eq(1));
+    }
+
+    @Test
+    void testInfrastructureFailureDefersTheBatchWithoutCountingIt() {
+        when(outboxRepository.lockBatch(any(), anyInt(), anyInt())).thenReturn(List.of(
+                event(1L, ProductOutboxEvent.Type.CREATED, 1L, "Laptop", 5000.0),
+                event(2L, ProductOutboxEvent.Type.CREATED, 2L, "Mouse", 50.0)));
+        when(keysetPageIndex.invalidate(anyString(), anyCollection()))
+                .thenThrow(new RedisConnectionFailureException("redis down"));
+
+        assertEquals(0, relay.drain());
+
+        // Redis 恢复前逐个处理也会失败: 整批推迟, 不计入失败次数, 不会因为故障时间长而放弃事件
+        verify(outboxRepository).deferAll(eq(List.of(1L, 2L)), any(), eq(0));
+        verify(outboxRepository, never()).lockAllById(anyCollection());
+    }
+
+    @Test
+    void testFailingEventIsSplitOutOfTheBatch() {
+        when(outboxRepository.lockBatch(any(), anyInt(), anyInt())).thenReturn(List.of(
+                event(1L, ProductOutboxEvent.Type.UPDATED, 1L, "Laptop", 5000.0),
+                event(2L, ProductOutboxEvent.Type.UPDATED, 2L, "Mouse", 50.0),
+                event(3L, ProductOutboxEvent.Type.UPDATED, 2L, "Wireless Mouse", 60.0),
+                event(4L, ProductOutboxEvent.Type.UPDATED, 3L, "Monitor", 900.0)));
+        when(outboxRepository.lockAllById(anyCollection())).thenAnswer(invocation -> {
+            long id = invocation.<Collection<Long>>getArgument(0).iterator().next();
+            return List.of(event(id, ProductOutboxEvent.Type.UPDATED, id == 4L ? 3L : id, "Product", 1.0));
+        });
+        // 产品 2 的事件本身有问题
+        doThrow(new IllegalArgumentException("bad event")).when(productCache)
+                .evictAll(argThat(ids -> ids != null && ids.contains(2L)));
+
+        assertEquals(2, relay.drain());
+
+        verify(outboxRepository).deleteAllByIdInBatch(List.of(1L));
+        verify(outboxRepository).deleteAllByIdInBatch(List.of(4L));
+        verify(outboxRepository).deferAll(eq(List.of(2L)), any(), eq(1));
+        // 同一产品之后的事件不越过失败的事件, 推迟但不计入失败次数
+        verify(outboxRepository, never()).lockAllById(List.of(3L));
+        verify(outboxRepository).deferAll(eq(List.of(3L)), any(), eq(0));
+    }
+
+    @Test
+    void testBackoffGrowsExponentiallyUpToTheCap() {
+        ProductOutboxEvent third = event(1L, ProductOutboxEvent.Type.CREATED, 1L, "Laptop", 5000.0);
+        third.setAttempts(3);
+        ProductOutboxEvent many = event(2L, ProductOutboxEvent.Type.CREATED, 2L, "Mouse", 50.0);
+        many.setAttempts(30);
+        when(outboxRepository.lockBatch(any(), anyInt(), anyInt())).thenReturn(List.of(third, many));
+        doThrow(new RedisConnectionFailureException("redis down")).when(bloomFilterUtil)
+                .addAllToBloomFilter(anyString(), anyCollection());
+
+        LocalDateTime before = LocalDateTime.now();
+        relay.drain();
+
+        ArgumentCaptor<LocalDateTime> thirdAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxRepository).deferAll(eq(List.of(1L)), thirdAt.capture(), eq(0));
+        long thirdDelay = Duration.between(before, thirdAt.getValue()).toMillis();
+        assertTrue(thirdDelay >= 8_000 && thirdDelay < 9_000, "1000 x 2^3 ms, 实际 " + thirdDelay);
+
+        ArgumentCaptor<LocalDateTime> manyAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxRepository).deferAll(eq(List.of(2L)), manyAt.capture(), eq(0));
+        long manyDelay = Duration.between(before, manyAt.getValue()).toMillis();
+        assertTrue(manyDelay >= 60_000 && manyDelay < 61_000, "封顶 60000 ms, 实际 " + manyDelay);
+    }
+
+    @Test
+    void testDeadEventsAreMeteredAndCanBeRedriven() {
+        when(outboxRepository.countByFailuresGreaterThanEqual(10)).thenReturn(3L).thenReturn(0L);
+
+        relay.refreshDeadCount();
+        assertEquals(3, meterRegistry.get("outbox.events.dead").gauge().value());
+
+        when(outboxRepository.redriveDead(eq(10), any())).thenReturn(3);
+        assertEquals(3, relay.redriveDead());
+        assertEquals(0, meterRegistry.get("outbox.events.dead").gauge().value());
+    }
+
+    @Test
+    void testCommittedBatchDeletesItsOutboxRowsOnlyAfterApplying() {
+        List<ProductOutboxEvent> events = List.of(
+                event(null, ProductOutboxEvent.Type.CREATED, 11L, "Desk", 300.0),
+                event(null, ProductOutboxEvent.Type.CREATED, 12L, "Chair", 99.0));
+
+        relay.applyCommitted(events);
+
+        verify(bloomFilterUtil).addAllToBloomFilter(anyString(), eq(List.of("11", "12")));
+        verify(outboxRepository).deleteAllByTypeAndProductIdIn(ProductOutboxEvent.Type.CREATED, List.of(11L, 12L));
+
+        // 副作用失败: 记录保留, 由 relay 到期后重试
+        reset(outboxRepository);
+        doThrow(new IllegalStateException("redis down")).when(bloomFilterUtil).addAllToBloomFilter(anyString(), anyCollection());
+        relay.applyCommitted(events);
+        verify(outboxRepository, never()).deleteAllByTypeAndProductIdIn(any(), anyCollection());
+    }
+
+    private static ProductOutboxEvent event(Long id, ProductOutboxEvent.Type type, Long productId, String name, Double price) {
+        ProductOutboxEvent event = ProductOutboxEvent.of(type,
+                Product.builder().id(productId).name(name).price(price).build(), null);
+        event.setId(id);
+        return event;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo;
+
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.search.ProductSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        ProductRepository productRepository = mock(ProductRepository.class);
+        // 批大小为 2, 覆盖分批重建
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            return List.of(
+                    product(1L, "Gaming Laptop", 8000.0),
+                    product(2L, "Laptop Bag", 200.0),
+                    product(3L, "USB Cable", 20.0),
+                    product(4L, "Office laptop stand", 150.0)
+            ).stream().filter(p -> p.getId() > after).limit(2).toList();
+        });
+
+        searchIndex = new ProductSearchIndex(productRepository, mock(StringRedisTemplate.class),
+                mock(RedisMessageListenerContainer.class), new SimpleMeterRegistry(), true, "product:changed", 2);
+        searchIndex.rebuild();
+    }
+
+    @Test
+    void testSearchMatchesNameIgnoringCaseAndMinPrice() {
+        assertTrue(searchIndex.isReady());
+        assertEquals(4, searchIndex.size());
+
+        assertEquals(List.of(1L, 2L, 4L), ids(searchIndex.search("laptop", 0)));
+        assertEquals(List.of(1L, 2L), ids(searchIndex.search("LAPTOP", 180)));
+        assertEquals(List.of(3L), ids(searchIndex.search("us", 0))); // 短于 trigram, 走价格列扫描
+        assertEquals(List.of(), ids(searchIndex.search("phone", 0)));
+        assertEquals(List.of(1L), ids(searchIndex.search("", 1000)));
+    }
+
+    @Test
+    void testIncrementalUpdates() {
+        searchIndex.upsert(5L, "Laptop Sleeve", 90.0);
+        searchIndex.upsert(2L, "Backpack", 200.0);
+        searchIndex.remove(4L);
+
+        assertEquals(List.of(1L, 5L), ids(searchIndex.search("laptop", 0)));
+        assertEquals(List.of(2L), ids(searchIndex.search("pack", 100)));
+        assertEquals(4, searchIndex.size());
+    }
+
+    private static Product product(Long id, String name, Double price) {
+        return Product.builder().id(id).name(name).price(price).build();
+    }
+
+    private static List<Long> ids(List<ProductDTO> products) {
+        return products.stream().map(ProductDTO::getId).toList();
+    }
+}
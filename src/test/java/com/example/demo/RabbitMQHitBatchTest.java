@@ -0,0 +1,94 @@
+package com.example.demo;
+
+import com.example.demo.service.RabbitMQ.RabbitMQConsumer;
+import com.example.demo.service.RabbitMQ.RabbitMQProducer;
+import com.example.demo.service.RabbitMQ.ShortUrlHitBatch;
+import com.example.demo.service.ShortUrlStatsService;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RabbitMQHitBatchTest {
+
+    @Test
+    void testLargeBatchIsSplitAndOnlyNackedPartIsReturned() throws Exception {
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        List<CorrelationData> correlations = new ArrayList<>();
+        doAnswer(invocation -> correlations.add(invocation.getArgument(3)))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        RabbitMQProducer producer = new RabbitMQProducer(rabbitTemplate);
+        ReflectionTestUtils.setField(producer, "exchange", "short-url-exchange");
+        ReflectionTestUtils.setField(producer, "routingKey", "short-url-routing");
+        ReflectionTestUtils.setField(producer, "maxKeysPerMessage", 2);
+
+        Map<String, Long> hits = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            hits.put("key" + i, (long) i + 1);
+        }
+        List<Map<String, Long>> failed = new ArrayList<>();
+        CompletableFuture<Void> confirmed = producer.sendHits(hits, failed::add);
+
+        // 5 个 key 拆成 3 条消息, 连续发送, 不等待确认
+        assertEquals(3, correlations.size());
+        assertFalse(confirmed.isDone());
+
+        correlations.get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        correlations.get(1).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        correlations.get(2).getFuture().complete(new CorrelationData.Confirm(true, null));
+
+        assertTrue(confirmed.isDone());
+        assertEquals(List.of(Map.of("key2", 3L, "key3", 4L)), failed);
+    }
+
+    @Test
+    void testBatchIsAggregatedAndAckedOnce() throws Exception {
+        ShortUrlStatsService statsService = mock(ShortUrlStatsService.class);
+        Channel channel = mock(Channel.class);
+        RabbitMQConsumer consumer = new RabbitMQConsumer(statsService);
+
+        consumer.receiveMessages(List.of(
+                message(1, "abc123 3\nxyz789 1\n"),
+                message(2, "abc123"), // 旧格式
+                message(3, "abc123 x"), // 格式错误, 跳过
+                message(4, "xyz789 5\n")), channel);
+
+        verify(statsService).applyHits(Map.of("abc123", 4L, "xyz789", 6L));
+        verify(channel).basicAck(4, true);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void testFailedBatchIsRequeuedAsAWhole() throws Exception {
+        ShortUrlStatsService statsService = mock(ShortUrlStatsService.class);
+        doThrow(new RuntimeException("redis down")).when(statsService).applyHits(any());
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+
+        new RabbitMQConsumer(statsService).receiveMessages(List.of(message(7, "abc123 1"), message(8, "abc123 1")), channel);
+
+        verify(channel).basicNack(8, true, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void testEncodedBatchIsCompact() {
+        assertEquals("abc123 42\n", new String(ShortUrlHitBatch.encode(Map.of("abc123", 42L))));
+    }
+
+    private static Message message(long deliveryTag, String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        return new Message(body.getBytes(), properties);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo;
+
+import com.example.demo.cache.CachePolicy;
+import com.example.demo.cache.CacheRefreshExecutor;
+import com.example.demo.cache.CacheRegion;
+import com.example.demo.cache.NegativeCache;
+import com.example.demo.cache.ReadThroughCache;
+import com.example.demo.cache.SingleFlight;
+import com.example.demo.cache.TagVersions;
+import com.example.demo.cache.codec.CacheCodecs;
+import com.example.demo.cache.codec.JsonCacheCodec;
+import com.example.demo.dto.ProductDTO;
+import com.example.demo.service.RedisService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+public class ReadThroughCacheTest {
+
+    @Test
+    void testWritesClearTombstonesOnAllNodes() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper();
+        NegativeCache negativeCache = mock(NegativeCache.class); // 本节点没有墓碑: contains 返回 false
+        ReadThroughCache cache = new ReadThroughCache(mock(RedisService.class), new SingleFlight(null, false, 0, 0, 0, 5000),
+                new CacheRefreshExecutor(meterRegistry, 1, 1, 1), mock(TagVersions.class), negativeCache,
+                new CacheCodecs(List.of(new JsonCacheCodec(objectMapper)), meterRegistry, "json", "", 0, 1),
+                meterRegistry, objectMapper);
+        CachePolicy policy = CachePolicy.of("test", Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofSeconds(10));
+        CacheRegion<Long, ProductDTO> region =
+                cache.region("product:", new TypeReference<ProductDTO>() {}, policy, CacheRegion.NullCaching.TOMBSTONE);
+
+        region.put(1L, new ProductDTO(1L, "Laptop", 999.0));
+        region.putAll(Map.of(2L, new ProductDTO(2L, "Phone", 499.0)));
+        region.evictAll(List.of(3L));
+
+        // 其他节点可能有墓碑, 删除总是广播
+        verify(negativeCache).remove("product:1");
+        verify(negativeCache).removeAll(Set.of("product:2"));
+        verify(negativeCache).removeAll(List.of("product:3"));
+    }
+}
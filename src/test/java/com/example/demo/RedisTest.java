@@ -1,6 +1,8 @@
 package com.example.demo;
 
 import com.example.demo.config.RedisConfig;
+import com.example.demo.lock.LockHandle;
+import com.example.demo.lock.LockService;
 import com.example.demo.service.RedisService;
 import com.fasterxml.jackson.core.type.TypeReference;
 import org.junit.jupiter.api.Disabled;
@@ -11,9 +13,11 @@ import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ContextConfiguration;
 
 import java.sql.Time;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Disabled
@@ -29,6 +33,9 @@ public class RedisTest {
     @Autowired
     private RedisService redisService;
 
+    @Autowired
+    private LockService lockService;
+
     @Test
     void testRedisStringStorage() {
         redisService.setFromCacheWithObject("test:string:", "Hello Redis", 10, TimeUnit.MINUTES);
@@ -38,12 +45,14 @@ public class RedisTest {
 
     @Test
     void testRedisLock() {
-        boolean locked = redisService.tryLock("lock:test", "123", 5);
-        assertTrue(locked);
-
-        redisService.unlock("lock:test", "123");
-
-        boolean locked2 = redisService.tryLock("lock:test", "123", 5);
-        redisService.unlock("lock:test", "123");
+        LockHandle first = lockService.tryLock("test", "1", Duration.ofSeconds(1));
+        assertNotNull(first);
+        first.close();
+
+        // 释放后可以再次获取, fencing token 递增
+        try (LockHandle second = lockService.tryLock("test", "1", Duration.ofSeconds(1))) {
+            assertNotNull(second);
+            assertTrue(second.fencingToken() > first.fencingToken());
+        }
     }
 }
@@ -0,0 +1,163 @@
+package com.example.demo;
+
+import com.example.demo.service.RabbitMQ.RabbitMQProducer;
+import com.example.demo.service.RabbitMQ.ShortUrlHitBatch;
+import com.example.demo.service.ShortUrlHitAggregator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ShortUrlHitAggregatorTest {
+
+    private RabbitMQProducer producer;
+    private SimpleMeterRegistry meterRegistry;
+    private ShortUrlHitAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        producer = mock(RabbitMQProducer.class);
+        when(producer.sendHits(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        meterRegistry = new SimpleMeterRegistry();
+        aggregator = new ShortUrlHitAggregator(producer, meterRegistry, true, Long.MAX_VALUE, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aggregator.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConcurrentHitsAreSentAsOneBatch() throws Exception {
+        // 8 个线程, 倾斜访问: 一个热门 key 和少量冷门 key
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    aggregator.record(i % 100 == 0 ? "cold" + (i % 300) : "hot");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        verifyNoInteractions(producer); // 热路径不发送消息
+
+        assertEquals(4, aggregator.flush());
+
+        ArgumentCaptor<Map<String, Long>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(producer, times(1)).sendHits(batch.capture(), any());
+        assertEquals(79_200L, batch.getValue().get("hot"));
+        assertEquals(800L, batch.getValue().values().stream().mapToLong(Long::longValue).sum() - 79_200L);
+        assertEquals(0, aggregator.pendingHits());
+
+        // 没有新访问时不发送
+        assertEquals(0, aggregator.flush());
+        verify(producer, times(1)).sendHits(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedBatchIsRetriedOnNextFlush() {
+        // 第一批被 Broker 拒绝 (nack), 第二批确认
+        doAnswer(invocation -> {
+            Map<String, Long> hits = invocation.getArgument(0);
+            Consumer<Map<String, Long>> onFailure = invocation.getArgument(1);
+            onFailure.accept(hits);
+            return CompletableFuture.completedFuture(null);
+        }).doReturn(CompletableFuture.completedFuture(null)).when(producer).sendHits(any(), any());
+        aggregator.record("abc123");
+        aggregator.record("abc123");
+
+        assertEquals(1, aggregator.flush());
+        assertEquals(2, aggregator.pendingHits());
+        aggregator.record("abc123");
+        assertEquals(1, aggregator.flush());
+
+        ArgumentCaptor<Map<String, Long>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(producer, times(2)).sendHits(batch.capture(), any());
+        assertEquals(Map.of("abc123", 3L), batch.getAllValues().get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testOnlyConfirmedHitsAreCountedAndShutdownResendsNacks() {
+        // 第一批: 确认到达前不计数, 确认时 xyz789 被拒绝; 第二批 (关闭时重发) 确认
+        CompletableFuture<Void> firstConfirm = new CompletableFuture<>();
+        doAnswer(invocation -> {
+            Consumer<Map<String, Long>> onFailure = invocation.getArgument(1);
+            return firstConfirm.whenComplete((ignored, e) -> onFailure.accept(Map.of("xyz789", 1L)));
+        }).doReturn(CompletableFuture.completedFuture(null)).when(producer).sendHits(any(), any());
+        aggregator.record("abc123");
+        aggregator.record("abc123");
+        aggregator.record("xyz789");
+
+        assertEquals(2, aggregator.flush());
+        assertEquals(0, meterRegistry.counter("short_url.hits.flushed").count());
+        firstConfirm.complete(null);
+        assertEquals(2, meterRegistry.counter("short_url.hits.flushed").count());
+        assertEquals(1, aggregator.pendingHits());
+
+        aggregator.shutdown();
+
+        ArgumentCaptor<Map<String, Long>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(producer, times(2)).sendHits(batch.capture(), any());
+        assertEquals(Map.of("xyz789", 1L), batch.getAllValues().get(1));
+        assertEquals(3, meterRegistry.counter("short_url.hits.flushed").count());
+        assertEquals(2, meterRegistry.counter("short_url.hits.batches").count());
+        assertEquals(0, aggregator.pendingHits());
+    }
+
+    @Test
+    void testShutdownGivesUpAfterTimeout() {
+        // Broker 一直不确认: 关闭最多等待 shutdown-timeout-ms
+        when(producer.sendHits(any(), any())).thenReturn(new CompletableFuture<>());
+        aggregator.record("abc123");
+
+        long start = System.currentTimeMillis();
+        aggregator.shutdown();
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        verify(producer, times(1)).sendHits(any(), any());
+        assertEquals(0, meterRegistry.counter("short_url.hits.flushed").count());
+    }
+
+    @Test
+    void testIdleKeysAreEvictedAfterAnEmptyPeriod() {
+        aggregator.record("abc123");
+        assertEquals(1, aggregator.flush());
+        assertEquals(1, meterRegistry.get("short_url.hits.pending.keys").gauge().value());
+
+        // 一个周期没有访问: 下次刷新移除; 再访问时重新创建
+        assertEquals(0, aggregator.flush());
+        assertEquals(0, meterRegistry.get("short_url.hits.pending.keys").gauge().value());
+        aggregator.record("abc123");
+        assertEquals(1, aggregator.flush());
+    }
+
+    @Test
+    void testBatchEncodingRoundTrips() {
+        Map<String, Long> hits = new HashMap<>(Map.of("abc123", 42L, "xyz789", 1L));
+        assertEquals(hits, ShortUrlHitBatch.decode(ShortUrlHitBatch.encode(hits)));
+        // 旧格式: 一条消息一个 shortKey
+        assertEquals(Map.of("abc123", 1L), ShortUrlHitBatch.decode("abc123".getBytes()));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo;
+
+import com.example.demo.cache.ShortUrlHotCache;
+import com.example.demo.dto.HotKeyStatDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ShortUrlHotCacheTest {
+
+    private StringRedisTemplate redisTemplate;
+    private ShortUrlHotCache hotCache;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        hotCache = new ShortUrlHotCache(redisTemplate, mock(RedisMessageListenerContainer.class),
+                new SimpleMeterRegistry(), true, 100, 60, "short_url:invalidate");
+    }
+
+    @Test
+    void testHitsAreServedLocallyAndCounted() {
+        assertNull(hotCache.get("abc123"));
+
+        hotCache.putIfUnchanged("abc123", "https://example.com", hotCache.version());
+        assertEquals("https://example.com", hotCache.get("abc123"));
+        assertEquals("https://example.com", hotCache.get("abc123"));
+
+        List<HotKeyStatDTO> hottest = hotCache.hottest(10);
+        assertEquals(1, hottest.size());
+        assertEquals("abc123", hottest.get(0).getShortKey());
+        assertEquals(3, hottest.get(0).getHits()); // 回源一次 + 命中两次
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void testInvalidationDuringLoadIsNotOverwritten() {
+        long version = hotCache.version();
+        // 回源期间其他节点广播了失效
+        hotCache.onMessage(new DefaultMessage("short_url:invalidate".getBytes(StandardCharsets.UTF_8),
+                "other-node|abc123".getBytes(StandardCharsets.UTF_8)), null);
+        hotCache.putIfUnchanged("abc123", "https://old.example.com", version);
+        assertNull(hotCache.get("abc123"));
+
+        hotCache.putIfUnchanged("abc123", "https://example.com", hotCache.version());
+        hotCache.invalidate("abc123");
+        assertNull(hotCache.get("abc123"));
+        verify(redisTemplate).convertAndSend(eq("short_url:invalidate"), endsWith("|abc123"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo;
+
+import com.example.demo.cache.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private static final int THREAD_COUNT = 32;
+
+    @Test
+    void testConcurrentLoadsShareOneCall() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(null, false, 0, 0, 0, 5000);
+        CountDownLatch arrived = new CountDownLatch(THREAD_COUNT);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<String> results = runConcurrently(arrived, () -> singleFlight.load("product:1", () -> {
+            loads.incrementAndGet();
+            awaitAll(arrived);
+            return "value";
+        }));
+
+        assertEquals(1, loads.get()); // 只回源一次
+        assertEquals(THREAD_COUNT, results.size());
+        results.forEach(result -> assertEquals("value", result));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void testLoaderExceptionIsSharedByWaiters() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(null, false, 0, 0, 0, 5000);
+        CountDownLatch arrived = new CountDownLatch(THREAD_COUNT);
+        AtomicInteger failures = new AtomicInteger();
+
+        runConcurrently(arrived, () -> {
+            try {
+                return singleFlight.load("product:2", () -> {
+                    awaitAll(arrived);
+                    throw new IllegalStateException("db down");
+                });
+            } catch (IllegalStateException e) {
+                failures.incrementAndGet();
+                return null;
+            }
+        });
+
+        assertEquals(THREAD_COUNT, failures.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void testWaiterFallsBackToDirectLoadWhenLoaderIsStuck() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(null, false, 0, 0, 0, 50);
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            executorService.submit(() -> singleFlight.load("product:3", () -> {
+                started.countDown();
+                try {
+                    stuck.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "stale";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // 第一个回源卡住: 等待 join-timeout 后自己回源, 不会一直挂着
+            assertEquals("fresh", singleFlight.load("product:3", () -> "fresh"));
+        } finally {
+            stuck.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    private static <T> List<T> runConcurrently(CountDownLatch arrived, Callable<T> task) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                futures.add(executorService.submit(() -> {
+                    arrived.countDown();
+                    return task.call();
+                }));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    // 等所有线程都到达后再多停一会, 保证它们都排在同一次回源后面
+    private static void awaitAll(CountDownLatch arrived) {
+        try {
+            arrived.await(5, TimeUnit.SECONDS);
+            TimeUnit.MILLISECONDS.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.example.demo;
 
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.RedisService;
-import com.example.demo.util.RedisLockUtil;
 import com.example.demo.util.RedisUtil;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -21,9 +20,6 @@ import javax.sql.DataSource;
 @TestConfiguration
 public class TestConfig {
 
-//    @MockitoBean
-//    private RedisLockUtil redisLockUtil;
-//
 //    @MockitoBean
 //    private RedisUtil redisUtil;
 //
@@ -44,8 +40,8 @@ public class TestConfig {
 
 //
 //    @Bean
-//    public RedisService redisService(RedisUtil redisUtil, RedisLockUtil redisLockUtil) {
-//        return new RedisService(redisUtil, redisLockUtil);
+//    public RedisService redisService(RedisUtil redisUtil, NearCache nearCache) {
+//        return new RedisService(redisUtil, nearCache);
 //    }
 //
 //    @Bean